@@ -7,9 +7,11 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import ssedispatcher.controller.StreamRejectedException;
 
 @ControllerAdvice
 public class CustomExceptionHandler extends ResponseEntityExceptionHandler {
@@ -40,6 +42,16 @@ public class CustomExceptionHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(errorResponse, headers, HttpStatus.SERVICE_UNAVAILABLE);
     }
 
+    @ExceptionHandler(StreamRejectedException.class)
+    public ResponseEntity<ErrorResponse> handleStreamRejected(StreamRejectedException ex) {
+        // The client is told when to come back; the refusal itself is counted by admission control
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()));
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return new ResponseEntity<>(new ErrorResponse("Stream refused: " + ex.getReason(), ex.getMessage()),
+                headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     // Define the ErrorResponse class
     public static class ErrorResponse {
         private String error;
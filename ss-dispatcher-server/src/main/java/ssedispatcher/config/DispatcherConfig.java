@@ -0,0 +1,16 @@
+package ssedispatcher.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ssedispatcher.controller.TokenStore;
+
+@Configuration
+@EnableConfigurationProperties(DispatcherProperties.class)
+public class DispatcherConfig {
+
+    @Bean
+    public TokenStore tokenStore(DispatcherProperties properties) {
+        return new TokenStore(properties.getTokenTtlMs());
+    }
+}
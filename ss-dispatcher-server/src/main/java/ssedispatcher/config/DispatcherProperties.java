@@ -0,0 +1,391 @@
+package ssedispatcher.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import ssedispatcher.controller.PriceBusMode;
+import ssedispatcher.controller.RingWaitStrategy;
+import ssedispatcher.controller.SlowConsumerPolicy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "sse.dispatcher")
+public class DispatcherProperties {
+
+    // Threads draining the per-connection outbound buffers
+    private int writerThreads = Runtime.getRuntime().availableProcessors();
+    // Tick engine partitions, each a thread running the timer wheel for its share of the pairs
+    private int pricingThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    // Partitions of the open streams, each with a worker thread handing it the ticks
+    private int fanOutShards = Runtime.getRuntime().availableProcessors();
+    // Ticks a shard queues while its worker is busy; past that a tick supersedes the queued one of its pair
+    private int fanOutBacklog = 1 << 14;
+    // Maximum number of distinct pairs held unsent per connection
+    private int outboundCapacity = 256;
+    // A connection whose buffer makes no progress for this long is treated as a slow consumer
+    private long maxLagMs = 1_000L;
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.SNAPSHOT;
+    private long snapshotIntervalMs = 1_000L;
+    // Hard limit on a stream's life, 0 for none; dead streams are found by heartbeats and stall checks
+    private long streamTimeoutMs = 0L;
+    // An idle stream gets a comment line after this long, and every stream is checked for stalls as often
+    private long heartbeatIntervalMs = 15_000L;
+    // A stream whose write is blocked or whose buffered ticks made no progress for this long is closed
+    private long stallTimeoutMs = 30_000L;
+    // Reconnect delay sent to clients as the SSE retry field, plus a random share of the jitter
+    private long retryMs = 1_000L;
+    private long retryJitterMs = 4_000L;
+    // Admission of new streams: open streams in total and per user, and a token bucket on the connect
+    // rate; 0 turns a limit off. Viewers leave the desk reserve share of the streams and of the bucket to
+    // the desk users, and are refused while the smoothed fan-out latency is above the shedding threshold
+    private int maxConnections = 10_000;
+    private int maxConnectionsPerUser = 16;
+    private double connectRatePerSecond = 200;
+    private int connectBurst = 1_000;
+    private List<String> deskUsers = new ArrayList<>();
+    private double deskReserve = 0.1;
+    private long shedFanOutMicros = 5_000L;
+    // Lifetime of a /login token; streams opened with it stay open, reconnects need a fresh one after
+    private long tokenTtlMs = 8 * 60 * 60 * 1_000L;
+    // Ticks retained per pair for Last-Event-ID replay
+    private int replaySlots = 256;
+    // Longest a delta-mode stream goes without a full price of a pair
+    private long keyframeIntervalMs = 1_000L;
+    // Pair file read at startup and by /reloadInstruments, the bundled list when empty, and the most
+    // pairs reloads can grow it to; per-pair state is sized for that many up front
+    private String instrumentsFile = "";
+    private int maxPairs = 64;
+    // Crosses derived from the priced pairs through a common currency, streamed like priced pairs
+    private List<String> crossPairs = new ArrayList<>(Arrays.asList("EURJPY", "EURGBP", "EURCHF", "EURCAD", "GBPJPY",
+            "GBPCHF", "GBPCAD", "AUDJPY", "AUDCAD", "AUDCHF", "CHFJPY", "CADJPY"));
+    // OHLC candles: bars kept per pair and interval for /candles, and how often 'candles' events go out
+    private int candleHistoryBars = 500;
+    private long candlePublishMs = 1_000L;
+    // Tick journal behind /history: segments of 32-byte records per pair, rolled when full or after rollMs
+    private boolean journalEnabled = false;
+    private String journalDir = "journal";
+    private int journalSegmentRecords = 1 << 19;
+    private long journalRollMs = 60 * 60 * 1_000L;
+    private long journalRetentionMs = 6 * 60 * 60 * 1_000L;
+    // Ring of ticks behind the in-process price subscribers such as the journal: ticks a subscriber can
+    // fall behind before it misses some, and how subscriber threads wait for ticks
+    private int tickRingSize = 1 << 16;
+    private RingWaitStrategy tickRingWaitStrategy = RingWaitStrategy.SLEEPING;
+    // Whether this node prices, and whether ticks are shared with other nodes over multicast
+    private PriceBusMode busMode = PriceBusMode.IN_PROCESS;
+    private String busGroup = "239.1.1.1";
+    private int busPort = 45600;
+    private String busInterface = "lo";
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    public int getPricingThreads() {
+        return pricingThreads;
+    }
+
+    public void setPricingThreads(int pricingThreads) {
+        this.pricingThreads = pricingThreads;
+    }
+
+    public int getFanOutShards() {
+        return fanOutShards;
+    }
+
+    public void setFanOutShards(int fanOutShards) {
+        this.fanOutShards = fanOutShards;
+    }
+
+    public int getFanOutBacklog() {
+        return fanOutBacklog;
+    }
+
+    public void setFanOutBacklog(int fanOutBacklog) {
+        this.fanOutBacklog = fanOutBacklog;
+    }
+
+    public int getOutboundCapacity() {
+        return outboundCapacity;
+    }
+
+    public void setOutboundCapacity(int outboundCapacity) {
+        this.outboundCapacity = outboundCapacity;
+    }
+
+    public long getMaxLagMs() {
+        return maxLagMs;
+    }
+
+    public void setMaxLagMs(long maxLagMs) {
+        this.maxLagMs = maxLagMs;
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public long getSnapshotIntervalMs() {
+        return snapshotIntervalMs;
+    }
+
+    public void setSnapshotIntervalMs(long snapshotIntervalMs) {
+        this.snapshotIntervalMs = snapshotIntervalMs;
+    }
+
+    public long getKeyframeIntervalMs() {
+        return keyframeIntervalMs;
+    }
+
+    public void setKeyframeIntervalMs(long keyframeIntervalMs) {
+        this.keyframeIntervalMs = keyframeIntervalMs;
+    }
+
+    public long getStreamTimeoutMs() {
+        return streamTimeoutMs;
+    }
+
+    public void setStreamTimeoutMs(long streamTimeoutMs) {
+        this.streamTimeoutMs = streamTimeoutMs;
+    }
+
+    public long getHeartbeatIntervalMs() {
+        return heartbeatIntervalMs;
+    }
+
+    public void setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+    }
+
+    public long getStallTimeoutMs() {
+        return stallTimeoutMs;
+    }
+
+    public void setStallTimeoutMs(long stallTimeoutMs) {
+        this.stallTimeoutMs = stallTimeoutMs;
+    }
+
+    public long getRetryMs() {
+        return retryMs;
+    }
+
+    public void setRetryMs(long retryMs) {
+        this.retryMs = retryMs;
+    }
+
+    public long getRetryJitterMs() {
+        return retryJitterMs;
+    }
+
+    public void setRetryJitterMs(long retryJitterMs) {
+        this.retryJitterMs = retryJitterMs;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerUser() {
+        return maxConnectionsPerUser;
+    }
+
+    public void setMaxConnectionsPerUser(int maxConnectionsPerUser) {
+        this.maxConnectionsPerUser = maxConnectionsPerUser;
+    }
+
+    public double getConnectRatePerSecond() {
+        return connectRatePerSecond;
+    }
+
+    public void setConnectRatePerSecond(double connectRatePerSecond) {
+        this.connectRatePerSecond = connectRatePerSecond;
+    }
+
+    public int getConnectBurst() {
+        return connectBurst;
+    }
+
+    public void setConnectBurst(int connectBurst) {
+        this.connectBurst = connectBurst;
+    }
+
+    public List<String> getDeskUsers() {
+        return deskUsers;
+    }
+
+    public void setDeskUsers(List<String> deskUsers) {
+        this.deskUsers = deskUsers;
+    }
+
+    public double getDeskReserve() {
+        return deskReserve;
+    }
+
+    public void setDeskReserve(double deskReserve) {
+        this.deskReserve = deskReserve;
+    }
+
+    public long getShedFanOutMicros() {
+        return shedFanOutMicros;
+    }
+
+    public void setShedFanOutMicros(long shedFanOutMicros) {
+        this.shedFanOutMicros = shedFanOutMicros;
+    }
+
+    public long getTokenTtlMs() {
+        return tokenTtlMs;
+    }
+
+    public void setTokenTtlMs(long tokenTtlMs) {
+        this.tokenTtlMs = tokenTtlMs;
+    }
+
+    public int getReplaySlots() {
+        return replaySlots;
+    }
+
+    public void setReplaySlots(int replaySlots) {
+        this.replaySlots = replaySlots;
+    }
+
+    public String getInstrumentsFile() {
+        return instrumentsFile;
+    }
+
+    public void setInstrumentsFile(String instrumentsFile) {
+        this.instrumentsFile = instrumentsFile;
+    }
+
+    public int getMaxPairs() {
+        return maxPairs;
+    }
+
+    public void setMaxPairs(int maxPairs) {
+        this.maxPairs = maxPairs;
+    }
+
+    public List<String> getCrossPairs() {
+        return crossPairs;
+    }
+
+    public void setCrossPairs(List<String> crossPairs) {
+        this.crossPairs = crossPairs;
+    }
+
+    public int getCandleHistoryBars() {
+        return candleHistoryBars;
+    }
+
+    public void setCandleHistoryBars(int candleHistoryBars) {
+        this.candleHistoryBars = candleHistoryBars;
+    }
+
+    public long getCandlePublishMs() {
+        return candlePublishMs;
+    }
+
+    public void setCandlePublishMs(long candlePublishMs) {
+        this.candlePublishMs = candlePublishMs;
+    }
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    public void setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public int getJournalSegmentRecords() {
+        return journalSegmentRecords;
+    }
+
+    public void setJournalSegmentRecords(int journalSegmentRecords) {
+        this.journalSegmentRecords = journalSegmentRecords;
+    }
+
+    public long getJournalRollMs() {
+        return journalRollMs;
+    }
+
+    public void setJournalRollMs(long journalRollMs) {
+        this.journalRollMs = journalRollMs;
+    }
+
+    public long getJournalRetentionMs() {
+        return journalRetentionMs;
+    }
+
+    public void setJournalRetentionMs(long journalRetentionMs) {
+        this.journalRetentionMs = journalRetentionMs;
+    }
+
+    public int getTickRingSize() {
+        return tickRingSize;
+    }
+
+    public void setTickRingSize(int tickRingSize) {
+        this.tickRingSize = tickRingSize;
+    }
+
+    public RingWaitStrategy getTickRingWaitStrategy() {
+        return tickRingWaitStrategy;
+    }
+
+    public void setTickRingWaitStrategy(RingWaitStrategy tickRingWaitStrategy) {
+        this.tickRingWaitStrategy = tickRingWaitStrategy;
+    }
+
+    public PriceBusMode getBusMode() {
+        return busMode;
+    }
+
+    public void setBusMode(PriceBusMode busMode) {
+        this.busMode = busMode;
+    }
+
+    public String getBusGroup() {
+        return busGroup;
+    }
+
+    public void setBusGroup(String busGroup) {
+        this.busGroup = busGroup;
+    }
+
+    public int getBusPort() {
+        return busPort;
+    }
+
+    public void setBusPort(int busPort) {
+        this.busPort = busPort;
+    }
+
+    public String getBusInterface() {
+        return busInterface;
+    }
+
+    public void setBusInterface(String busInterface) {
+        this.busInterface = busInterface;
+    }
+}
@@ -2,19 +2,26 @@ package ssedispatcher.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ssedispatcher.controller.TokenStore;
 import ssedispatcher.controller.TokenValidationFilter;
 
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class FilterConfig {
 
+    // Endpoints that need a /login token, in either web application type
+    public static final String[] TOKEN_PATHS = {"/startPricing", "/pausePricing", "/startAllPricing", "/pauseAllPricing",
+            "/pricingState", "/stream-sse", "/stream-flux", "/subscribe", "/unsubscribe", "/history", "/reloadInstruments",
+            "/connections"};
 
     @Bean
-    public FilterRegistrationBean<TokenValidationFilter> tokenValidationFilter() {
+    public FilterRegistrationBean<TokenValidationFilter> tokenValidationFilter(TokenStore tokenStore) {
         FilterRegistrationBean<TokenValidationFilter> registrationBean = new FilterRegistrationBean<>();
-        registrationBean.setFilter(new TokenValidationFilter());
-        registrationBean.addUrlPatterns("/startPricing", "/pausePricing", "/startAllPricing", "/pauseAllPricing", "/pricingState");
+        registrationBean.setFilter(new TokenValidationFilter(tokenStore));
+        registrationBean.addUrlPatterns(TOKEN_PATHS);
         return registrationBean;
     }
 }
\ No newline at end of file
@@ -1,14 +1,15 @@
 package ssedispatcher.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import ssedispatcher.metrics.CustomHttp2Metrics;
+import ssedispatcher.metrics.DispatcherMetrics;
 
 @Configuration
 public class MetricsConfig {
 
     @Bean
-    public CustomHttp2Metrics customHttp2Metrics() {
-        return new CustomHttp2Metrics();
+    public DispatcherMetrics dispatcherMetrics(MeterRegistry meterRegistry) {
+        return new DispatcherMetrics(meterRegistry);
     }
-}
\ No newline at end of file
+}
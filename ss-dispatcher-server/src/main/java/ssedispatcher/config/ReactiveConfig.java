@@ -0,0 +1,43 @@
+package ssedispatcher.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.config.CorsRegistry;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import ssedispatcher.controller.TokenStore;
+import ssedispatcher.controller.TokenWebFilter;
+
+/**
+ * Active when the server runs with {@code spring.main.web-application-type=reactive} (the "reactive" profile).
+ * Tomcat would otherwise be picked as the reactive server because it is on the classpath for the servlet mode.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public TokenWebFilter tokenWebFilter(TokenStore tokenStore) {
+        return new TokenWebFilter(tokenStore, FilterConfig.TOKEN_PATHS);
+    }
+
+    @Bean
+    public WebFluxConfigurer corsWebFluxConfigurer() {
+        return new WebFluxConfigurer() {
+            @Override
+            public void addCorsMappings(CorsRegistry registry) {
+                registry.addMapping("/**")
+                        .allowedOrigins("http://localhost:3000")
+                        .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
+                        .allowedHeaders("*")
+                        .allowCredentials(true);
+            }
+        };
+    }
+}
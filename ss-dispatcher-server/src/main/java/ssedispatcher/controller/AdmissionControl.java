@@ -0,0 +1,127 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ssedispatcher.config.DispatcherProperties;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a new stream opens, so that a node in a reconnect storm refuses the streams it cannot
+ * serve instead of slowing down every stream it has. A stream is refused, in this order, when
+ * <ul>
+ *     <li>it is a viewer's and the smoothed fan-out latency is above {@code shed-fan-out-micros}</li>
+ *     <li>its user already has {@code max-connections-per-user} streams open</li>
+ *     <li>{@code max-connections} streams are open, less the desk reserve for viewers</li>
+ *     <li>the connect token bucket, refilled at {@code connect-rate-per-second} up to {@code connect-burst},
+ *     is empty, or for viewers down to the desk reserve</li>
+ * </ul>
+ * A refusal asks the client to come back after {@code retry-ms} plus a random share of
+ * {@code retry-jitter-ms}, stretched by how far fan-out is behind, so refused clients neither return
+ * together nor before the node has recovered. Streams open far less often than ticks arrive, so the
+ * counts sit behind one lock.
+ */
+public class AdmissionControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+    // Longest stretch of the retry delay when fan-out is far behind
+    private static final long MAX_BACKOFF = 10;
+
+    private final DispatcherMetrics metrics;
+    private final Set<String> deskUsers;
+    private final int maxConnections;
+    private final int maxViewerConnections;
+    private final int maxConnectionsPerUser;
+    private final double tokensPerNano;
+    private final double burst;
+    private final double viewerFloor;
+    private final long shedNanos;
+    private final long retryMs;
+    private final long retryJitterMs;
+    private final Map<String, Integer> openByUser = new HashMap<>();
+    private int open;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    public AdmissionControl(DispatcherProperties properties, DispatcherMetrics metrics) {
+        this.metrics = metrics;
+        this.deskUsers = new HashSet<>(properties.getDeskUsers());
+        this.maxConnections = properties.getMaxConnections();
+        this.maxViewerConnections = maxConnections - (int) Math.round(maxConnections * properties.getDeskReserve());
+        this.maxConnectionsPerUser = properties.getMaxConnectionsPerUser();
+        this.tokensPerNano = properties.getConnectRatePerSecond() / TimeUnit.SECONDS.toNanos(1);
+        this.burst = properties.getConnectBurst();
+        this.viewerFloor = burst * properties.getDeskReserve();
+        this.shedNanos = TimeUnit.MICROSECONDS.toNanos(properties.getShedFanOutMicros());
+        this.retryMs = properties.getRetryMs();
+        this.retryJitterMs = properties.getRetryJitterMs();
+        this.tokens = burst;
+    }
+
+    public StreamTier tierOf(String userId) {
+        return deskUsers.contains(userId) ? StreamTier.DESK : StreamTier.VIEWER;
+    }
+
+    /**
+     * Counts a new stream of the user, or throws {@link StreamRejectedException} if it must not open.
+     * Every admitted stream is given back with {@link #release} when it closes.
+     */
+    public void admit(String userId) {
+        boolean viewer = tierOf(userId) == StreamTier.VIEWER;
+        long latencyNanos = metrics.getFanOutLatencyNanos();
+        if (viewer && shedNanos > 0 && latencyNanos > shedNanos) {
+            throw reject("latency", "Shedding viewer streams while fan-out takes "
+                    + TimeUnit.NANOSECONDS.toMicros(latencyNanos) + " us", userId, 0, latencyNanos);
+        }
+        synchronized (this) {
+            int userOpen = openByUser.getOrDefault(userId, 0);
+            if (maxConnectionsPerUser > 0 && userOpen >= maxConnectionsPerUser) {
+                throw reject("user", "User " + userId + " already has " + userOpen + " streams open", userId, 0, latencyNanos);
+            }
+            if (maxConnections > 0 && open >= (viewer ? maxViewerConnections : maxConnections)) {
+                throw reject("connections", "Too many open streams", userId, 0, latencyNanos);
+            }
+            if (tokensPerNano > 0) {
+                long now = System.nanoTime();
+                tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+                refilledAt = now;
+                double needed = viewer ? viewerFloor + 1 : 1;
+                if (tokens < needed) {
+                    long refillMs = TimeUnit.NANOSECONDS.toMillis((long) Math.ceil((needed - tokens) / tokensPerNano));
+                    throw reject("rate", "Too many new streams", userId, refillMs, latencyNanos);
+                }
+                tokens--;
+            }
+            openByUser.put(userId, userOpen + 1);
+            open++;
+        }
+    }
+
+    public synchronized void release(String userId) {
+        Integer userOpen = openByUser.get(userId);
+        if (userOpen == null) {
+            return;
+        }
+        if (userOpen > 1) {
+            openByUser.put(userId, userOpen - 1);
+        } else {
+            openByUser.remove(userId);
+        }
+        open--;
+    }
+
+    private StreamRejectedException reject(String reason, String message, String userId, long waitMs, long latencyNanos) {
+        // Counted per reason; a reconnect storm refuses far too many streams to log each at info
+        metrics.onRejected(reason);
+        logger.debug("Refusing stream for user: {}: {}", userId, message);
+        long backoff = shedNanos > 0 ? Math.min(MAX_BACKOFF, Math.max(1, latencyNanos / shedNanos)) : 1;
+        long delayMs = waitMs + (retryMs + ThreadLocalRandom.current().nextLong(retryJitterMs + 1)) * backoff;
+        return new StreamRejectedException(reason, message, Math.max(1, TimeUnit.MILLISECONDS.toSeconds(delayMs + 999)));
+    }
+}
@@ -3,66 +3,769 @@ package ssedispatcher.controller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-import ssedispatcher.metrics.CustomHttp2Metrics;
+import ssedispatcher.config.DispatcherProperties;
+import ssedispatcher.metrics.DispatcherMetrics;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public class BaseDispatcher {
 
     private static final Logger logger = LoggerFactory.getLogger(BaseDispatcher.class);
-    private static final long SSE_TIMEOUT = 300_000L; // 300 seconds
-    private final ConcurrentHashMap<String, SseEmitter> userEmitters = new ConcurrentHashMap<>();
+    static final String PRICE_EVENT = "price";
+    static final String BATCH_EVENT = "prices";
+    static final String SNAPSHOT_EVENT = "snapshot";
+    static final String INSTRUMENTS_EVENT = "instruments";
+    static final String CONNECTION_EVENT = "connection";
+    static final String CANDLES_EVENT = "candles";
+    private static final CandleInterval[] CANDLE_INTERVALS = CandleInterval.values();
+    private static final WireFormat[] FORMATS = WireFormat.values();
+    private static final SseFrame HEARTBEAT = SseFrame.control(":");
+    private final ConcurrentHashMap<Long, SseConnection> connections = new ConcurrentHashMap<>();
+    private final AtomicLong connectionIds = new AtomicLong();
+    // Connections are partitioned by id; each shard indexes its connections by wire format and pair id,
+    // so a tick only touches interested streams and is encoded once per format that has any
+    private final FanOutShard[] shards;
+    // Frames of the tick being fanned out per pair, reused for every tick of the pair
+    private final SseFrame[][] pairFrames;
     private final ScheduledExecutorService scheduler;
-    private final CustomHttp2Metrics customHttp2Metrics;
-    private final Pricer pricer;
+    private final ExecutorService writers;
+    private final DispatcherMetrics metrics;
+    private final PriceBus bus;
+    private final Instruments instruments;
+    private final TickEncoder encoder;
+    private final DispatcherProperties properties;
+    private final ReplayBuffer replayBuffer;
+    private final PriceSnapshot priceSnapshot;
+    private final CandleAggregator candles;
+    private final ScheduledFuture<?> candleTask;
+    private final ThrottleWheel throttleWheel = new ThrottleWheel(this::releaseThrottled);
+    private final HeartbeatWheel heartbeatWheel;
+    private final AdmissionControl admission;
+    private Supplier<SseEmitter> emitterFactory;
 
-    public BaseDispatcher(ScheduledExecutorService scheduler, CustomHttp2Metrics customHttp2Metrics, Pricer pricer) {
+    public BaseDispatcher(ScheduledExecutorService scheduler, ExecutorService writers, DispatcherMetrics metrics,
+                          Instruments instruments, PriceBus bus, DispatcherProperties properties) {
         this.scheduler = scheduler;
-        this.customHttp2Metrics = customHttp2Metrics;
-        this.pricer = pricer;
-        this.pricer.setBaseDispatcher(this); // Set the BaseDispatcher in Pricer
+        this.writers = writers;
+        this.metrics = metrics;
+        this.bus = bus;
+        this.instruments = instruments;
+        this.encoder = new TickEncoder(instruments);
+        this.properties = properties;
+        this.pairFrames = new SseFrame[instruments.capacity()][FORMATS.length];
+        this.shards = new FanOutShard[Math.max(1, properties.getFanOutShards())];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new FanOutShard(i, instruments.capacity(), properties.getFanOutBacklog(), this::offer,
+                    metrics);
+        }
+        this.replayBuffer = new ReplayBuffer(instruments.capacity(), properties.getReplaySlots(), encoder);
+        this.priceSnapshot = new PriceSnapshot(instruments, encoder);
+        this.candles = new CandleAggregator(instruments, properties.getCandleHistoryBars());
+        this.candleTask = scheduler.scheduleAtFixedRate(this::publishCandles, properties.getCandlePublishMs(),
+                properties.getCandlePublishMs(), TimeUnit.MILLISECONDS);
+        // A timeout of 0 leaves streams open until the client goes away or a write fails or stalls
+        this.emitterFactory = () -> new SseEmitter(properties.getStreamTimeoutMs());
+        this.heartbeatWheel = new HeartbeatWheel(scheduler, properties.getHeartbeatIntervalMs(), this::checkConnection);
+        this.admission = new AdmissionControl(properties, metrics);
+        bus.subscribe(this::sendPriceUpdate);
+        // Retained ticks of an ended sequence would be replayed against ids of the new one
+        bus.onSequenceReset(replayBuffer::clear);
+        registerMetrics();
+    }
+
+    // Lets benchmarks stream into in-memory emitters instead of HTTP responses
+    void setEmitterFactory(Supplier<SseEmitter> emitterFactory) {
+        this.emitterFactory = emitterFactory;
     }
 
     public SseEmitter createEmitter(String userId) {
-        logger.info("Received request to stream SSE for user: {}", userId);
-        customHttp2Metrics.incrementConnections();
-        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
-        userEmitters.put(userId, emitter);
-        logger.info("SseEmitter created and added for user: {}", userId);
+        return createEmitter(userId, new StreamOptions(Collections.emptySet()));
+    }
+
+    /**
+     * Opens a stream for the user, or throws {@link StreamRejectedException} when admission control
+     * refuses it.
+     */
+    public SseEmitter createEmitter(String userId, StreamOptions options) {
+        logger.info("Received request to stream SSE for user: {} pairs: {} batchMs: {} format: {}", userId,
+                options.getCcyPairs().isEmpty() ? "all" : options.getCcyPairs(), options.getBatchMs(), options.getFormat().getParameter());
+        admission.admit(userId);
+        SseConnection connection;
+        try {
+            connection = new SseConnection(connectionIds.incrementAndGet(), userId, emitterFactory.get(), options, instruments,
+                    properties.getOutboundCapacity(), properties.getMaxLagMs(), properties.getKeyframeIntervalMs());
+        } catch (RuntimeException | Error e) {
+            admission.release(userId);
+            throw e;
+        }
+        // Writers stay off the connection until any replay has been sent ahead of live ticks
+        connection.tryStartDrain();
+        // Registered, the admission slot goes back when the connection is removed
+        connections.put(connection.getId(), connection);
+        try {
+            return open(connection, options);
+        } catch (RuntimeException | Error e) {
+            removeConnection(connection);
+            throw e;
+        }
+    }
+
+    private SseEmitter open(SseConnection connection, StreamOptions options) {
+        SseEmitter emitter = connection.getEmitter();
+        index(connection);
+        heartbeatWheel.add(connection);
+        List<SseFrame> initial = new ArrayList<>();
+        initial.add(retryFrame());
+        // Tells the client which of its streams to name when changing the subscription
+        byte[] connectionId = Long.toString(connection.getId()).getBytes(StandardCharsets.US_ASCII);
+        initial.add(SseFrame.unsequenced(CONNECTION_EVENT, connectionId));
+        if (options.getFormat().isIndexed()) {
+            initial.add(encoder.getInstrumentsFrame());
+        }
+        int ticks = 0;
+        if (options.getLastEventId() != null) {
+            ticks = resume(connection, options.getLastEventId(), initial);
+        } else if (options.isSnapshot()) {
+            ticks = snapshot(connection, initial);
+        }
+        if (!initial.isEmpty() && !sendInitial(connection, initial, ticks)) {
+            // Already removed and completed; nothing may be scheduled for it any more
+            return emitter;
+        }
+        connection.endDrain();
+        if (connection.hasPending() && !connection.isBatching()) {
+            scheduleDrain(connection);
+        }
+        if (connection.isBatching()) {
+            connection.setBatchTask(scheduler.scheduleAtFixedRate(() -> scheduleDrain(connection),
+                    connection.getBatchMs(), connection.getBatchMs(), TimeUnit.MILLISECONDS));
+            // A stall check may have removed the stream before the task was set
+            if (!isActive(connection)) {
+                connection.cancelBatchTask();
+            }
+        }
+        logger.info("SseEmitter created and added for user: {} connection: {}", connection.getUserId(), connection.getId());
 
-        emitter.onCompletion(() -> handleEmitterCompletion(userId));
-        emitter.onTimeout(() -> handleEmitterTimeout(userId));
-        emitter.onError(e -> handleEmitterError(userId, e));
+        emitter.onCompletion(() -> handleEmitterCompletion(connection));
+        emitter.onTimeout(() -> handleEmitterTimeout(connection));
+        emitter.onError(e -> handleEmitterError(connection, e));
 
         return emitter;
     }
 
-    private void handleEmitterCompletion(String userId) {
-        userEmitters.remove(userId);
-        customHttp2Metrics.decrementConnections();
-        logger.info("SseEmitter completed for user: {}", userId);
+    /**
+     * Returns the reconnect delay for a new stream, randomized so streams dropped together, by a node
+     * restart for instance, do not all come back at the same moment.
+     */
+    private SseFrame retryFrame() {
+        long retryMs = properties.getRetryMs() + ThreadLocalRandom.current().nextLong(properties.getRetryJitterMs() + 1);
+        return SseFrame.control("retry:" + retryMs);
     }
 
-    private void handleEmitterTimeout(String userId) {
-        userEmitters.remove(userId);
-        customHttp2Metrics.decrementConnections();
-        logger.warn("SseEmitter timed out for user: {}", userId);
+    /**
+     * Adds the ticks missed since {@code lastEventId} to {@code out}, oldest first, and drops buffered live
+     * ticks the replay already covers. Pairs whose missed ticks are no longer retained get their latest
+     * tick only. Returns the number of ticks added.
+     */
+    private int resume(SseConnection connection, long lastEventId, List<SseFrame> out) {
+        // An id above the current sequence was issued before a restart and cannot be resumed from
+        boolean unknownId = lastEventId > bus.getSequence();
+        WireFormat format = connection.getFormat();
+        List<SseFrame> frames = new ArrayList<>();
+        for (String ccyPair : connection.isWildcard() ? instruments.names() : connection.getCcyPairs()) {
+            int pairId = instruments.idOf(ccyPair);
+            long highest = unknownId ? replayBuffer.latest(pairId, frames, format)
+                    : replayBuffer.replay(pairId, lastEventId, frames, format);
+            connection.discardPending(pairId, highest);
+        }
+        frames.sort(Comparator.comparingLong(SseFrame::getId));
+        logger.info("Resuming stream for user: {} from event {} with {} replayed ticks", connection.getUserId(), lastEventId, frames.size());
+        out.addAll(frames);
+        return frames.size();
     }
 
-    private void handleEmitterError(String userId, Throwable e) {
-        userEmitters.remove(userId);
-        customHttp2Metrics.decrementConnections();
-        logger.error("SseEmitter encountered an error for user: {}", userId, e);
+    /**
+     * Adds the latest price of every subscribed pair to {@code out} as one {@code snapshot} event and
+     * drops buffered live ticks it already covers. Its id is the lowest sequence in it, so resuming from
+     * the snapshot cannot skip a tick of any pair. Returns the number of ticks in it.
+     */
+    private int snapshot(SseConnection connection, List<SseFrame> out) {
+        List<SseFrame> frames = new ArrayList<>();
+        long lowest = Long.MAX_VALUE;
+        for (int pairId : pairIds(connection.isWildcard() ? Collections.emptySet() : connection.getCcyPairs())) {
+            SseFrame frame = priceSnapshot.latest(pairId, connection.getFormat());
+            if (frame != null) {
+                frames.add(frame);
+                lowest = Math.min(lowest, frame.getId());
+                connection.discardPending(pairId, frame.getId());
+            }
+        }
+        if (!frames.isEmpty()) {
+            out.add(SseFrame.of(lowest, SNAPSHOT_EVENT, SseFrame.joinData(frames, connection.getFormat())));
+        }
+        return frames.size();
     }
 
-    public void sendPriceUpdate(Price price) {
-        userEmitters.forEach((userId, emitter) -> {
-            try {
-                emitter.send(price);
-            } catch (Exception e) {
-                logger.error("Error sending price update to user: {}", userId, e);
+    // Runs while the writers are held off the connection, so these frames precede any live tick.
+    // Returns false if the stream failed and was removed.
+    private boolean sendInitial(SseConnection connection, List<SseFrame> frames, int ticks) {
+        connection.onWriting(System.nanoTime());
+        try {
+            for (SseFrame frame : frames) {
+                connection.getEmitter().send(frame);
+                // Replayed ticks are old by design and would skew the latency histogram
+                metrics.onWrite(frame.size(), 0);
+            }
+            connection.onSent(ticks, System.nanoTime());
+            return true;
+        } catch (Exception e) {
+            logger.warn("Error sending initial events to user: {}, closing stream: {}", connection.getUserId(), e.toString());
+            metrics.onWriteFailure();
+            removeConnection(connection);
+            connection.getEmitter().completeWithError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the latest price of the pairs, or of every pair when none is given.
+     */
+    public PriceSnapshot.Body getSnapshot(Set<String> ccyPairs) {
+        return priceSnapshot.body(pairIds(ccyPairs));
+    }
+
+    // Sorted ids of the pairs, every id when the set is empty
+    private int[] pairIds(Set<String> ccyPairs) {
+        if (ccyPairs.isEmpty()) {
+            int[] ids = new int[instruments.size()];
+            for (int id = 0; id < ids.length; id++) {
+                ids[id] = id;
             }
+            return ids;
+        }
+        int[] ids = new int[ccyPairs.size()];
+        int i = 0;
+        for (String ccyPair : ccyPairs) {
+            ids[i++] = instruments.idOf(ccyPair);
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private void registerMetrics() {
+        metrics.registerPairs(new ArrayList<>(instruments.names()));
+        metrics.gauge("sse.connections", "Open SSE streams", connections::size);
+        // Per-connection depths are on /connections; the registry only gets aggregates to bound cardinality
+        metrics.gauge("sse.connection.queue.depth.max", "Deepest outbound buffer of any stream", () -> {
+            int max = 0;
+            for (SseConnection connection : connections.values()) {
+                max = Math.max(max, connection.getQueueDepth());
+            }
+            return max;
+        });
+        metrics.gauge("sse.connection.queue.depth.total", "Frames buffered across all streams", () -> {
+            long total = 0;
+            for (SseConnection connection : connections.values()) {
+                total += connection.getQueueDepth();
+            }
+            return total;
+        });
+        metrics.gauge("sse.connections.degraded", "Streams degraded to snapshots", () -> {
+            int degraded = 0;
+            for (SseConnection connection : connections.values()) {
+                if (connection.isDegraded()) {
+                    degraded++;
+                }
+            }
+            return degraded;
         });
     }
-}
\ No newline at end of file
+
+    public Set<String> subscribe(String userId, Set<String> ccyPairs) {
+        return subscribe(userId, null, ccyPairs);
+    }
+
+    /**
+     * Adds the pairs to the given stream of the user, or to all of its streams when no connection id is
+     * given. Returns the pairs the streams are now subscribed to.
+     */
+    public Set<String> subscribe(String userId, Long connectionId, Set<String> ccyPairs) {
+        Set<String> subscribed = new TreeSet<>();
+        for (SseConnection connection : getConnections(userId, connectionId)) {
+            synchronized (connection) {
+                if (!isActive(connection)) {
+                    throw new IllegalStateException("Stream closed for user: " + userId);
+                }
+                materializeWildcard(connection);
+                for (String ccyPair : ccyPairs) {
+                    if (connection.addCcyPair(ccyPair)) {
+                        subscribersFor(connection, ccyPair).add(connection);
+                    }
+                }
+            }
+            subscribed.addAll(connection.getCcyPairs());
+        }
+        logger.info("User {} subscribed to {}", userId, ccyPairs);
+        return subscribed;
+    }
+
+    public Set<String> unsubscribe(String userId, Set<String> ccyPairs) {
+        return unsubscribe(userId, null, ccyPairs);
+    }
+
+    /**
+     * Removes the pairs from the given stream of the user, or from all of its streams when no connection
+     * id is given. Returns the pairs the streams are still subscribed to.
+     */
+    public Set<String> unsubscribe(String userId, Long connectionId, Set<String> ccyPairs) {
+        Set<String> subscribed = new TreeSet<>();
+        for (SseConnection connection : getConnections(userId, connectionId)) {
+            synchronized (connection) {
+                if (!isActive(connection)) {
+                    throw new IllegalStateException("Stream closed for user: " + userId);
+                }
+                materializeWildcard(connection);
+                for (String ccyPair : ccyPairs) {
+                    if (connection.removeCcyPair(ccyPair)) {
+                        subscribersFor(connection, ccyPair).remove(connection);
+                    }
+                }
+            }
+            subscribed.addAll(connection.getCcyPairs());
+        }
+        logger.info("User {} unsubscribed from {}", userId, ccyPairs);
+        return subscribed;
+    }
+
+    // Subscription changes are rare, so finding a user's streams scans the registry
+    private List<SseConnection> getConnections(String userId, Long connectionId) {
+        List<SseConnection> result = new ArrayList<>();
+        if (connectionId != null) {
+            SseConnection connection = connections.get(connectionId);
+            if (connection != null && connection.getUserId().equals(userId)) {
+                result.add(connection);
+            }
+        } else {
+            for (SseConnection connection : connections.values()) {
+                if (connection.getUserId().equals(userId)) {
+                    result.add(connection);
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalStateException("No active stream for user: " + userId
+                    + (connectionId != null ? " connection: " + connectionId : ""));
+        }
+        return result;
+    }
+
+    private void index(SseConnection connection) {
+        synchronized (connection) {
+            if (connection.isWildcard()) {
+                shardOf(connection).wildcardSubscribers(connection.getFormat()).add(connection);
+            } else {
+                for (String ccyPair : connection.getCcyPairs()) {
+                    subscribersFor(connection, ccyPair).add(connection);
+                }
+            }
+        }
+    }
+
+    private void unindex(SseConnection connection) {
+        synchronized (connection) {
+            shardOf(connection).wildcardSubscribers(connection.getFormat()).remove(connection);
+            for (String ccyPair : connection.getCcyPairs()) {
+                subscribersFor(connection, ccyPair).remove(connection);
+            }
+        }
+    }
+
+    // A wildcard stream that changes its subscription is pinned to the explicit list of known pairs first.
+    private void materializeWildcard(SseConnection connection) {
+        if (connection.isWildcard()) {
+            connection.clearWildcard(instruments.names());
+            for (String ccyPair : connection.getCcyPairs()) {
+                subscribersFor(connection, ccyPair).add(connection);
+            }
+            shardOf(connection).wildcardSubscribers(connection.getFormat()).remove(connection);
+        }
+    }
+
+    private ConnectionSet subscribersFor(SseConnection connection, String ccyPair) {
+        return shardOf(connection).subscribers(connection.getFormat(), instruments.idOf(ccyPair));
+    }
+
+    private FanOutShard shardOf(SseConnection connection) {
+        return shards[(int) (connection.getId() % shards.length)];
+    }
+
+    private void removeConnection(SseConnection connection) {
+        if (connections.remove(connection.getId(), connection)) {
+            unindex(connection);
+            heartbeatWheel.remove(connection);
+            connection.cancelBatchTask();
+            admission.release(connection.getUserId());
+        }
+    }
+
+    private boolean isActive(SseConnection connection) {
+        return connections.get(connection.getId()) == connection;
+    }
+
+    public List<Map<String, Object>> getConnectionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (SseConnection connection : connections.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("connectionId", connection.getId());
+            entry.put("userId", connection.getUserId());
+            entry.put("tier", admission.tierOf(connection.getUserId()));
+            entry.put("ccyPairs", connection.isWildcard() ? "all" : connection.getCcyPairs());
+            entry.put("queueDepth", connection.getQueueDepth());
+            entry.put("sentTicks", connection.getSentTicks());
+            entry.put("conflatedTicks", connection.getConflatedTicks());
+            entry.put("droppedTicks", connection.getDroppedTicks());
+            entry.put("batchMs", connection.getBatchMs());
+            entry.put("format", connection.getFormat().getParameter());
+            entry.put("delta", connection.isDelta());
+            entry.put("candles", connection.getCandleIntervals());
+            Map<String, Double> maxRates = new TreeMap<>();
+            connection.getMaxRatesHz().forEach((pairId, rate) -> maxRates.put(instruments.name(pairId), rate));
+            entry.put("maxRatesHz", maxRates);
+            entry.put("throttledTicks", connection.getThrottledTicks());
+            entry.put("degraded", connection.isDegraded());
+            stats.add(entry);
+        }
+        return stats;
+    }
+
+    private void handleEmitterCompletion(SseConnection connection) {
+        removeConnection(connection);
+        logger.info("SseEmitter completed for user: {} connection: {}", connection.getUserId(), connection.getId());
+    }
+
+    private void handleEmitterTimeout(SseConnection connection) {
+        removeConnection(connection);
+        metrics.onTimeout();
+        logger.warn("SseEmitter timed out for user: {}", connection.getUserId());
+    }
+
+    private void handleEmitterError(SseConnection connection, Throwable e) {
+        removeConnection(connection);
+        metrics.onEmitterError();
+        logger.error("SseEmitter encountered an error for user: {}", connection.getUserId(), e);
+    }
+
+    /**
+     * Retains the tick for replay and queues it to the shards with connections subscribed to it. The tick
+     * arrives sequenced by the bus and is only read during the call, so its owner can reuse it for the
+     * next update; the shards get the encoded frames.
+     */
+    public void sendPriceUpdate(Tick tick) {
+        // Every tick is retained for replay and the snapshot, even when nobody is subscribed right now
+        replayBuffer.append(tick);
+        priceSnapshot.update(tick);
+        candles.onTick(tick);
+        metrics.onTick(tick.getPairId());
+
+        SseFrame[] frames = pairFrames[tick.getPairId()];
+        boolean subscribed = false;
+        for (WireFormat format : FORMATS) {
+            // One frame per tick and format, shared by every subscriber on every shard
+            boolean encode = hasSubscribers(format, tick.getPairId());
+            frames[format.ordinal()] = encode ? encoder.encode(tick, format) : null;
+            subscribed |= encode;
+        }
+        if (!subscribed) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (FanOutShard shard : shards) {
+            for (WireFormat format : FORMATS) {
+                if (frames[format.ordinal()] != null && shard.hasSubscribers(format, tick.getPairId())) {
+                    shard.submit(tick.getPairId(), frames, now);
+                    break;
+                }
+            }
+        }
+        // The shards copied the frames, the holder must not keep the tick alive
+        Arrays.fill(frames, null);
+    }
+
+    /**
+     * Returns the latest bars of the pair, the one in progress included.
+     */
+    public PriceSnapshot.Body getCandles(String ccyPair, CandleInterval interval, int limit) {
+        return candles.recent(instruments.idOf(ccyPair), interval, limit, Tick.epochNanos() / 1_000_000L);
+    }
+
+    /**
+     * Applies a reload of the instruments: counts the ticks of new pairs and sends the new
+     * {@code instruments} event to the streams of the indexed formats before any tick of a new pair.
+     */
+    public void onInstrumentsReloaded() {
+        metrics.registerPairs(new ArrayList<>(instruments.names()));
+        SseFrame frame = encoder.getInstrumentsFrame();
+        for (SseConnection connection : connections.values()) {
+            if (connection.getFormat().isIndexed()) {
+                connection.offerInstruments(frame);
+                scheduleDrain(connection);
+            }
+        }
+    }
+
+    public int getCandleHistoryBars() {
+        return candles.getHistoryBars();
+    }
+
+    // Runs on the scheduler once per candle period: bars closed since the last run and bars in progress
+    // that changed go to the streams that asked for their interval, as one event per stream
+    private void publishCandles() {
+        try {
+            // Tick timestamps come from the same clock, so bars close consistently with the ticks in them
+            byte[][][] bars = candles.collect(Tick.epochNanos() / 1_000_000L);
+            for (SseConnection connection : connections.values()) {
+                if (!connection.hasCandles()) {
+                    continue;
+                }
+                List<byte[]> parts = new ArrayList<>();
+                for (CandleInterval interval : CANDLE_INTERVALS) {
+                    if (!connection.hasCandles(interval)) {
+                        continue;
+                    }
+                    byte[][] pairBars = bars[interval.ordinal()];
+                    if (connection.isWildcard()) {
+                        for (byte[] part : pairBars) {
+                            if (part != null) {
+                                parts.add(part);
+                            }
+                        }
+                    } else {
+                        for (String ccyPair : connection.getCcyPairs()) {
+                            byte[] part = pairBars[instruments.idOf(ccyPair)];
+                            if (part != null) {
+                                parts.add(part);
+                            }
+                        }
+                    }
+                }
+                if (!parts.isEmpty()) {
+                    connection.offerCandles(SseFrame.unsequenced(CANDLES_EVENT, CandleAggregator.join(parts)));
+                    // Degraded streams pick the event up with their next snapshot
+                    if (!connection.isDegraded()) {
+                        scheduleDrain(connection);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // A failing run must not cancel the periodic task
+            logger.error("Error publishing candles", e);
+        }
+    }
+
+    private boolean hasSubscribers(WireFormat format, int pairId) {
+        for (FanOutShard shard : shards) {
+            if (shard.hasSubscribers(format, pairId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits until every tick published so far has been handed to the subscribed connections.
+     */
+    void awaitFanOut() throws InterruptedException {
+        for (FanOutShard shard : shards) {
+            shard.await();
+        }
+    }
+
+    public void shutdown() {
+        for (FanOutShard shard : shards) {
+            shard.shutdown();
+        }
+        throttleWheel.shutdown();
+        heartbeatWheel.cancel();
+        candleTask.cancel(false);
+    }
+
+    // Runs on a shard worker: only buffers the frame, the write happens on a writer thread.
+    private void offer(SseConnection[] subscribers, int pairId, SseFrame frame, long now) {
+        for (SseConnection connection : subscribers) {
+            SseConnection.OfferResult result = connection.offer(pairId, frame, now);
+            if (result == SseConnection.OfferResult.LAGGING) {
+                handleSlowConsumer(connection, pairId, frame, now);
+            } else {
+                onOffered(connection, pairId, result);
+            }
+        }
+    }
+
+    private void onOffered(SseConnection connection, int pairId, SseConnection.OfferResult result) {
+        switch (result) {
+            case QUEUED:
+            case CONFLATED:
+                // Batching and degraded connections are drained by their timer instead
+                if (!connection.isBatching() && !connection.isDegraded()) {
+                    scheduleDrain(connection);
+                }
+                break;
+            case HELD:
+                throttleWheel.schedule(connection, pairId, connection.getReleaseNanos(pairId));
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Runs on the throttle wheel thread when a rate-limited pair may send again
+    private void releaseThrottled(SseConnection connection, int pairId, long now) {
+        SseConnection.OfferResult result = connection.release(pairId, now);
+        if (result != null && isActive(connection)) {
+            onOffered(connection, pairId, result);
+        }
+    }
+
+    private void handleSlowConsumer(SseConnection connection, int pairId, SseFrame frame, long now) {
+        switch (properties.getSlowConsumerPolicy()) {
+            case DROP:
+                connection.onDropped(pairId);
+                break;
+            case DISCONNECT:
+                logger.warn("Disconnecting slow consumer: {}", connection.getUserId());
+                removeConnection(connection);
+                connection.getEmitter().complete();
+                break;
+            case SNAPSHOT:
+                if (connection.degrade()) {
+                    logger.warn("Degrading slow consumer to snapshots: {}", connection.getUserId());
+                    scheduleSnapshot(connection);
+                }
+                onOffered(connection, pairId, connection.offer(pairId, frame, now));
+                break;
+        }
+    }
+
+    // Runs on the scheduler once per heartbeat interval for every open stream
+    private void checkConnection(SseConnection connection) {
+        long now = System.nanoTime();
+        if (connection.isStalled(now, TimeUnit.MILLISECONDS.toNanos(properties.getStallTimeoutMs()))) {
+            logger.warn("Evicting stalled stream of user: {} connection: {}", connection.getUserId(), connection.getId());
+            metrics.onStall();
+            removeConnection(connection);
+            connection.getEmitter().completeWithError(new IOException("Stream stalled"));
+            return;
+        }
+        // A comment on an idle stream keeps proxies from closing it and surfaces dead peers on the write.
+        // Visits are one interval apart, so half an interval without writes means idle since the last one.
+        if (connection.requestHeartbeat(now, TimeUnit.MILLISECONDS.toNanos(properties.getHeartbeatIntervalMs()) / 2)) {
+            scheduleDrain(connection);
+        }
+    }
+
+    private void scheduleDrain(SseConnection connection) {
+        if (connection.tryStartDrain()) {
+            try {
+                writers.execute(() -> drain(connection));
+            } catch (RejectedExecutionException e) {
+                connection.endDrain();
+            }
+        }
+    }
+
+    private void scheduleSnapshot(SseConnection connection) {
+        scheduler.schedule(() -> {
+            if (connection.isDegraded() && !connection.isBatching() && isActive(connection)) {
+                scheduleDrain(connection);
+            }
+        }, properties.getSnapshotIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    // Writes at most the frames pending when the pass starts, so one busy connection cannot hog a writer.
+    private void drain(SseConnection connection) {
+        long start = System.nanoTime();
+        connection.onWriting(start);
+        try {
+            if (connection.takeHeartbeat()) {
+                connection.getEmitter().send(HEARTBEAT);
+                connection.onHeartbeat(start);
+                metrics.onHeartbeat(HEARTBEAT.size());
+            }
+            // Ahead of any tick of a pair the event introduces
+            SseFrame instrumentsFrame = connection.takeInstruments();
+            if (instrumentsFrame != null) {
+                connection.getEmitter().send(instrumentsFrame);
+                metrics.onWrite(instrumentsFrame.size(), 0);
+            }
+            SseFrame candleFrame;
+            while ((candleFrame = connection.pollCandles()) != null) {
+                connection.getEmitter().send(candleFrame);
+                metrics.onWrite(candleFrame.size(), 0);
+            }
+            if (connection.isBatching()) {
+                List<SseFrame> batch = connection.pollBatch();
+                if (!batch.isEmpty()) {
+                    long now = System.nanoTime();
+                    batch.replaceAll(pending -> connection.encode(pending, now));
+                    SseFrame frame = SseFrame.batch(BATCH_EVENT, batch, connection.getFormat());
+                    connection.getEmitter().send(frame);
+                    connection.onSent(batch.size(), System.nanoTime());
+                    metrics.onWrite(frame.size(), Tick.epochNanos() - frame.getTimestampNanos());
+                }
+            } else {
+                int budget = connection.getQueueDepth();
+                SseFrame frame;
+                while (budget-- > 0 && (frame = connection.poll()) != null) {
+                    frame = connection.encode(frame, System.nanoTime());
+                    connection.getEmitter().send(frame);
+                    connection.onSent(1, System.nanoTime());
+                    metrics.onWrite(frame.size(), Tick.epochNanos() - frame.getTimestampNanos());
+                }
+            }
+        } catch (Exception e) {
+            // The drain flag stays set so no further pass is scheduled for a broken stream
+            logger.warn("Error sending price update to user: {}, closing stream: {}", connection.getUserId(), e.toString());
+            metrics.onWriteFailure();
+            removeConnection(connection);
+            connection.getEmitter().completeWithError(e);
+            return;
+        }
+        connection.endDrain();
+        if (!isActive(connection)) {
+            // Evicted while the pass was blocked
+            return;
+        }
+        if (connection.isDegraded()) {
+            if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(properties.getMaxLagMs())) {
+                connection.recover();
+                logger.info("Slow consumer caught up, resuming live updates: {}", connection.getUserId());
+            } else {
+                scheduleSnapshot(connection);
+                return;
+            }
+        }
+        if (connection.hasPending() && !connection.isBatching()) {
+            scheduleDrain(connection);
+        }
+    }
+}
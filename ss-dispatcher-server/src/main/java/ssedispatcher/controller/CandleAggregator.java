@@ -0,0 +1,275 @@
+package ssedispatcher.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open, high, low and close of the bid, and the tick count, of every pair for each {@link CandleInterval}.
+ * Each pair keeps its latest bars per interval in fixed-size primitive rings, so a tick updates a few
+ * array slots under the pair's lock and allocates nothing; the lock is only contended while a publish
+ * or a {@code /candles} request reads the pair. The rings of a pair are allocated on its first tick or
+ * request, so room left for pairs added by a reload costs nothing until they are used.
+ * <p>
+ * A bar is closed once its period has ended (plus a short grace for ticks still on their way), whether
+ * or not a later tick has arrived; ticks for a bar that has already been published as closed are ignored.
+ * Bars are encoded as JSON objects, {@code {"ccyPair":"EURUSD","interval":"1m","start":epochMillis,
+ * "open":1.1012,"high":1.1020,"low":1.1001,"close":1.1015,"ticks":57,"closed":true}}.
+ */
+public class CandleAggregator {
+
+    private static final CandleInterval[] INTERVALS = CandleInterval.values();
+    private static final long CLOSE_GRACE_MS = 250L;
+    private static final int BAR_BYTES = 256;
+    private static final byte[] INTERVAL = ascii("\",\"interval\":\"");
+    private static final byte[] START = ascii("\",\"start\":");
+    private static final byte[] OPEN = ascii(",\"open\":");
+    private static final byte[] HIGH = ascii(",\"high\":");
+    private static final byte[] LOW = ascii(",\"low\":");
+    private static final byte[] CLOSE = ascii(",\"close\":");
+    private static final byte[] TICKS = ascii(",\"ticks\":");
+    private static final byte[] CLOSED = ascii(",\"closed\":true}");
+    private static final byte[] OPEN_BAR = ascii(",\"closed\":false}");
+    private static final byte[][] INTERVAL_NAMES = new byte[INTERVALS.length][];
+
+    static {
+        for (CandleInterval interval : INTERVALS) {
+            INTERVAL_NAMES[interval.ordinal()] = ascii(interval.getParameter());
+        }
+    }
+
+    private final Instruments instruments;
+    private final int slots;
+    private final AtomicReferenceArray<Pair> pairs;
+    // Last /candles body per pair and interval, reused while its entity tag holds
+    private final AtomicReferenceArray<PriceSnapshot.Body> bodies;
+
+    public CandleAggregator(Instruments instruments, int historyBars) {
+        this.instruments = instruments;
+        this.slots = Math.max(1, historyBars);
+        this.pairs = new AtomicReferenceArray<>(instruments.capacity());
+        this.bodies = new AtomicReferenceArray<>(instruments.capacity() * INTERVALS.length);
+    }
+
+    public int getHistoryBars() {
+        return slots;
+    }
+
+    // Runs on the thread delivering the bus's ticks
+    public void onTick(Tick tick) {
+        Pair pair = pair(tick.getPairId());
+        long millis = Math.floorDiv(tick.getTimestampNanos(), 1_000_000L);
+        synchronized (pair) {
+            for (int i = 0; i < INTERVALS.length; i++) {
+                pair.update(i, tick.getBid(), millis);
+            }
+        }
+    }
+
+    /**
+     * Returns, per interval and pair id, the bars to publish as comma-separated JSON objects: those closed
+     * since the previous call and the bar in progress if it changed. Null where there is nothing new.
+     */
+    public byte[][][] collect(long nowMillis) {
+        byte[][][] out = new byte[INTERVALS.length][pairs.length()][];
+        for (int id = 0; id < pairs.length(); id++) {
+            Pair pair = pairs.get(id);
+            if (pair == null) {
+                continue;
+            }
+            synchronized (pair) {
+                for (int i = 0; i < INTERVALS.length; i++) {
+                    out[i][id] = pair.collect(i, nowMillis);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns the latest {@code limit} bars of the pair, oldest first, as a JSON array, with an entity tag
+     * that changes whenever one of them does.
+     */
+    public PriceSnapshot.Body recent(int pairId, CandleInterval interval, int limit, long nowMillis) {
+        Pair pair = pair(pairId);
+        int i = interval.ordinal();
+        int cacheIndex = pairId * INTERVALS.length + i;
+        synchronized (pair) {
+            long bars = pair.bars[i];
+            long closedThrough = pair.closedThrough(i, nowMillis);
+            String etag = "\"" + pairId + "-" + interval.getParameter() + "-" + Long.toHexString(pair.versions[i])
+                    + "-" + Long.toHexString(closedThrough) + "-" + limit + "\"";
+            PriceSnapshot.Body cached = bodies.get(cacheIndex);
+            if (cached != null && cached.getEtag().equals(etag)) {
+                return cached;
+            }
+            long from = Math.max(0, bars - Math.min(limit, slots));
+            byte[] buf = new byte[2 + (int) (bars - from) * (BAR_BYTES + 1)];
+            int pos = 0;
+            buf[pos++] = '[';
+            for (long bar = from; bar < bars; bar++) {
+                if (bar > from) {
+                    buf[pos++] = ',';
+                }
+                pos = pair.encode(buf, pos, i, bar, bar < closedThrough);
+            }
+            buf[pos++] = ']';
+            PriceSnapshot.Body body = new PriceSnapshot.Body(etag, Arrays.copyOf(buf, pos));
+            bodies.set(cacheIndex, body);
+            return body;
+        }
+    }
+
+    private Pair pair(int pairId) {
+        Pair pair = pairs.get(pairId);
+        if (pair == null) {
+            pairs.compareAndSet(pairId, null, new Pair(instruments.name(pairId), instruments.scale(pairId)));
+            pair = pairs.get(pairId);
+        }
+        return pair;
+    }
+
+    /**
+     * Returns the parts returned by {@link #collect} as one JSON array.
+     */
+    public static byte[] join(List<byte[]> parts) {
+        int length = 2 + Math.max(0, parts.size() - 1);
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] data = new byte[length];
+        int pos = 0;
+        data[pos++] = '[';
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) {
+                data[pos++] = ',';
+            }
+            byte[] part = parts.get(i);
+            System.arraycopy(part, 0, data, pos, part.length);
+            pos += part.length;
+        }
+        data[pos] = ']';
+        return data;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private final class Pair {
+        private final byte[] prefix;
+        private final int scale;
+        // Per interval: bars created so far, bars published as closed, ticks seen; bar k is in slot k % slots
+        private final long[] bars = new long[INTERVALS.length];
+        private final long[] published = new long[INTERVALS.length];
+        private final long[] versions = new long[INTERVALS.length];
+        private final boolean[] dirty = new boolean[INTERVALS.length];
+        // Bar fields, indexed by interval * slots + slot
+        private final long[] starts = new long[INTERVALS.length * slots];
+        private final long[] opens = new long[INTERVALS.length * slots];
+        private final long[] highs = new long[INTERVALS.length * slots];
+        private final long[] lows = new long[INTERVALS.length * slots];
+        private final long[] closes = new long[INTERVALS.length * slots];
+        private final int[] ticks = new int[INTERVALS.length * slots];
+
+        Pair(String ccyPair, int scale) {
+            this.prefix = ascii("{\"ccyPair\":\"" + ccyPair);
+            this.scale = scale;
+        }
+
+        private int index(int interval, long bar) {
+            return interval * slots + (int) (bar % slots);
+        }
+
+        void update(int interval, long bid, long millis) {
+            long length = INTERVALS[interval].getMillis();
+            long start = millis - Math.floorMod(millis, length);
+            long count = bars[interval];
+            if (count > 0) {
+                int current = index(interval, count - 1);
+                if (start < starts[current] || (start == starts[current] && count <= published[interval])) {
+                    // Late for a bar that has moved on or has been published as closed
+                    return;
+                }
+                if (start == starts[current]) {
+                    highs[current] = Math.max(highs[current], bid);
+                    lows[current] = Math.min(lows[current], bid);
+                    closes[current] = bid;
+                    ticks[current]++;
+                    dirty[interval] = true;
+                    versions[interval]++;
+                    return;
+                }
+            }
+            int next = index(interval, count);
+            starts[next] = start;
+            opens[next] = bid;
+            highs[next] = bid;
+            lows[next] = bid;
+            closes[next] = bid;
+            ticks[next] = 1;
+            bars[interval] = count + 1;
+            dirty[interval] = true;
+            versions[interval]++;
+        }
+
+        // Bars below the returned index are closed
+        long closedThrough(int interval, long nowMillis) {
+            long count = bars[interval];
+            if (count == 0) {
+                return 0;
+            }
+            long end = starts[index(interval, count - 1)] + INTERVALS[interval].getMillis();
+            return end + CLOSE_GRACE_MS <= nowMillis ? count : count - 1;
+        }
+
+        byte[] collect(int interval, long nowMillis) {
+            long count = bars[interval];
+            long closedThrough = closedThrough(interval, nowMillis);
+            long from = Math.max(published[interval], count - slots);
+            boolean inProgress = closedThrough < count && dirty[interval];
+            int pending = (int) Math.max(0, closedThrough - from) + (inProgress ? 1 : 0);
+            published[interval] = closedThrough;
+            dirty[interval] = false;
+            if (pending == 0) {
+                return null;
+            }
+            byte[] buf = new byte[pending * (BAR_BYTES + 1)];
+            int pos = 0;
+            for (long bar = from; bar < closedThrough; bar++) {
+                if (pos > 0) {
+                    buf[pos++] = ',';
+                }
+                pos = encode(buf, pos, interval, bar, true);
+            }
+            if (inProgress) {
+                if (pos > 0) {
+                    buf[pos++] = ',';
+                }
+                pos = encode(buf, pos, interval, count - 1, false);
+            }
+            return Arrays.copyOf(buf, pos);
+        }
+
+        int encode(byte[] buf, int pos, int interval, long bar, boolean closed) {
+            int slot = index(interval, bar);
+            pos = TickEncoder.put(buf, pos, prefix);
+            pos = TickEncoder.put(buf, pos, INTERVAL);
+            pos = TickEncoder.put(buf, pos, INTERVAL_NAMES[interval]);
+            pos = TickEncoder.put(buf, pos, START);
+            pos = TickEncoder.putLong(buf, pos, starts[slot]);
+            pos = TickEncoder.put(buf, pos, OPEN);
+            pos = TickEncoder.putDecimal(buf, pos, opens[slot], scale);
+            pos = TickEncoder.put(buf, pos, HIGH);
+            pos = TickEncoder.putDecimal(buf, pos, highs[slot], scale);
+            pos = TickEncoder.put(buf, pos, LOW);
+            pos = TickEncoder.putDecimal(buf, pos, lows[slot], scale);
+            pos = TickEncoder.put(buf, pos, CLOSE);
+            pos = TickEncoder.putDecimal(buf, pos, closes[slot], scale);
+            pos = TickEncoder.put(buf, pos, TICKS);
+            pos = TickEncoder.putLong(buf, pos, ticks[slot]);
+            return TickEncoder.put(buf, pos, closed ? CLOSED : OPEN_BAR);
+        }
+    }
+}
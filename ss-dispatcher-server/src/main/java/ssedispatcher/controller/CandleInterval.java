@@ -0,0 +1,36 @@
+package ssedispatcher.controller;
+
+/**
+ * Bar lengths of the OHLC candles, chosen with {@code candles=} on {@code /stream-sse} and
+ * {@code interval=} on {@code /candles}. Bars start at multiples of the length since the epoch.
+ */
+public enum CandleInterval {
+    ONE_SECOND("1s", 1_000L),
+    ONE_MINUTE("1m", 60_000L),
+    FIVE_MINUTES("5m", 300_000L);
+
+    private final String parameter;
+    private final long millis;
+
+    CandleInterval(String parameter, long millis) {
+        this.parameter = parameter;
+        this.millis = millis;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public static CandleInterval fromParameter(String parameter) {
+        for (CandleInterval interval : values()) {
+            if (interval.parameter.equalsIgnoreCase(parameter)) {
+                return interval;
+            }
+        }
+        throw new IllegalArgumentException("Unknown candle interval: " + parameter);
+    }
+}
@@ -0,0 +1,45 @@
+package ssedispatcher.controller;
+
+import java.util.Arrays;
+
+/**
+ * Copy-on-write set of connections. Subscription changes are rare and copy the array; the tick path
+ * reads the current array and iterates it without taking a lock or allocating an iterator.
+ */
+final class ConnectionSet {
+
+    private static final SseConnection[] EMPTY = new SseConnection[0];
+
+    private volatile SseConnection[] connections = EMPTY;
+
+    SseConnection[] get() {
+        return connections;
+    }
+
+    synchronized boolean add(SseConnection connection) {
+        SseConnection[] current = connections;
+        for (SseConnection c : current) {
+            if (c == connection) {
+                return false;
+            }
+        }
+        SseConnection[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = connection;
+        connections = updated;
+        return true;
+    }
+
+    synchronized boolean remove(SseConnection connection) {
+        SseConnection[] current = connections;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == connection) {
+                SseConnection[] updated = new SseConnection[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                connections = updated;
+                return true;
+            }
+        }
+        return false;
+    }
+}
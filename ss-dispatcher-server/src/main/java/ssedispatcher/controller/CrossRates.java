@@ -0,0 +1,276 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Derives cross pairs such as EURJPY from the priced pairs, so clients get them as ordinary ticks instead
+ * of computing them. Each cross is resolved once to two legs through a common currency (EURJPY from
+ * EURUSD and USDJPY); a leg enters the cross as is or inverted. A tick of a leg recomputes only the crosses
+ * that use it, looked up by pair id, and publishes those whose price changed on the bus like any other tick.
+ * <p>
+ * Prices stay fixed-point: a cross is the product of its legs' unscaled values over the product of the
+ * inverted ones, rescaled to the cross's scale. The bid is rounded down and the ask up, and an inverted
+ * leg contributes its ask to the bid and its bid to the ask, so the derived spread is never narrower than
+ * the legs allow.
+ */
+public class CrossRates implements TickListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrossRates.class);
+    private static final int CURRENCY_LENGTH = 3;
+
+    private final Instruments instruments;
+    // Latest price of every leg, written by the thread delivering the bus's ticks
+    private final Quote[] quotes;
+    // Crosses to recompute per pair id, null for pairs that are no leg
+    private final Cross[][] crossesByLeg;
+    private final Map<String, List<String>> legsByCross = new LinkedHashMap<>();
+    private PriceBus bus;
+
+    /**
+     * Resolves the legs of the crosses and registers them with the instruments. A cross without two legs
+     * through a common currency is left out with a warning.
+     */
+    public CrossRates(Instruments instruments, List<String> crosses) {
+        this.instruments = instruments;
+        this.quotes = new Quote[instruments.capacity()];
+        this.crossesByLeg = new Cross[instruments.capacity()][];
+        List<int[]> legs = new ArrayList<>();
+        for (String cross : crosses) {
+            String ccyPair = cross.trim().toUpperCase();
+            if (ccyPair.isEmpty() || legsByCross.containsKey(ccyPair)) {
+                continue;
+            }
+            if (instruments.idOf(ccyPair) >= 0) {
+                logger.warn("Not deriving {}: it is priced from the instrument file", ccyPair);
+                continue;
+            }
+            int[] resolved = resolve(ccyPair);
+            if (resolved == null) {
+                logger.warn("Cannot derive {}: no two pairs through a common currency", ccyPair);
+                continue;
+            }
+            legsByCross.put(ccyPair, Arrays.asList(instruments.name(resolved[0]), instruments.name(resolved[2])));
+            legs.add(resolved);
+        }
+        List<String> ccyPairs = new ArrayList<>(legsByCross.keySet());
+        // A cross is quoted to the decimals of the leg holding its quote currency, EURJPY like USDJPY
+        Map<String, Integer> scales = new LinkedHashMap<>();
+        for (int i = 0; i < ccyPairs.size(); i++) {
+            scales.put(ccyPairs.get(i), instruments.scale(legs.get(i)[2]));
+        }
+        instruments.addDerived(scales);
+        for (int i = 0; i < ccyPairs.size(); i++) {
+            int[] resolved = legs.get(i);
+            Cross cross = new Cross(instruments.idOf(ccyPairs.get(i)), resolved[0], resolved[1] == 1, resolved[2], resolved[3] == 1);
+            link(cross.leg1, cross);
+            link(cross.leg2, cross);
+            logger.info("Deriving {} from {}{} and {}{}", ccyPairs.get(i), cross.inverted1 ? "1/" : "",
+                    instruments.name(cross.leg1), cross.inverted2 ? "1/" : "", instruments.name(cross.leg2));
+        }
+    }
+
+    /**
+     * Returns the derived crosses in id order, each with the two pairs it is derived from.
+     */
+    public Map<String, List<String>> getLegs() {
+        return Collections.unmodifiableMap(legsByCross);
+    }
+
+    /**
+     * Starts deriving: ticks of the legs on the bus recompute their crosses, which are published on it.
+     * Only the pricing node derives; other nodes receive the crosses with the direct ticks.
+     */
+    public void attach(PriceBus bus) {
+        this.bus = bus;
+        bus.subscribe(this);
+    }
+
+    // Runs on the thread delivering the bus's ticks
+    @Override
+    public void onTick(Tick tick) {
+        int pairId = tick.getPairId();
+        Cross[] crosses = pairId < crossesByLeg.length ? crossesByLeg[pairId] : null;
+        if (crosses == null) {
+            return;
+        }
+        quotes[pairId].set(tick.getBid(), tick.getAsk());
+        for (Cross cross : crosses) {
+            try {
+                cross.update(tick.getTimestampNanos());
+            } catch (ArithmeticException e) {
+                logger.warn("Cannot derive {}: {}", instruments.name(cross.tick.getPairId()), e.toString());
+            }
+        }
+    }
+
+    private void link(int leg, Cross cross) {
+        if (quotes[leg] == null) {
+            quotes[leg] = new Quote();
+        }
+        Cross[] current = crossesByLeg[leg];
+        Cross[] updated = current == null ? new Cross[1] : Arrays.copyOf(current, current.length + 1);
+        updated[updated.length - 1] = cross;
+        crossesByLeg[leg] = updated;
+    }
+
+    // Leg ids and inversion flags {leg1, inverted1, leg2, inverted2} of base/quote = (base/common) / (quote/common)
+    private int[] resolve(String ccyPair) {
+        if (ccyPair.length() != 2 * CURRENCY_LENGTH) {
+            return null;
+        }
+        String base = ccyPair.substring(0, CURRENCY_LENGTH);
+        String quote = ccyPair.substring(CURRENCY_LENGTH);
+        int[] best = null;
+        for (int id = 0; id < instruments.size(); id++) {
+            if (instruments.isDerived(id)) {
+                continue;
+            }
+            String name = instruments.name(id);
+            String common = otherCurrency(name, base);
+            if (common == null || common.equals(quote)) {
+                continue;
+            }
+            int quoteLeg = find(quote, common);
+            if (quoteLeg >= 0) {
+                int[] legs = {id, name.startsWith(base) ? 0 : 1, quoteLeg, instruments.name(quoteLeg).startsWith(quote) ? 1 : 0};
+                // Prefer legs through the dollar, the most liquid pairs
+                if (best == null || "USD".equals(common)) {
+                    best = legs;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int find(String currency, String common) {
+        int id = instruments.idOf(currency + common);
+        if (id < 0) {
+            id = instruments.idOf(common + currency);
+        }
+        return id >= 0 && !instruments.isDerived(id) ? id : -1;
+    }
+
+    private static String otherCurrency(String ccyPair, String currency) {
+        if (ccyPair.length() != 2 * CURRENCY_LENGTH) {
+            return null;
+        }
+        if (ccyPair.startsWith(currency)) {
+            return ccyPair.substring(CURRENCY_LENGTH);
+        }
+        return ccyPair.endsWith(currency) ? ccyPair.substring(0, CURRENCY_LENGTH) : null;
+    }
+
+    private static final class Quote {
+        private final StampedLock lock = new StampedLock();
+        private long bid;
+        private long ask;
+
+        void set(long bid, long ask) {
+            long stamp = lock.writeLock();
+            this.bid = bid;
+            this.ask = ask;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private final class Cross {
+        private final int leg1;
+        private final boolean inverted1;
+        private final int leg2;
+        private final boolean inverted2;
+        // Only touched under the cross's lock, which orders the ticks of the two leg threads
+        private final Tick tick;
+        private long lastTimestampNanos;
+
+        Cross(int pairId, int leg1, boolean inverted1, int leg2, boolean inverted2) {
+            this.tick = new Tick(pairId);
+            this.leg1 = leg1;
+            this.inverted1 = inverted1;
+            this.leg2 = leg2;
+            this.inverted2 = inverted2;
+        }
+
+        synchronized void update(long timestampNanos) {
+            Quote quote1 = quotes[leg1];
+            Quote quote2 = quotes[leg2];
+            long bid1;
+            long ask1;
+            long stamp;
+            do {
+                stamp = quote1.lock.tryOptimisticRead();
+                bid1 = quote1.bid;
+                ask1 = quote1.ask;
+            } while (!quote1.lock.validate(stamp));
+            long bid2;
+            long ask2;
+            do {
+                stamp = quote2.lock.tryOptimisticRead();
+                bid2 = quote2.bid;
+                ask2 = quote2.ask;
+            } while (!quote2.lock.validate(stamp));
+            if (bid1 <= 0 || bid2 <= 0) {
+                // A leg has not ticked yet
+                return;
+            }
+            int scale = instruments.scale(tick.getPairId());
+            int scale1 = instruments.scale(leg1);
+            int scale2 = instruments.scale(leg2);
+            long bid = derive(inverted1 ? ask1 : bid1, scale1, inverted1, inverted2 ? ask2 : bid2, scale2, inverted2, scale, false);
+            long ask = derive(inverted1 ? bid1 : ask1, scale1, inverted1, inverted2 ? bid2 : ask2, scale2, inverted2, scale, true);
+            if (bid == tick.getBid() && ask == tick.getAsk()) {
+                return;
+            }
+            // The two legs are priced on different threads, so a cross never goes back in time
+            lastTimestampNanos = Math.max(lastTimestampNanos, timestampNanos);
+            tick.set(bid, ask, lastTimestampNanos);
+            bus.publish(tick);
+        }
+    }
+
+    // value1^(+/-1) * value2^(+/-1) at the given scale, rounded down or up
+    static long derive(long value1, int scale1, boolean inverted1, long value2, int scale2, boolean inverted2,
+                       int scale, boolean roundUp) {
+        long numerator = 1;
+        long denominator = 1;
+        // The quotient numerator / denominator is the price at this scale
+        int quotientScale = 0;
+        if (inverted1) {
+            denominator = value1;
+            quotientScale -= scale1;
+        } else {
+            numerator = value1;
+            quotientScale += scale1;
+        }
+        if (inverted2) {
+            denominator = Math.multiplyExact(denominator, value2);
+            quotientScale -= scale2;
+        } else {
+            numerator = Math.multiplyExact(numerator, value2);
+            quotientScale += scale2;
+        }
+        if (scale >= quotientScale) {
+            numerator = multiplyByPowerOfTen(numerator, scale - quotientScale);
+        } else {
+            denominator = multiplyByPowerOfTen(denominator, quotientScale - scale);
+        }
+        return roundUp ? -Math.floorDiv(-numerator, denominator) : Math.floorDiv(numerator, denominator);
+    }
+
+    private static long multiplyByPowerOfTen(long value, int exponent) {
+        int maxExponent = Instruments.MAX_SCALE;
+        while (exponent > maxExponent) {
+            value = Math.multiplyExact(value, Instruments.powerOfTen(maxExponent));
+            exponent -= maxExponent;
+        }
+        return Math.multiplyExact(value, Instruments.powerOfTen(exponent));
+    }
+}
@@ -0,0 +1,76 @@
+package ssedispatcher.controller;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Delta mode of the compact format for one connection. It remembers the bid, ask and timestamp last
+ * sent for each pair and sends the next tick as {@code [~pairIndex,bidDelta,askDelta,microsDelta]}; the
+ * bitwise complement makes the index negative, which tells a delta from a compact keyframe
+ * ({@code [pairIndex,bid,ask,epochMicros]}). A keyframe is sent for the first tick of a pair, once per
+ * keyframe interval, and after a tick of the pair was conflated or dropped.
+ * <p>
+ * Only the writer draining the connection encodes, so the per-pair state needs no locking.
+ */
+final class DeltaEncoder {
+
+    private static final int SCRATCH_BYTES = 128;
+
+    private final long keyframeIntervalNanos;
+    private final long[] bids;
+    private final long[] asks;
+    private final long[] micros;
+    // System.nanoTime() of the last keyframe per pair, 0 before the first
+    private final long[] keyframeNanos;
+    // Set by pricing threads on conflation or drop, consumed by the writer
+    private final AtomicIntegerArray keyframeDue;
+    private final byte[] scratch = new byte[SCRATCH_BYTES];
+
+    DeltaEncoder(int pairs, long keyframeIntervalMs) {
+        this.keyframeIntervalNanos = keyframeIntervalMs * 1_000_000L;
+        this.bids = new long[pairs];
+        this.asks = new long[pairs];
+        this.micros = new long[pairs];
+        this.keyframeNanos = new long[pairs];
+        this.keyframeDue = new AtomicIntegerArray(pairs);
+    }
+
+    void requestKeyframe(int pairId) {
+        keyframeDue.set(pairId, 1);
+    }
+
+    /**
+     * Returns the frame to send for a compact tick frame: the frame itself as a keyframe, or a delta
+     * against the last tick of the pair sent on this connection.
+     */
+    SseFrame encode(SseFrame frame, long nowNanos) {
+        int pairId = frame.getPairId();
+        long tickMicros = Math.floorDiv(frame.getTimestampNanos(), 1_000L);
+        boolean due = keyframeDue.getAndSet(pairId, 0) == 1;
+        long previousBid = bids[pairId];
+        long previousAsk = asks[pairId];
+        long previousMicros = micros[pairId];
+        bids[pairId] = frame.getBid();
+        asks[pairId] = frame.getAsk();
+        micros[pairId] = tickMicros;
+        if (due || keyframeNanos[pairId] == 0 || nowNanos - keyframeNanos[pairId] >= keyframeIntervalNanos) {
+            keyframeNanos[pairId] = nowNanos;
+            return frame;
+        }
+        byte[] buf = scratch;
+        int pos = TickEncoder.put(buf, 0, TickEncoder.ID);
+        pos = TickEncoder.putLong(buf, pos, frame.getId());
+        pos = TickEncoder.put(buf, pos, TickEncoder.EVENT_DATA);
+        int dataOffset = pos;
+        buf[pos++] = '[';
+        pos = TickEncoder.putLong(buf, pos, ~pairId);
+        buf[pos++] = ',';
+        pos = TickEncoder.putLong(buf, pos, frame.getBid() - previousBid);
+        buf[pos++] = ',';
+        pos = TickEncoder.putLong(buf, pos, frame.getAsk() - previousAsk);
+        buf[pos++] = ',';
+        pos = TickEncoder.putLong(buf, pos, tickMicros - previousMicros);
+        buf[pos++] = ']';
+        return TickEncoder.frame(buf, pos, frame.getId(), dataOffset, frame.getTimestampNanos(),
+                pairId, frame.getBid(), frame.getAsk());
+    }
+}
@@ -0,0 +1,256 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One partition of the open streams. A connection belongs to the shard picked by its id for its whole
+ * life; the shard keeps the subscriber index of its connections and a worker thread that hands them
+ * each tick, so the fan-out of a tick runs on every shard at once instead of on the pricing thread.
+ * <p>
+ * Pricing threads queue a tick once per shard that has subscribers for it, copying its frames into a
+ * batch of reused arrays; the worker swaps the filled batch for the one it has just handed out, so
+ * queuing a tick allocates nothing once the batches have grown to the usual backlog. The worker spins
+ * briefly when no tick is queued and parks after that; producers only unpark a parked worker.
+ * <p>
+ * A worker that falls behind does not grow its batch without bound: past the maximum backlog a tick
+ * supersedes the queued tick of its pair, which is taken out and counted, as the connections would
+ * have conflated it anyway. The new tick goes to the back, so the hand-out stays in sequence order.
+ */
+final class FanOutShard {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanOutShard.class);
+    private static final int SPINS = 1_000;
+    private static final int INITIAL_BATCH = 64;
+    // Pair id of a queued tick superseded by a later one of the same pair
+    private static final int SUPERSEDED = -1;
+
+    interface Handler {
+        void offer(SseConnection[] subscribers, int pairId, SseFrame frame, long nowNanos);
+    }
+
+    // Index from wire format and pair id to the connections of this shard subscribed to it
+    private final ConnectionSet[][] pairSubscribers;
+    private final ConnectionSet[] wildcardSubscribers;
+    private final Handler handler;
+    private final DispatcherMetrics metrics;
+    private final Object lock = new Object();
+    // Filled by producers under the lock, swapped with the worker's batch when it takes the ticks
+    private Batch queued;
+    private Batch taken;
+    private volatile boolean pending;
+    private final Thread worker;
+    private volatile boolean parked;
+    private volatile boolean running = true;
+
+    FanOutShard(int index, int pairs, int maxBacklog, Handler handler, DispatcherMetrics metrics) {
+        int formats = WireFormat.values().length;
+        this.pairSubscribers = new ConnectionSet[formats][pairs];
+        this.wildcardSubscribers = new ConnectionSet[formats];
+        for (int format = 0; format < formats; format++) {
+            for (int id = 0; id < pairs; id++) {
+                pairSubscribers[format][id] = new ConnectionSet();
+            }
+            wildcardSubscribers[format] = new ConnectionSet();
+        }
+        this.handler = handler;
+        this.metrics = metrics;
+        this.queued = new Batch(formats, pairs, maxBacklog);
+        this.taken = new Batch(formats, pairs, maxBacklog);
+        this.worker = new Thread(this::run, "FanOut-" + index);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    ConnectionSet subscribers(WireFormat format, int pairId) {
+        return pairSubscribers[format.ordinal()][pairId];
+    }
+
+    ConnectionSet wildcardSubscribers(WireFormat format) {
+        return wildcardSubscribers[format.ordinal()];
+    }
+
+    boolean hasSubscribers(WireFormat format, int pairId) {
+        return pairSubscribers[format.ordinal()][pairId].get().length > 0
+                || wildcardSubscribers[format.ordinal()].get().length > 0;
+    }
+
+    /**
+     * Queues a tick with its frame per wire format, null for formats nobody is subscribed with. The
+     * frames are copied, so the caller can reuse the array.
+     */
+    void submit(int pairId, SseFrame[] frames, long publishedNanos) {
+        boolean superseded;
+        synchronized (lock) {
+            superseded = queued.add(pairId, frames, publishedNanos);
+            pending = true;
+        }
+        if (parked) {
+            LockSupport.unpark(worker);
+        }
+        if (superseded) {
+            metrics.onFanOutConflated();
+        }
+    }
+
+    /**
+     * Waits until the worker has handed out every tick submitted before the call.
+     */
+    void await() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        synchronized (lock) {
+            queued.barriers.add(done);
+            pending = true;
+        }
+        LockSupport.unpark(worker);
+        done.await();
+    }
+
+    void shutdown() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (running) {
+            if (pending) {
+                Batch batch;
+                synchronized (lock) {
+                    batch = queued;
+                    queued = taken;
+                    pending = false;
+                }
+                taken = batch;
+                process(batch);
+                continue;
+            }
+            for (int i = 0; i < SPINS && !pending; i++) {
+                Thread.onSpinWait();
+            }
+            if (!pending) {
+                parked = true;
+                // Re-checked after publishing the flag, so a tick queued meanwhile is not left waiting
+                if (!pending && running) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+            }
+        }
+    }
+
+    private void process(Batch batch) {
+        int formats = batch.formats;
+        for (int i = 0; i < batch.size; i++) {
+            int pairId = batch.pairIds[i];
+            if (pairId == SUPERSEDED) {
+                continue;
+            }
+            long publishedNanos = batch.publishedNanos[i];
+            try {
+                for (int format = 0; format < formats; format++) {
+                    SseFrame frame = batch.frames[i * formats + format];
+                    if (frame != null) {
+                        handler.offer(pairSubscribers[format][pairId].get(), pairId, frame, publishedNanos);
+                        handler.offer(wildcardSubscribers[format].get(), pairId, frame, publishedNanos);
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.error("Error fanning out a tick of pair id {}", pairId, e);
+            }
+            metrics.recordFanOut(publishedNanos, System.nanoTime());
+        }
+        for (CountDownLatch done : batch.barriers) {
+            done.countDown();
+        }
+        batch.clear();
+    }
+
+    /**
+     * Ticks to hand out in queue order: pair id, publish time and the frame per wire format of each, in
+     * arrays that grow with the backlog and are reused after every hand-out. Past the maximum backlog the
+     * arrays only grow while at least half their entries are live, and are compacted otherwise.
+     */
+    private static final class Batch {
+        private final int formats;
+        private final int maxBacklog;
+        private final List<CountDownLatch> barriers = new ArrayList<>();
+        // Per pair id, the index of its latest queued tick, if that index still holds the pair
+        private final int[] latest;
+        private int[] pairIds = new int[INITIAL_BATCH];
+        private long[] publishedNanos = new long[INITIAL_BATCH];
+        private SseFrame[] frames;
+        private int size;
+        private int superseded;
+
+        Batch(int formats, int pairs, int maxBacklog) {
+            this.formats = formats;
+            this.maxBacklog = maxBacklog;
+            this.latest = new int[pairs];
+            this.frames = new SseFrame[INITIAL_BATCH * formats];
+        }
+
+        // Returns whether a queued tick of the pair was superseded
+        boolean add(int pairId, SseFrame[] tickFrames, long nanos) {
+            boolean superseding = false;
+            if (size - superseded >= maxBacklog) {
+                int index = latest[pairId];
+                if (index < size && pairIds[index] == pairId) {
+                    pairIds[index] = SUPERSEDED;
+                    Arrays.fill(frames, index * formats, (index + 1) * formats, null);
+                    superseded++;
+                    superseding = true;
+                }
+            }
+            if (size == pairIds.length) {
+                if (superseded > size / 2) {
+                    compact();
+                } else {
+                    pairIds = Arrays.copyOf(pairIds, size * 2);
+                    publishedNanos = Arrays.copyOf(publishedNanos, size * 2);
+                    frames = Arrays.copyOf(frames, size * 2 * formats);
+                }
+            }
+            latest[pairId] = size;
+            pairIds[size] = pairId;
+            publishedNanos[size] = nanos;
+            System.arraycopy(tickFrames, 0, frames, size * formats, formats);
+            size++;
+            return superseding;
+        }
+
+        // Moves the live ticks to the front, keeping their order
+        private void compact() {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int pairId = pairIds[i];
+                if (pairId == SUPERSEDED) {
+                    continue;
+                }
+                if (kept != i) {
+                    pairIds[kept] = pairId;
+                    publishedNanos[kept] = publishedNanos[i];
+                    System.arraycopy(frames, i * formats, frames, kept * formats, formats);
+                }
+                latest[pairId] = kept++;
+            }
+            Arrays.fill(frames, kept * formats, size * formats, null);
+            size = kept;
+            superseded = 0;
+        }
+
+        void clear() {
+            // Frames are dropped so the batch does not keep old ticks alive
+            Arrays.fill(frames, 0, size * formats, null);
+            size = 0;
+            superseded = 0;
+            barriers.clear();
+        }
+    }
+}
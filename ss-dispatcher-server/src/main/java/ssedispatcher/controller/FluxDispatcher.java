@@ -0,0 +1,52 @@
+package ssedispatcher.controller;
+
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.Set;
+
+/**
+ * Non-blocking counterpart of {@link BaseDispatcher}. Every tick is published once into a multicast
+ * sink and each subscriber gets its own backpressured view of it: when a subscriber falls behind,
+ * only the latest unsent price per pair is kept for it.
+ */
+public class FluxDispatcher {
+
+    private final Sinks.Many<ServerSentEvent<Price>> sink = Sinks.many().multicast().directBestEffort();
+    private final Instruments instruments;
+
+    public FluxDispatcher(Instruments instruments, PriceBus bus) {
+        this.instruments = instruments;
+        bus.subscribe(this::publish);
+    }
+
+    public boolean hasSubscribers() {
+        return sink.currentSubscriberCount() > 0;
+    }
+
+    public void publish(Tick tick) {
+        if (!hasSubscribers()) {
+            return;
+        }
+        // The Price view is only built when somebody listens; Pricer reuses the tick for the next update
+        int id = tick.getPairId();
+        Price price = Price.of(instruments.name(id), tick.getBid(), tick.getAsk(), instruments.scale(id), tick.getTimestampNanos());
+        ServerSentEvent<Price> event = ServerSentEvent.builder(price)
+                .id(Long.toString(tick.getSequence()))
+                .event(BaseDispatcher.PRICE_EVENT)
+                .build();
+        // Pricer threads publish concurrently; retry while another thread is emitting
+        sink.emitNext(event, (signalType, result) -> result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+    }
+
+    public Flux<ServerSentEvent<Price>> stream(Set<String> ccyPairs) {
+        Flux<ServerSentEvent<Price>> events = sink.asFlux();
+        if (!ccyPairs.isEmpty()) {
+            events = events.filter(event -> ccyPairs.contains(event.data().getCcyPair()));
+        }
+        // One group per pair, each requesting a single element at a time and conflating to the latest
+        return events.groupBy(event -> event.data().getCcyPair())
+                .flatMap(group -> group.onBackpressureLatest(), Integer.MAX_VALUE, 1);
+    }
+}
@@ -0,0 +1,63 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Visits every open stream once per heartbeat interval from a single scheduled task. Streams are spread
+ * over the slots of a wheel by id and each turn visits one slot, so the checks of many streams are spread
+ * evenly over the interval instead of firing together, and no stream needs a task of its own.
+ */
+final class HeartbeatWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatWheel.class);
+    private static final int SLOTS = 64;
+
+    private final ConnectionSet[] slots = new ConnectionSet[SLOTS];
+    private final Consumer<SseConnection> visitor;
+    private final ScheduledFuture<?> task;
+    // Only touched by the scheduled task
+    private int next;
+
+    HeartbeatWheel(ScheduledExecutorService scheduler, long intervalMs, Consumer<SseConnection> visitor) {
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new ConnectionSet();
+        }
+        this.visitor = visitor;
+        long turnMicros = Math.max(1, intervalMs * 1_000L / SLOTS);
+        this.task = scheduler.scheduleAtFixedRate(this::turn, turnMicros, turnMicros, TimeUnit.MICROSECONDS);
+    }
+
+    void add(SseConnection connection) {
+        slotOf(connection).add(connection);
+    }
+
+    void remove(SseConnection connection) {
+        slotOf(connection).remove(connection);
+    }
+
+    void cancel() {
+        task.cancel(false);
+    }
+
+    private ConnectionSet slotOf(SseConnection connection) {
+        return slots[(int) (connection.getId() % SLOTS)];
+    }
+
+    private void turn() {
+        for (SseConnection connection : slots[next].get()) {
+            // A failing visit must not cancel the periodic task
+            try {
+                visitor.accept(connection);
+            } catch (RuntimeException e) {
+                logger.warn("Error checking stream of user: {}: {}", connection.getUserId(), e.toString());
+            }
+        }
+        next = (next + 1) % SLOTS;
+    }
+}
@@ -0,0 +1,181 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers ticks to listeners in the same JVM. Publishing only takes the next position of a
+ * pre-allocated ring with one compare-and-set, which is the tick's sequence, and copies the tick fields
+ * into the slot; a single dispatch thread takes the slots in position order and hands each tick to the
+ * listeners. Engine threads therefore never wait for each other or for the listeners, and the listeners
+ * still get the ticks in sequence order.
+ * <p>
+ * A full ring holds publishers back until the dispatch thread catches up. The last quarter of the ring
+ * is kept for ticks published by the listeners themselves, such as crosses, on the dispatch thread;
+ * should even that fill up, such a tick is dropped and counted rather than waiting on itself.
+ */
+public class InProcessPriceBus implements PriceBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessPriceBus.class);
+    private static final int SIZE = 1 << 14; // power of two
+    private static final int MASK = SIZE - 1;
+    private static final int HEADROOM = SIZE / 4;
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 1_000_000L;
+
+    private final int[] pairIds = new int[SIZE];
+    private final long[] bids = new long[SIZE];
+    private final long[] asks = new long[SIZE];
+    private final long[] timestamps = new long[SIZE];
+    // Per slot: position + 1 once written
+    private final AtomicLongArray markers = new AtomicLongArray(SIZE);
+    // Positions taken so far, which is also the last sequence
+    private final AtomicLong cursor = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    // Positions the dispatch thread has copied out of the ring, so their slots can be written again
+    private volatile long dispatched;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+    private volatile Thread dispatcher;
+    // One reusable tick per pair, only touched by the dispatch thread
+    private Tick[] ticks = new Tick[0];
+    // Copy-on-write, so the tick path iterates without a lock or an iterator
+    private volatile TickListener[] listeners = new TickListener[0];
+
+    @Override
+    public void publish(Tick tick) {
+        if (dispatcher == null) {
+            start();
+        }
+        boolean reentrant = Thread.currentThread() == dispatcher;
+        long position;
+        int attempt = 0;
+        while (true) {
+            position = cursor.get();
+            if (position - dispatched >= (reentrant ? SIZE : SIZE - HEADROOM)) {
+                if (reentrant) {
+                    dropped.increment();
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                RingWaitStrategy.YIELDING.idle(attempt++);
+            } else if (cursor.compareAndSet(position, position + 1)) {
+                break;
+            }
+        }
+        int slot = (int) (position & MASK);
+        tick.setSequence(position + 1);
+        pairIds[slot] = tick.getPairId();
+        bids[slot] = tick.getBid();
+        asks[slot] = tick.getAsk();
+        timestamps[slot] = tick.getTimestampNanos();
+        // A volatile write, so the dispatch thread cannot miss it between checking the slot and parking
+        markers.set(slot, position + 1);
+        if (waiting) {
+            // Only the first publisher to find it parked wakes it, the others see it awake
+            waiting = false;
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private synchronized void start() {
+        if (dispatcher == null) {
+            Thread thread = new Thread(this::run, "PriceBus-dispatcher");
+            thread.setDaemon(true);
+            dispatcher = thread;
+            thread.start();
+        }
+    }
+
+    private void run() {
+        long next = 0;
+        int idle = 0;
+        while (!closed) {
+            int slot = (int) (next & MASK);
+            if (markers.get(slot) != next + 1) {
+                idle(slot, next + 1, idle++);
+                continue;
+            }
+            idle = 0;
+            Tick tick = tick(pairIds[slot]);
+            tick.set(bids[slot], asks[slot], timestamps[slot]);
+            tick.setSequence(next + 1);
+            // Copied out, so publishers can have the slot while the listeners run
+            dispatched = ++next;
+            dispatch(tick);
+        }
+    }
+
+    private void idle(int slot, long expected, int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+            return;
+        }
+        waiting = true;
+        if (markers.get(slot) != expected) {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        waiting = false;
+    }
+
+    private Tick tick(int pairId) {
+        if (pairId >= ticks.length) {
+            Tick[] grown = Arrays.copyOf(ticks, pairId + 1);
+            for (int id = ticks.length; id < grown.length; id++) {
+                grown[id] = new Tick(id);
+            }
+            ticks = grown;
+        }
+        return ticks[pairId];
+    }
+
+    /**
+     * Hands an already sequenced tick to the listeners on the calling thread, which must be the only one
+     * delivering ticks, as the receiver of a subscribing node is.
+     */
+    void dispatch(Tick tick) {
+        for (TickListener listener : listeners) {
+            // A failing listener must not stop the others, nor the thread delivering the ticks
+            try {
+                listener.onTick(tick);
+            } catch (RuntimeException e) {
+                logger.error("Error in tick listener for tick {}", tick.getSequence(), e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(TickListener listener) {
+        TickListener[] current = listeners;
+        TickListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    @Override
+    public long getSequence() {
+        return cursor.get();
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread = dispatcher;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
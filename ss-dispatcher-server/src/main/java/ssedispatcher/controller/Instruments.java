@@ -0,0 +1,350 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The currency pairs from {@code ccypair-list.csv}, each identified by a dense {@code int} id in file
+ * order. Prices are fixed-point {@code long}s: the unscaled value at the pair's scale, so 1.1012 at
+ * scale 4 is 11012. Each line is {@code pair,basePrice[,tickRateHz[,scale]]}, the scale being the number
+ * of decimals the pair is quoted to, 4 when omitted.
+ * <p>
+ * The pair attributes live in parallel arrays of an immutable table, so lookups by id are array reads.
+ * {@link #reload()} re-reads the file and swaps in a new table: pairs keep their ids and scales, new pairs
+ * get the next ones and changed base prices and tick rates apply to existing pairs. Per-pair state elsewhere is
+ * sized by {@link #capacity()}, the most pairs the registry can grow to.
+ * <p>
+ * Derived pairs, registered with {@link #addDerived}, get ids like any other pair but are not in the file
+ * and are not priced; their ticks are computed from the ticks of other pairs.
+ */
+public class Instruments {
+
+    public static final int DEFAULT_SCALE = 4;
+    public static final int DEFAULT_TICK_RATE_HZ = 100;
+    public static final int MAX_SCALE = 8;
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L};
+
+    private static final Logger logger = LoggerFactory.getLogger(Instruments.class);
+
+    private interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private final Source source;
+    private final int capacity;
+    private volatile Table table;
+
+    private Instruments(Source source, int capacity, Table table) {
+        this.source = source;
+        this.capacity = capacity;
+        this.table = table;
+    }
+
+    public static Instruments load(String configFilePath) throws IOException {
+        return load(configFilePath, 0);
+    }
+
+    /**
+     * Loads the pairs from a classpath resource, leaving room for up to {@code capacity} pairs after
+     * reloads; a capacity below the number of pairs in the file means no room to grow.
+     */
+    public static Instruments load(String configFilePath, int capacity) throws IOException {
+        return load(() -> {
+            InputStream inputStream = Instruments.class.getClassLoader().getResourceAsStream(configFilePath);
+            if (inputStream == null) {
+                throw new FileNotFoundException("Classpath resource not found: " + configFilePath);
+            }
+            return inputStream;
+        }, capacity);
+    }
+
+    /**
+     * Loads the pairs from a file, which {@link #reload()} reads again.
+     */
+    public static Instruments loadFile(Path file, int capacity) throws IOException {
+        return load(() -> Files.newInputStream(file), capacity);
+    }
+
+    private static Instruments load(Source source, int capacity) throws IOException {
+        Table table = Table.build(new Table(), read(source), Integer.MAX_VALUE);
+        return new Instruments(source, Math.max(capacity, table.names.length), table);
+    }
+
+    /**
+     * Reads the file again and swaps in the new table. Returns the pairs that were added. Pairs no longer
+     * in the file keep their id and last settings, since streams and clients may still refer to them.
+     *
+     * @throws IllegalStateException if the file has more pairs than the capacity
+     */
+    public synchronized List<String> reload() throws IOException {
+        Table current = table;
+        Table next = Table.build(current, read(source), capacity);
+        List<String> added = new ArrayList<>();
+        for (int id = current.names.length; id < next.names.length; id++) {
+            added.add(next.names[id]);
+        }
+        for (int id = 0; id < current.names.length; id++) {
+            String ccyPair = current.names[id];
+            if (!current.derived[id] && !next.inFile.contains(ccyPair)) {
+                logger.warn("Pair {} is no longer in the instrument file, keeping its last settings", ccyPair);
+            }
+        }
+        table = next;
+        return added;
+    }
+
+    /**
+     * Registers pairs that are derived from others rather than priced, with their scales, giving them the
+     * next ids. Pairs already registered as derived keep their ids and scales.
+     *
+     * @throws IllegalStateException if a pair is in the instrument file or there is no room for the pairs
+     */
+    public synchronized void addDerived(Map<String, Integer> scales) {
+        table = Table.derive(table, scales, capacity);
+    }
+
+    public boolean isDerived(int id) {
+        return table.derived[id];
+    }
+
+    private static List<String[]> read(Source source) throws IOException {
+        List<String[]> lines = new ArrayList<>();
+        try (InputStream inputStream = source.open();
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 2 && parts.length <= 4) {
+                    lines.add(parts);
+                }
+            }
+        }
+        return lines;
+    }
+
+    public int size() {
+        return table.names.length;
+    }
+
+    /**
+     * Returns the most pairs the registry can hold, the size of per-pair arrays that must not be resized.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns a number that changes with every reload.
+     */
+    public long version() {
+        return table.version;
+    }
+
+    /**
+     * Returns the id of the pair, or -1 if it is not known.
+     */
+    public int idOf(String ccyPair) {
+        Integer id = table.ids.get(ccyPair);
+        return id == null ? -1 : id;
+    }
+
+    public String name(int id) {
+        return table.names[id];
+    }
+
+    byte[] asciiName(int id) {
+        return table.asciiNames[id];
+    }
+
+    public long basePrice(int id) {
+        return table.basePrices[id];
+    }
+
+    public int scale(int id) {
+        return table.scales[id];
+    }
+
+    /**
+     * Returns how many times per second the pair is priced.
+     */
+    public int tickRateHz(int id) {
+        return table.tickRates[id];
+    }
+
+    public Set<String> names() {
+        return table.nameSet;
+    }
+
+    /**
+     * Returns the pair names as a JSON array, encoded once per reload.
+     */
+    public byte[] namesJson() {
+        return table.namesJson;
+    }
+
+    /**
+     * Returns the entity tag of {@link #namesJson()}, computed with it; it only changes with the names.
+     */
+    public String namesEtag() {
+        return table.namesEtag;
+    }
+
+    public static BigDecimal toBigDecimal(long value, int scale) {
+        return BigDecimal.valueOf(value, scale);
+    }
+
+    public static double toDouble(long value, int scale) {
+        return (double) value / POWERS_OF_TEN[scale];
+    }
+
+    public static long powerOfTen(int scale) {
+        return POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * Returns the fixed-point value at another scale, rounded down or up when digits are dropped.
+     */
+    public static long rescale(long value, int fromScale, int toScale, boolean roundUp) {
+        if (toScale >= fromScale) {
+            return value * POWERS_OF_TEN[toScale - fromScale];
+        }
+        long unit = POWERS_OF_TEN[fromScale - toScale];
+        return roundUp ? Math.floorDiv(value + unit - 1, unit) : Math.floorDiv(value, unit);
+    }
+
+    private static final class Table {
+        private final long version;
+        private final String[] names;
+        private final byte[][] asciiNames;
+        private final long[] basePrices;
+        private final int[] scales;
+        private final int[] tickRates;
+        private final boolean[] derived;
+        private final Map<String, Integer> ids;
+        private final Set<String> nameSet;
+        private final Set<String> inFile;
+        private final byte[] namesJson;
+        private final String namesEtag;
+
+        Table() {
+            this(-1, Collections.emptyList(), new long[0], new int[0], new int[0], new boolean[0], Collections.emptySet());
+        }
+
+        private Table(long version, List<String> names, long[] basePrices, int[] scales, int[] tickRates,
+                      boolean[] derived, Set<String> inFile) {
+            int size = names.size();
+            this.version = version;
+            this.names = names.toArray(new String[0]);
+            this.asciiNames = new byte[size][];
+            this.basePrices = basePrices;
+            this.scales = scales;
+            this.tickRates = tickRates;
+            this.derived = derived;
+            this.ids = new HashMap<>();
+            StringBuilder json = new StringBuilder("[");
+            for (int id = 0; id < size; id++) {
+                asciiNames[id] = this.names[id].getBytes(StandardCharsets.US_ASCII);
+                ids.put(this.names[id], id);
+                json.append(id > 0 ? ",\"" : "\"").append(this.names[id]).append('"');
+            }
+            this.nameSet = Collections.unmodifiableSet(new LinkedHashSet<>(names));
+            this.inFile = inFile;
+            this.namesJson = json.append(']').toString().getBytes(StandardCharsets.US_ASCII);
+            this.namesEtag = "\"" + Integer.toHexString(Arrays.hashCode(namesJson)) + "\"";
+        }
+
+        /**
+         * Builds the table following {@code previous}: its pairs keep their ids and scales, the first lines
+         * naming a pair set its base price and tick rate, and pairs new to it are appended in file order.
+         */
+        static Table build(Table previous, List<String[]> lines, int capacity) {
+            List<String> names = new ArrayList<>(Arrays.asList(previous.names));
+            Map<String, String[]> settings = new LinkedHashMap<>();
+            for (String[] parts : lines) {
+                settings.putIfAbsent(parts[0].trim(), parts);
+            }
+            for (String ccyPair : settings.keySet()) {
+                Integer id = previous.ids.get(ccyPair);
+                if (id == null) {
+                    names.add(ccyPair);
+                } else if (previous.derived[id]) {
+                    throw new IllegalStateException(ccyPair + " is derived, so it cannot be priced from the instrument file");
+                }
+            }
+            if (names.size() > capacity) {
+                throw new IllegalStateException("The instrument file has " + names.size() + " pairs, more than the "
+                        + capacity + " the dispatcher was started with room for");
+            }
+            long[] basePrices = Arrays.copyOf(previous.basePrices, names.size());
+            int[] scales = Arrays.copyOf(previous.scales, names.size());
+            int[] tickRates = Arrays.copyOf(previous.tickRates, names.size());
+            for (int id = 0; id < names.size(); id++) {
+                String[] parts = settings.get(names.get(id));
+                if (parts == null) {
+                    continue;
+                }
+                int scale = parts.length == 4 ? Integer.parseInt(parts[3].trim()) : DEFAULT_SCALE;
+                if (scale < 0 || scale > MAX_SCALE) {
+                    throw new IllegalStateException(names.get(id) + " has scale " + scale + ", not 0 to " + MAX_SCALE);
+                }
+                if (id >= previous.names.length) {
+                    scales[id] = scale;
+                } else if (scale != scales[id]) {
+                    // Streams, candles and the journal already carry the old scale
+                    logger.warn("Pair {} keeps scale {}, a new scale applies after a restart", names.get(id), scales[id]);
+                }
+                basePrices[id] = new BigDecimal(parts[1].trim()).setScale(scales[id], RoundingMode.HALF_UP)
+                        .unscaledValue().longValueExact();
+                tickRates[id] = parts.length >= 3 ? Integer.parseInt(parts[2].trim()) : DEFAULT_TICK_RATE_HZ;
+            }
+            return new Table(previous.version + 1, names, basePrices, scales, tickRates,
+                    Arrays.copyOf(previous.derived, names.size()), settings.keySet());
+        }
+
+        static Table derive(Table previous, Map<String, Integer> ccyPairs, int capacity) {
+            List<String> names = new ArrayList<>(Arrays.asList(previous.names));
+            for (String ccyPair : ccyPairs.keySet()) {
+                Integer id = previous.ids.get(ccyPair);
+                if (id == null) {
+                    if (!names.contains(ccyPair)) {
+                        names.add(ccyPair);
+                    }
+                } else if (!previous.derived[id]) {
+                    throw new IllegalStateException(ccyPair + " is priced from the instrument file, so it cannot be derived");
+                }
+            }
+            if (names.size() > capacity) {
+                throw new IllegalStateException(names.size() + " pairs with the derived ones, more than the "
+                        + capacity + " the dispatcher was started with room for");
+            }
+            boolean[] derived = Arrays.copyOf(previous.derived, names.size());
+            Arrays.fill(derived, previous.names.length, names.size(), true);
+            int[] scales = Arrays.copyOf(previous.scales, names.size());
+            for (int id = previous.names.length; id < names.size(); id++) {
+                scales[id] = ccyPairs.get(names.get(id));
+            }
+            return new Table(previous.version + 1, names, Arrays.copyOf(previous.basePrices, names.size()), scales,
+                    Arrays.copyOf(previous.tickRates, names.size()), derived, previous.inFile);
+        }
+    }
+}
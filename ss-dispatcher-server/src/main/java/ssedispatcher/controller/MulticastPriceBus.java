@@ -0,0 +1,226 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Price bus over UDP multicast, so one pricing node can feed any number of dispatcher nodes. The
+ * publisher sends each tick as one {@link TickCodec} datagram from the dispatch thread of its local bus,
+ * ahead of its own listeners, so datagrams leave in sequence order; subscribers receive on a single
+ * thread and deliver to their listeners from there.
+ * <p>
+ * Datagrams can be lost: a subscriber counts the ticks missing per pair and carries on with the next
+ * one. A datagram older than the last tick received for its pair is dropped, so a pair never goes back
+ * in time. A new publisher session, after a restart, resets the expected sequences. Ticks of pairs the
+ * subscriber does not know, such as pairs the publisher has reloaded ahead of it, are ignored.
+ */
+public class MulticastPriceBus implements PriceBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(MulticastPriceBus.class);
+    private static final int RECEIVE_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    private final InProcessPriceBus local = new InProcessPriceBus();
+    private final DatagramChannel channel;
+    private final InetSocketAddress group;
+    private final Instruments instruments;
+    private final boolean publisher;
+    // Publisher state, only touched by the dispatch thread of the local bus
+    private final long[] pairSequences;
+    private final long session = ThreadLocalRandom.current().nextLong();
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(TickCodec.RECORD_SIZE);
+    // Subscriber state, only touched by the receiver thread apart from the sequence
+    private final DispatcherMetrics metrics;
+    private final Tick[] ticks;
+    private final long[] expected;
+    private final List<Runnable> resetActions = new CopyOnWriteArrayList<>();
+    private long currentSession;
+    private volatile long sequence;
+    private volatile boolean closed;
+
+    private MulticastPriceBus(DatagramChannel channel, InetSocketAddress group, Instruments instruments, boolean publisher,
+                              DispatcherMetrics metrics) {
+        int pairs = instruments.capacity();
+        this.channel = channel;
+        this.group = group;
+        this.instruments = instruments;
+        this.publisher = publisher;
+        this.pairSequences = new long[pairs];
+        this.metrics = metrics;
+        this.ticks = new Tick[pairs];
+        for (int id = 0; id < pairs; id++) {
+            ticks[id] = new Tick(id);
+        }
+        this.expected = new long[pairs];
+        if (publisher) {
+            // Other nodes first, local streams are fanned out while the datagram is in flight
+            local.subscribe(this::send);
+        }
+    }
+
+    /**
+     * Creates the bus of a pricing node, sending to {@code group:port} on the given interface.
+     */
+    public static MulticastPriceBus publisher(String group, int port, String interfaceName, Instruments instruments) {
+        try {
+            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                    .setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface(interfaceName))
+                    .setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            logger.info("Publishing ticks to {}:{} on {}", group, port, interfaceName);
+            return new MulticastPriceBus(channel, new InetSocketAddress(InetAddress.getByName(group), port), instruments, true, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open price bus publisher on " + group + ":" + port, e);
+        }
+    }
+
+    /**
+     * Creates the bus of a dispatcher node, joining {@code group:port} on the given interface. Several
+     * nodes on one host can join the same group.
+     */
+    public static MulticastPriceBus subscriber(String group, int port, String interfaceName, Instruments instruments,
+                                               DispatcherMetrics metrics) {
+        try {
+            InetAddress address = InetAddress.getByName(group);
+            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                    .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                    .setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_BYTES)
+                    .bind(new InetSocketAddress(port));
+            channel.join(address, networkInterface(interfaceName));
+            MulticastPriceBus bus = new MulticastPriceBus(channel, new InetSocketAddress(address, port), instruments, false, metrics);
+            Thread receiver = new Thread(bus::receive, "PriceBus-receiver");
+            receiver.setDaemon(true);
+            receiver.start();
+            logger.info("Receiving ticks from {}:{} on {}", group, port, interfaceName);
+            return bus;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot join price bus " + group + ":" + port, e);
+        }
+    }
+
+    private static NetworkInterface networkInterface(String name) throws IOException {
+        NetworkInterface networkInterface = NetworkInterface.getByName(name);
+        if (networkInterface == null) {
+            throw new IOException("Unknown network interface: " + name);
+        }
+        return networkInterface;
+    }
+
+    @Override
+    public void publish(Tick tick) {
+        if (!publisher) {
+            throw new IllegalStateException("A subscribing node does not publish ticks");
+        }
+        local.publish(tick);
+    }
+
+    private void send(Tick tick) {
+        TickCodec.encode(sendBuffer, tick, session, ++pairSequences[tick.getPairId()]);
+        try {
+            channel.send(sendBuffer, group);
+        } catch (IOException e) {
+            if (!closed) {
+                logger.warn("Failed to publish tick {}: {}", tick.getSequence(), e.toString());
+            }
+        }
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(TickCodec.RECORD_SIZE * 2);
+        while (!closed) {
+            buffer.clear();
+            try {
+                channel.receive(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.warn("Failed to receive from the price bus: {}", e.toString());
+                continue;
+            }
+            buffer.flip();
+            if (!TickCodec.isValid(buffer) || TickCodec.pairId(buffer) < 0 || TickCodec.pairId(buffer) >= instruments.size()) {
+                logger.debug("Ignoring datagram of {} bytes that is not a known tick", buffer.remaining());
+                continue;
+            }
+            onDatagram(buffer);
+        }
+    }
+
+    private void onDatagram(ByteBuffer buffer) {
+        long datagramSession = TickCodec.session(buffer);
+        if (datagramSession != currentSession) {
+            logger.info("Price bus publisher session {} started", Long.toHexString(datagramSession));
+            currentSession = datagramSession;
+            Arrays.fill(expected, 0L);
+            sequence = 0;
+            for (Runnable action : resetActions) {
+                action.run();
+            }
+        }
+        int pairId = TickCodec.pairId(buffer);
+        long pairSequence = TickCodec.pairSequence(buffer);
+        long next = expected[pairId];
+        if (next != 0) {
+            if (pairSequence < next) {
+                metrics.onBusLate();
+                return;
+            }
+            if (pairSequence > next) {
+                logger.debug("Missed {} ticks for pair {}", pairSequence - next, pairId);
+                metrics.onBusGap(pairSequence - next);
+            }
+        }
+        expected[pairId] = pairSequence + 1;
+        Tick tick = ticks[pairId];
+        TickCodec.decode(buffer, tick);
+        if (tick.getSequence() > sequence) {
+            sequence = tick.getSequence();
+        }
+        local.dispatch(tick);
+    }
+
+    @Override
+    public void subscribe(TickListener listener) {
+        local.subscribe(listener);
+    }
+
+    @Override
+    public void onSequenceReset(Runnable action) {
+        resetActions.add(action);
+    }
+
+    @Override
+    public long getSequence() {
+        return publisher ? local.getSequence() : sequence;
+    }
+
+    @Override
+    public long getDropped() {
+        return local.getDropped();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        local.close();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Error closing the price bus: {}", e.toString());
+        }
+    }
+}
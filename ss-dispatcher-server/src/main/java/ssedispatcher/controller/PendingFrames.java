@@ -0,0 +1,174 @@
+package ssedispatcher.controller;
+
+import java.util.Arrays;
+
+/**
+ * The latest unsent frame per pair of one connection, handed out in the order the frames arrived: a
+ * pair whose frame is replaced moves behind the others, so frames leave in sequence order and a
+ * client's {@code Last-Event-ID} is never ahead of a tick it has not been sent. An open-addressing
+ * table keyed by pair id plus a ring of pending ids, so offering and polling allocate nothing once the
+ * table has grown to the connection's working set.
+ * Not thread-safe; {@link SseConnection} guards it.
+ */
+final class PendingFrames {
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_TABLE = 16;
+
+    private final int maxSize;
+    private int[] keys;
+    private SseFrame[] values;
+    // Ring of pending pair ids in arrival order; every id in it has an entry in the table
+    private int[] order;
+    private int head;
+    private int size;
+
+    PendingFrames(int maxSize) {
+        this.maxSize = maxSize;
+        allocate(INITIAL_TABLE);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true if the frame replaced a pending frame of the same pair. Callers check
+     * {@link #isFull()} before offering a pair that is not pending yet.
+     */
+    boolean put(int pairId, SseFrame frame) {
+        int slot = find(pairId);
+        if (keys[slot] == pairId) {
+            values[slot] = frame;
+            moveToBack(pairId);
+            return true;
+        }
+        if ((size + 1) * 4 > keys.length * 3) {
+            grow();
+            slot = find(pairId);
+        }
+        keys[slot] = pairId;
+        values[slot] = frame;
+        order[(head + size) & (order.length - 1)] = pairId;
+        size++;
+        return false;
+    }
+
+    boolean contains(int pairId) {
+        return keys[find(pairId)] == pairId;
+    }
+
+    boolean isFull() {
+        return size >= maxSize;
+    }
+
+    SseFrame get(int pairId) {
+        int slot = find(pairId);
+        return keys[slot] == pairId ? values[slot] : null;
+    }
+
+    SseFrame poll() {
+        if (size == 0) {
+            return null;
+        }
+        int pairId = order[head];
+        head = (head + 1) & (order.length - 1);
+        size--;
+        return delete(find(pairId));
+    }
+
+    void remove(int pairId) {
+        int slot = find(pairId);
+        if (keys[slot] != pairId) {
+            return;
+        }
+        delete(slot);
+        unlink(pairId);
+        size--;
+    }
+
+    // Only on conflation, and the ring holds at most one id per pair
+    private void moveToBack(int pairId) {
+        unlink(pairId);
+        order[(head + size - 1) & (order.length - 1)] = pairId;
+    }
+
+    // Closes the gap the pair leaves in the ring, leaving the last position free
+    private void unlink(int pairId) {
+        int mask = order.length - 1;
+        int write = head;
+        for (int i = 0; i < size; i++) {
+            int id = order[(head + i) & mask];
+            if (id != pairId) {
+                order[write & mask] = id;
+                write++;
+            }
+        }
+    }
+
+    private int find(int pairId) {
+        int mask = keys.length - 1;
+        int slot = mix(pairId) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != pairId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Backward-shift deletion keeps probe sequences intact without tombstones
+    private SseFrame delete(int slot) {
+        SseFrame frame = values[slot];
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+        return frame;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        SseFrame[] oldValues = values;
+        int[] oldOrder = order;
+        int oldHead = head;
+        int count = size;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            order[i] = oldOrder[(oldHead + i) & (oldOrder.length - 1)];
+        }
+        size = count;
+    }
+
+    private void allocate(int tableSize) {
+        keys = new int[tableSize];
+        Arrays.fill(keys, EMPTY);
+        values = new SseFrame[tableSize];
+        order = new int[tableSize];
+        head = 0;
+        size = 0;
+    }
+
+    private static int mix(int pairId) {
+        return pairId * 0x9E3779B9 >>> 16 ^ pairId;
+    }
+}
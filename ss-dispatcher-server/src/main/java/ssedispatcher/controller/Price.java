@@ -1,7 +1,9 @@
 package ssedispatcher.controller;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 public class Price {
     private BigDecimal bid;
@@ -16,6 +18,15 @@ public class Price {
         this.timestamp = timestamp;
     }
 
+    /**
+     * Builds the view of a fixed-point tick, with the timestamp in the system zone.
+     */
+    public static Price of(String ccyPair, long bid, long ask, int scale, long epochNanos) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(epochNanos, 1_000_000_000L), Math.floorMod(epochNanos, 1_000_000_000L));
+        return new Price(Instruments.toBigDecimal(bid, scale), Instruments.toBigDecimal(ask, scale), ccyPair,
+                LocalDateTime.ofInstant(instant, ZoneId.systemDefault()));
+    }
+
     // Getters and setters
     public BigDecimal getBid() {
         return bid;
@@ -0,0 +1,43 @@
+package ssedispatcher.controller;
+
+import java.io.Closeable;
+
+/**
+ * Carries ticks from the {@link Pricer} to the dispatchers. The bus assigns each tick its sequence,
+ * which is also the SSE event id, so every node behind the same publisher numbers events the same way
+ * and a client can resume on any of them. Listeners get the ticks in sequence order, so a stream's
+ * {@code Last-Event-ID} covers every tick below it.
+ */
+public interface PriceBus extends Closeable {
+
+    /**
+     * Sequences the tick and hands it over for delivery to the listeners, which may happen on another
+     * thread once the call has returned. Called by the engine threads and by listeners deriving ticks.
+     */
+    void publish(Tick tick);
+
+    void subscribe(TickListener listener);
+
+    /**
+     * Registers an action run when the sequence starts over, as when a new publisher session begins;
+     * ids issued before are not comparable with those after. It runs before the first tick of the new
+     * sequence is delivered.
+     */
+    default void onSequenceReset(Runnable action) {
+    }
+
+    /**
+     * Returns the highest sequence published or received so far.
+     */
+    long getSequence();
+
+    /**
+     * Returns how many published ticks were dropped because the bus had no room for them.
+     */
+    default long getDropped() {
+        return 0;
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,13 @@
+package ssedispatcher.controller;
+
+/**
+ * Role of this node on the price bus.
+ */
+public enum PriceBusMode {
+    /** Price and dispatch in this JVM only. */
+    IN_PROCESS,
+    /** Price, dispatch locally and multicast every tick to dispatcher nodes. */
+    PUBLISH,
+    /** Dispatch the ticks multicast by a publishing node, without pricing. */
+    SUBSCRIBE
+}
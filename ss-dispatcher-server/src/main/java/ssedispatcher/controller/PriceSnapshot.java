@@ -0,0 +1,150 @@
+package ssedispatcher.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Latest price of every pair, for clients that need the current state before live ticks arrive. The
+ * tick path stores the primitive fields under a per-pair {@link StampedLock} that readers never take:
+ * they read optimistically and retry when a tick lands meanwhile. A pair's JSON is encoded on the first
+ * read after it changed and reused until its next tick, and the body of the full snapshot is kept until
+ * any pair changes, so page loads and reconnects mostly cost a lookup.
+ */
+public class PriceSnapshot {
+
+    private final Instruments instruments;
+    private final TickEncoder encoder;
+    private final Entry[] entries;
+    private volatile Body allPairs;
+
+    public PriceSnapshot(Instruments instruments, TickEncoder encoder) {
+        this.instruments = instruments;
+        this.encoder = encoder;
+        this.entries = new Entry[instruments.capacity()];
+        for (int id = 0; id < entries.length; id++) {
+            entries[id] = new Entry();
+        }
+    }
+
+    // Runs on the thread delivering the bus's ticks
+    public void update(Tick tick) {
+        Entry entry = entries[tick.getPairId()];
+        long stamp = entry.lock.writeLock();
+        entry.sequence = tick.getSequence();
+        entry.bid = tick.getBid();
+        entry.ask = tick.getAsk();
+        entry.timestampNanos = tick.getTimestampNanos();
+        entry.lock.unlockWrite(stamp);
+    }
+
+    /**
+     * Returns the latest tick of each of the pairs that has ticked, encoded as a {@code price} frame.
+     */
+    public List<SseFrame> latest(int[] pairIds) {
+        List<SseFrame> frames = new ArrayList<>(pairIds.length);
+        for (int pairId : pairIds) {
+            SseFrame frame = latest(pairId, WireFormat.JSON);
+            if (frame != null) {
+                frames.add(frame);
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Returns the latest tick of the pair encoded as a {@code price} frame, or null if it has not ticked yet.
+     */
+    SseFrame latest(int pairId, WireFormat format) {
+        Entry entry = entries[pairId];
+        long sequence;
+        long bid;
+        long ask;
+        long timestampNanos;
+        long stamp;
+        do {
+            stamp = entry.lock.tryOptimisticRead();
+            sequence = entry.sequence;
+            bid = entry.bid;
+            ask = entry.ask;
+            timestampNanos = entry.timestampNanos;
+        } while (!entry.lock.validate(stamp));
+        if (sequence == 0) {
+            return null;
+        }
+        SseFrame frame = entry.frames.get(format.ordinal());
+        if (frame == null || frame.getId() != sequence) {
+            // Concurrent readers may both encode the same tick, which is harmless
+            frame = encoder.encode(format, sequence, pairId, bid, ask, timestampNanos);
+            entry.frames.set(format.ordinal(), frame);
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the snapshot of the pairs as a JSON array of prices, with an entity tag that changes
+     * whenever one of them ticks.
+     */
+    public Body body(int[] pairIds) {
+        // Sorted distinct ids, so as many as there are pairs means every pair
+        boolean all = pairIds.length == instruments.size();
+        List<SseFrame> frames = latest(pairIds);
+        String etag = etag(pairIds, frames);
+        Body cached = allPairs;
+        if (all && cached != null && cached.etag.equals(etag)) {
+            return cached;
+        }
+        Body body = new Body(etag, SseFrame.joinData(frames));
+        if (all) {
+            allPairs = body;
+        }
+        return body;
+    }
+
+    /**
+     * Sequences are global and increasing, so the highest one identifies the state of a set of pairs;
+     * its timestamp tells sequences of different publisher sessions apart.
+     */
+    private static String etag(int[] pairIds, List<SseFrame> frames) {
+        long sequence = 0;
+        long timestampNanos = 0;
+        for (SseFrame frame : frames) {
+            if (frame.getId() > sequence) {
+                sequence = frame.getId();
+                timestampNanos = frame.getTimestampNanos();
+            }
+        }
+        return "\"" + Long.toHexString(sequence) + "-" + Long.toHexString(timestampNanos)
+                + "-" + Integer.toHexString(Arrays.hashCode(pairIds)) + "\"";
+    }
+
+    public static final class Body {
+        private final String etag;
+        private final byte[] json;
+
+        Body(String etag, byte[] json) {
+            this.etag = etag;
+            this.json = json;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+    }
+
+    private static final class Entry {
+        private final StampedLock lock = new StampedLock();
+        private long sequence;
+        private long bid;
+        private long ask;
+        private long timestampNanos;
+        // Encoded forms of the latest tick per wire format, null until first read
+        private final AtomicReferenceArray<SseFrame> frames = new AtomicReferenceArray<>(WireFormat.values().length);
+    }
+}
@@ -1,5 +1,24 @@
 package ssedispatcher.controller;
 
+/**
+ * Consumer of the ticks in the JVM, added with {@link Pricer#addSubscriber}. It runs on a thread of its
+ * own that follows the {@link TickRing}, off the path that streams ticks to clients, so it gets every tick
+ * only while it keeps up with the ring.
+ */
 public interface PriceSubscriber {
-    void onPriceUpdate(double bid, double ask);
-}
\ No newline at end of file
+
+    /**
+     * Called for each tick the subscriber reads from the ring, in the order the ticks were published, so
+     * sequences only go up. Ticks overwritten before the subscriber reached them are skipped and reported
+     * through {@link #onMissed} instead. The tick is reused for the next tick of its pair, so copy what is
+     * kept.
+     */
+    void onPriceUpdate(Tick tick);
+
+    /**
+     * Called when the subscriber fell a whole ring behind and {@code ticks} ticks were overwritten
+     * before it read them.
+     */
+    default void onMissed(long ticks) {
+    }
+}
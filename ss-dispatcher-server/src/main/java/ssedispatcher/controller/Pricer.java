@@ -1,147 +1,177 @@
 package ssedispatcher.controller;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.TimeUnit;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Pricer {
-    private static final BigDecimal MAX_VARIATION = BigDecimal.valueOf(0.01);
-    private static final int THREAD_POOL_SIZE = 3;
-    private static final int MAX_DELAY_MS = 10;
-
-    private final List<PriceSubscriber> subscribers;
-    private final ScheduledExecutorService scheduler;
-    private BaseDispatcher baseDispatcher;
-    private final List<Price> prices;
-    private final Map<String, BigDecimal> basePrices;
-    private final Map<String, Boolean> activePairs;
-
-    public Pricer(String configFilePath) throws IOException {
-        this.subscribers = new ArrayList<>();
-        this.scheduler = Executors.newScheduledThreadPool(THREAD_POOL_SIZE);
-        this.basePrices = loadCurrencyPairs(configFilePath);
-        this.prices = basePrices.keySet().stream()
-                .map(ccyPair -> new Price(BigDecimal.ZERO, BigDecimal.ZERO, ccyPair, LocalDateTime.now()))
-                .collect(Collectors.toList());
-        this.activePairs = new HashMap<>();
-    }
-
-    private Map<String, BigDecimal> loadCurrencyPairs(String configFilePath) throws IOException {
-        Map<String, BigDecimal> currencyPairs = new HashMap<>();
-        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(configFilePath);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 2) {
-                    currencyPairs.put(parts[0], new BigDecimal(parts[1]));
-                }
-            }
+    // Price moves within +/- half of 1% of a unit around the base price, the spread is 1 to 2 pips
+    private static final int VARIATION_DIVISOR = 100;
+    private static final int PIP_DIVISOR = 10_000;
+    static final int DEFAULT_RING_SIZE = 1 << 16;
+
+    // Every tick on the bus, priced here or received, for the subscribers in the JVM
+    private final TickRing ring;
+    private final RingWaitStrategy waitStrategy;
+    private final AtomicInteger subscriberThreads = new AtomicInteger();
+    private boolean ringAttached;
+    private final TickEngine engine;
+    private final PriceBus bus;
+    private final Instruments instruments;
+    // One reusable tick per pair, only written by the engine thread that owns the pair
+    private final Tick[] ticks;
+
+    public Pricer(String configFilePath, int threads) throws IOException {
+        this(Instruments.load(configFilePath), threads, new InProcessPriceBus());
+    }
+
+    public Pricer(Instruments instruments, int threads, PriceBus bus) {
+        this(instruments, threads, bus, DEFAULT_RING_SIZE, RingWaitStrategy.SLEEPING);
+    }
+
+    public Pricer(Instruments instruments, int threads, PriceBus bus, int ringSize, RingWaitStrategy waitStrategy) {
+        this.ring = new TickRing(ringSize, instruments.capacity());
+        this.waitStrategy = waitStrategy;
+        this.instruments = instruments;
+        this.bus = bus;
+        this.ticks = new Tick[instruments.capacity()];
+        int[] tickRates = new int[instruments.size()];
+        for (int id = 0; id < ticks.length; id++) {
+            ticks[id] = new Tick(id);
+        }
+        for (int id = 0; id < tickRates.length; id++) {
+            tickRates[id] = instruments.tickRateHz(id);
         }
-        return currencyPairs;
+        this.engine = new TickEngine(tickRates, instruments.capacity(), threads, this::generateAndNotifyPrice);
     }
 
-    public void setBaseDispatcher(BaseDispatcher baseDispatcher) {
-        this.baseDispatcher = baseDispatcher;
+    /**
+     * Hands the ticks published from now on to the subscriber, on a thread of its own that waits with
+     * the configured strategy; ticks it falls a whole ring behind on are skipped, as described in
+     * {@link PriceSubscriber}.
+     */
+    public void addSubscriber(PriceSubscriber subscriber) {
+        addSubscriber("PriceSubscriber-" + subscriberThreads.incrementAndGet(), subscriber, waitStrategy);
     }
 
-    public void addSubscriber(PriceSubscriber subscriber) {
-        subscribers.add(subscriber);
+    public synchronized void addSubscriber(String name, PriceSubscriber subscriber, RingWaitStrategy waitStrategy) {
+        if (!ringAttached) {
+            // Behind the listeners already on the bus, so streaming is not held up by the copy into the ring
+            bus.subscribe(ring);
+            ringAttached = true;
+        }
+        ring.subscribe(name, subscriber, waitStrategy);
     }
 
+    /**
+     * Stops the subscriber once it has been handed the ticks published before the call.
+     */
     public void removeSubscriber(PriceSubscriber subscriber) {
-        subscribers.remove(subscriber);
+        ring.unsubscribe(subscriber);
+    }
+
+    public TickRing getRing() {
+        return ring;
     }
 
     public void startPriceGeneration() {
-        for (Price price : prices) {
-            scheduleNextPriceGeneration(price);
-        }
+        engine.start();
+    }
+
+    public void stopPriceGeneration() {
+        engine.shutdown();
     }
 
+    /**
+     * Starts pricing the pair; a pair that is already priced is left as it is.
+     */
     public void startPricing(String ccyPair) {
-        activePairs.put(ccyPair, true);
-        scheduleNextPriceGeneration(new Price(BigDecimal.ZERO, BigDecimal.ZERO, ccyPair, LocalDateTime.now()));
+        engine.startPricing(idOf(ccyPair));
     }
 
     public void pausePricing(String ccyPair) {
-        activePairs.put(ccyPair, false);
+        engine.pausePricing(idOf(ccyPair));
+    }
+
+    private int idOf(String ccyPair) {
+        int id = instruments.idOf(ccyPair);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unknown currency pair: " + ccyPair);
+        }
+        if (instruments.isDerived(id)) {
+            throw new IllegalArgumentException(ccyPair + " is derived from other pairs and ticks with them");
+        }
+        return id;
     }
 
     public void startAllPricing() {
-        for (String ccyPair : basePrices.keySet()) {
-            startPricing(ccyPair);
+        for (int id = 0; id < instruments.size(); id++) {
+            if (!instruments.isDerived(id)) {
+                engine.startPricing(id);
+            }
         }
     }
 
     public void pauseAllPricing() {
-        for (String ccyPair : basePrices.keySet()) {
-            pausePricing(ccyPair);
+        for (int id = 0; id < instruments.size(); id++) {
+            if (!instruments.isDerived(id)) {
+                engine.pausePricing(id);
+            }
         }
     }
 
-    public Map<String, Boolean> getPricingState() {
-        return new HashMap<>(activePairs);
+    /**
+     * Applies the tick rates of a reload; base prices are read from the instruments on every tick.
+     */
+    public void onInstrumentsReloaded() {
+        for (int id = 0; id < instruments.size(); id++) {
+            engine.setTickRate(id, instruments.tickRateHz(id));
+        }
     }
 
-    private void scheduleNextPriceGeneration(Price price) {
-        long delay = ThreadLocalRandom.current().nextInt(MAX_DELAY_MS);
-        scheduler.schedule(() -> generateAndNotifyPrice(price), delay, TimeUnit.MILLISECONDS);
+    public Set<String> getCcyPairs() {
+        return instruments.names();
     }
 
-    private void generateAndNotifyPrice(Price price) {
-        if (Boolean.TRUE.equals(activePairs.get(price.getCcyPair()))) {
-            BigDecimal basePrice = basePrices.get(price.getCcyPair());
-            double bid = calculateBid(basePrice);
-            double ask = calculateAsk(bid);
-
-            BigDecimal bidRounded = roundToFourDecimalPlaces(bid);
-            BigDecimal askRounded = roundToFourDecimalPlaces(ask);
-
-            updatePrice(price, bidRounded, askRounded);
-
-            notifySubscribers(bidRounded.doubleValue(), askRounded.doubleValue());
-            if (baseDispatcher != null) {
-                baseDispatcher.sendPriceUpdate(price);
-            }
-            scheduleNextPriceGeneration(price);
-        }
+    public Instruments getInstruments() {
+        return instruments;
     }
 
-    private double calculateBid(BigDecimal basePrice) {
-        return basePrice.doubleValue() + (ThreadLocalRandom.current().nextDouble() * MAX_VARIATION.doubleValue() - (MAX_VARIATION.doubleValue() / 2));
+    public PriceBus getBus() {
+        return bus;
     }
 
-    private double calculateAsk(double bid) {
-        return bid + (ThreadLocalRandom.current().nextDouble() * 0.0001 + 0.0001);
+    public Map<String, Boolean> getPricingState() {
+        Map<String, Boolean> state = new LinkedHashMap<>();
+        for (int id = 0; id < ticks.length; id++) {
+            if (engine.isKnown(id)) {
+                state.put(instruments.name(id), engine.isRunning(id));
+            }
+        }
+        return state;
     }
 
-    private BigDecimal roundToFourDecimalPlaces(double value) {
-        return BigDecimal.valueOf(value).setScale(4, RoundingMode.HALF_UP);
+    // Runs on the engine thread owning the pair
+    void generateAndNotifyPrice(int id) {
+        Tick tick = ticks[id];
+        int scale = instruments.scale(id);
+        long bid = calculateBid(instruments.basePrice(id), scale);
+        long ask = calculateAsk(bid, scale);
+        // The clock is re-synced with the wall clock, so a pair's timestamps are kept from going back
+        tick.set(bid, ask, Math.max(tick.getTimestampNanos(), Tick.epochNanos()));
+        bus.publish(tick);
     }
 
-    private void updatePrice(Price price, BigDecimal bid, BigDecimal ask) {
-        price.setBid(bid);
-        price.setAsk(ask);
-        price.setTimestamp(LocalDateTime.now());
+    private long calculateBid(long basePrice, int scale) {
+        long variation = Instruments.powerOfTen(scale) / VARIATION_DIVISOR;
+        return basePrice + ThreadLocalRandom.current().nextLong(variation + 1) - variation / 2;
     }
 
-    private void notifySubscribers(double bid, double ask) {
-        for (PriceSubscriber subscriber : subscribers) {
-            subscriber.onPriceUpdate(bid, ask);
-        }
+    private long calculateAsk(long bid, int scale) {
+        long pip = Math.max(1, Instruments.powerOfTen(scale) / PIP_DIVISOR);
+        return bid + pip + ThreadLocalRandom.current().nextLong(pip + 1);
     }
 }
\ No newline at end of file
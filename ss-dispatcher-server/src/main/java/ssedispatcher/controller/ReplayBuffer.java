@@ -0,0 +1,128 @@
+package ssedispatcher.controller;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the last {@code slots} ticks of every pair in fixed-size off-heap rings, so a client
+ * reconnecting with {@code Last-Event-ID} can be sent exactly the ticks it missed. Appending writes
+ * the primitive tick fields into a pre-allocated direct buffer and allocates nothing; frames are
+ * only encoded when a replay is requested.
+ */
+public class ReplayBuffer {
+
+    // Record layout: sequence, bid, ask, timestamp (epoch nanos)
+    private static final int RECORD_BYTES = 32;
+
+    private final int slots;
+    private final TickEncoder encoder;
+    private final AtomicReferenceArray<Ring> rings;
+
+    public ReplayBuffer(int pairs, int slots, TickEncoder encoder) {
+        this.slots = slots;
+        this.encoder = encoder;
+        this.rings = new AtomicReferenceArray<>(pairs);
+    }
+
+    public void append(Tick tick) {
+        Ring ring = rings.get(tick.getPairId());
+        if (ring == null) {
+            rings.compareAndSet(tick.getPairId(), null, new Ring(tick.getPairId()));
+            ring = rings.get(tick.getPairId());
+        }
+        ring.append(tick);
+    }
+
+    /**
+     * Adds the ticks of the pair with a sequence above {@code lastSequence} to {@code out}, oldest
+     * first. When some of those ticks have already been overwritten, only the latest tick is added
+     * as a snapshot. Returns the highest sequence added, or {@code lastSequence} if none was.
+     */
+    public long replay(int pairId, long lastSequence, List<SseFrame> out, WireFormat format) {
+        Ring ring = rings.get(pairId);
+        return ring == null ? lastSequence : ring.replay(lastSequence, out, format);
+    }
+
+    /**
+     * Forgets every retained tick, when the sequence they were numbered in has ended.
+     */
+    public void clear() {
+        for (int id = 0; id < rings.length(); id++) {
+            Ring ring = rings.get(id);
+            if (ring != null) {
+                ring.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds the latest tick of the pair to {@code out}. Returns its sequence, or 0 if the pair has not ticked yet.
+     */
+    public long latest(int pairId, List<SseFrame> out, WireFormat format) {
+        Ring ring = rings.get(pairId);
+        return ring == null ? 0 : ring.latest(out, format);
+    }
+
+    private final class Ring {
+        private final int pairId;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(slots * RECORD_BYTES);
+        private long count;
+        // Highest sequence that is no longer retained, a client behind it gets a snapshot instead
+        private long floorSequence;
+
+        Ring(int pairId) {
+            this.pairId = pairId;
+        }
+
+        synchronized void append(Tick tick) {
+            int offset = (int) (count % slots) * RECORD_BYTES;
+            if (count >= slots) {
+                floorSequence = buffer.getLong(offset);
+            }
+            buffer.putLong(offset, tick.getSequence());
+            buffer.putLong(offset + 8, tick.getBid());
+            buffer.putLong(offset + 16, tick.getAsk());
+            buffer.putLong(offset + 24, tick.getTimestampNanos());
+            count++;
+        }
+
+        synchronized void clear() {
+            count = 0;
+            floorSequence = 0;
+        }
+
+        synchronized long replay(long lastSequence, List<SseFrame> out, WireFormat format) {
+            if (count == 0) {
+                return lastSequence;
+            }
+            if (lastSequence < floorSequence) {
+                return latest(out, format);
+            }
+            long highest = lastSequence;
+            for (long i = Math.max(0, count - slots); i < count; i++) {
+                int offset = (int) (i % slots) * RECORD_BYTES;
+                long sequence = buffer.getLong(offset);
+                if (sequence > lastSequence) {
+                    out.add(read(offset, format));
+                    highest = sequence;
+                }
+            }
+            return highest;
+        }
+
+        synchronized long latest(List<SseFrame> out, WireFormat format) {
+            if (count == 0) {
+                return 0;
+            }
+            SseFrame frame = read((int) ((count - 1) % slots) * RECORD_BYTES, format);
+            out.add(frame);
+            return frame.getId();
+        }
+
+        private SseFrame read(int offset, WireFormat format) {
+            return encoder.encode(format, buffer.getLong(offset), pairId, buffer.getLong(offset + 8),
+                    buffer.getLong(offset + 16), buffer.getLong(offset + 24));
+        }
+    }
+}
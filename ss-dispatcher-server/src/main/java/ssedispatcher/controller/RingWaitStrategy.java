@@ -0,0 +1,47 @@
+package ssedispatcher.controller;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a {@link TickRing} subscriber thread does while it has caught up with the ring. Producers never
+ * signal subscribers, so none of these add work to the tick path; they trade latency for CPU.
+ */
+public enum RingWaitStrategy {
+    /** Spin on the core; lowest latency, a whole core per subscriber. */
+    BUSY_SPIN {
+        @Override
+        void idle(int attempt) {
+            Thread.onSpinWait();
+        }
+    },
+    /** Spin briefly, then give up the core to other threads between checks. */
+    YIELDING {
+        @Override
+        void idle(int attempt) {
+            if (attempt < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    },
+    /** Spin briefly, then sleep a millisecond between checks; for subscribers that can lag. */
+    SLEEPING {
+        @Override
+        void idle(int attempt) {
+            if (attempt < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(SLEEP_NANOS);
+            }
+        }
+    };
+
+    private static final int SPINS = 100;
+    private static final long SLEEP_NANOS = 1_000_000L;
+
+    /**
+     * Waits once; {@code attempt} counts the waits since the last tick read.
+     */
+    abstract void idle(int attempt);
+}
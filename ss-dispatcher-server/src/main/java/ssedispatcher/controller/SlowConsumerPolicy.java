@@ -0,0 +1,14 @@
+package ssedispatcher.controller;
+
+/**
+ * What the dispatcher does with a connection whose outbound buffer has made no progress for
+ * longer than the configured maximum lag.
+ */
+public enum SlowConsumerPolicy {
+    /** Keep the connection and discard new ticks until it catches up. */
+    DROP,
+    /** Complete the emitter and let the client reconnect. */
+    DISCONNECT,
+    /** Stop live pushes and send the latest price per pair on a fixed interval until it catches up. */
+    SNAPSHOT
+}
@@ -0,0 +1,469 @@
+package ssedispatcher.controller;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single SSE stream and the currency pairs it is subscribed to. A connection opened without
+ * an explicit pair list follows every pair (wildcard) until its subscription is first changed.
+ * A user may hold several streams, one per browser tab for example, each with its own id.
+ * <p>
+ * Ticks are not written by the pricing thread. They are offered to a bounded outbound buffer that
+ * keeps only the latest unsent frame per pair, and a writer thread drains it. A batching connection
+ * is drained once per window instead, sending the buffered prices as a single event.
+ * <p>
+ * In delta mode the writer turns each shared frame into a difference from the last price it sent for
+ * the pair; a tick that is conflated or dropped makes the next one of its pair a full keyframe.
+ * <p>
+ * A pair with a maximum rate is sent at most once per interval. A tick arriving early is held, replacing
+ * any tick already held for the pair, and released into the buffer when the interval is up, so the
+ * client always gets the latest price of the pair at the rate it asked for.
+ */
+public class SseConnection {
+
+    enum OfferResult { QUEUED, CONFLATED, DROPPED, LAGGING, HELD, THROTTLED }
+
+    private static final int MAX_CANDLE_EVENTS = 8;
+
+    private final long id;
+    private final String userId;
+    private final SseEmitter emitter;
+    private final Set<String> ccyPairs = ConcurrentHashMap.newKeySet();
+    private volatile boolean wildcard;
+    private final long batchMs;
+    private final int batchSize;
+    private final WireFormat format;
+    // Null unless the stream is in delta mode
+    private final DeltaEncoder delta;
+    private volatile ScheduledFuture<?> batchTask;
+
+    // Rate limits per pair id, null when the stream has none; the rest is guarded by pending
+    private final long[] minIntervalNanos;
+    private final long[] nextSendNanos;
+    // Latest tick of a rate-limited pair waiting for its next send time, released by the ThrottleWheel
+    private final SseFrame[] held;
+
+    private final long maxLagNanos;
+    // Latest unsent frame per pair id, in the order of their latest frames
+    private final PendingFrames pending;
+    private long pendingSinceNanos;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    // System.nanoTime() when a writer started the current drain pass, 0 while none runs; a pass that is
+    // only scheduled has not written yet, so time queued for a writer does not count as a blocked write
+    private volatile long drainStartedNanos;
+    private volatile long lastWriteNanos = System.nanoTime();
+    private final AtomicBoolean heartbeatDue = new AtomicBoolean();
+    // Bit per CandleInterval ordinal the stream wants candles for, and candle events waiting for the writer
+    private final int candleIntervals;
+    private final Queue<SseFrame> candles = new ConcurrentLinkedQueue<>();
+    // Latest instruments event of a reload not yet sent; a newer one replaces it
+    private final AtomicReference<SseFrame> instrumentsUpdate = new AtomicReference<>();
+    private final AtomicBoolean degraded = new AtomicBoolean();
+
+    private final AtomicLong sentTicks = new AtomicLong();
+    private final AtomicLong conflatedTicks = new AtomicLong();
+    private final AtomicLong droppedTicks = new AtomicLong();
+    private final AtomicLong throttledTicks = new AtomicLong();
+
+    public SseConnection(long id, String userId, SseEmitter emitter, StreamOptions options, Instruments instruments,
+                         int capacity, long maxLagMs, long keyframeIntervalMs) {
+        this.id = id;
+        this.userId = userId;
+        this.emitter = emitter;
+        this.wildcard = options.getCcyPairs().isEmpty();
+        this.ccyPairs.addAll(options.getCcyPairs());
+        this.batchMs = options.getBatchMs();
+        this.batchSize = options.getBatchSize() > 0 ? options.getBatchSize() : Integer.MAX_VALUE;
+        this.format = options.getFormat();
+        this.delta = options.isDelta() ? new DeltaEncoder(instruments.capacity(), keyframeIntervalMs) : null;
+        int intervals = 0;
+        for (CandleInterval interval : options.getCandleIntervals()) {
+            intervals |= 1 << interval.ordinal();
+        }
+        this.candleIntervals = intervals;
+        this.minIntervalNanos = minIntervals(options, instruments);
+        if (minIntervalNanos != null) {
+            this.nextSendNanos = new long[instruments.capacity()];
+            this.held = new SseFrame[instruments.capacity()];
+        } else {
+            this.nextSendNanos = null;
+            this.held = null;
+        }
+        this.pending = new PendingFrames(capacity);
+        // A batching connection legitimately holds ticks for up to one window
+        this.maxLagNanos = (maxLagMs + batchMs) * 1_000_000L;
+    }
+
+    /**
+     * Identifies the stream among all streams of the node, including other streams of the same user.
+     */
+    public long getId() {
+        return id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    public boolean isWildcard() {
+        return wildcard;
+    }
+
+    public Set<String> getCcyPairs() {
+        return Collections.unmodifiableSet(ccyPairs);
+    }
+
+    public int getQueueDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getSentTicks() {
+        return sentTicks.get();
+    }
+
+    public long getConflatedTicks() {
+        return conflatedTicks.get();
+    }
+
+    public long getDroppedTicks() {
+        return droppedTicks.get();
+    }
+
+    public long getThrottledTicks() {
+        return throttledTicks.get();
+    }
+
+    /**
+     * Returns the maximum rate of each rate-limited pair id, empty when every tick is sent.
+     */
+    public Map<Integer, Double> getMaxRatesHz() {
+        if (minIntervalNanos == null) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Double> rates = new TreeMap<>();
+        for (int pairId = 0; pairId < minIntervalNanos.length; pairId++) {
+            if (minIntervalNanos[pairId] > 0) {
+                rates.put(pairId, 1e9 / minIntervalNanos[pairId]);
+            }
+        }
+        return rates;
+    }
+
+    public boolean isDelta() {
+        return delta != null;
+    }
+
+    public boolean hasCandles() {
+        return candleIntervals != 0;
+    }
+
+    public boolean hasCandles(CandleInterval interval) {
+        return (candleIntervals & 1 << interval.ordinal()) != 0;
+    }
+
+    public Set<String> getCandleIntervals() {
+        Set<String> intervals = new LinkedHashSet<>();
+        for (CandleInterval interval : CandleInterval.values()) {
+            if (hasCandles(interval)) {
+                intervals.add(interval.getParameter());
+            }
+        }
+        return intervals;
+    }
+
+    public boolean isBatching() {
+        return batchMs > 0;
+    }
+
+    public long getBatchMs() {
+        return batchMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public boolean isDegraded() {
+        return degraded.get();
+    }
+
+    // Called by BaseDispatcher only, which keeps its pair index in step with these sets.
+
+    void clearWildcard(Set<String> allCcyPairs) {
+        ccyPairs.addAll(allCcyPairs);
+        wildcard = false;
+    }
+
+    boolean addCcyPair(String ccyPair) {
+        return ccyPairs.add(ccyPair);
+    }
+
+    boolean removeCcyPair(String ccyPair) {
+        return ccyPairs.remove(ccyPair);
+    }
+
+    /**
+     * Buffers the frame, replacing any unsent frame of the same pair. Returns {@code LAGGING} without
+     * buffering when the writer has made no progress for longer than the maximum lag. A tick of a
+     * rate-limited pair that is not due yet is held instead: {@code HELD} asks the caller to schedule its
+     * release at {@link #getReleaseNanos(int)}, {@code THROTTLED} means a release is already scheduled.
+     */
+    OfferResult offer(int pairId, SseFrame frame, long nowNanos) {
+        synchronized (pending) {
+            if (!pending.isEmpty() && nowNanos - pendingSinceNanos > maxLagNanos && !degraded.get()) {
+                return OfferResult.LAGGING;
+            }
+            if (minIntervalNanos != null && minIntervalNanos[pairId] > 0) {
+                if (held[pairId] != null) {
+                    held[pairId] = frame;
+                    throttledTicks.incrementAndGet();
+                    return OfferResult.THROTTLED;
+                }
+                if (nowNanos - nextSendNanos[pairId] < 0) {
+                    held[pairId] = frame;
+                    return OfferResult.HELD;
+                }
+                nextSendNanos[pairId] = nowNanos + minIntervalNanos[pairId];
+            }
+            return enqueue(pairId, frame, nowNanos);
+        }
+    }
+
+    /**
+     * Moves the held tick of the pair into the buffer. Returns null if nothing was held.
+     */
+    OfferResult release(int pairId, long nowNanos) {
+        synchronized (pending) {
+            SseFrame frame = held[pairId];
+            if (frame == null) {
+                return null;
+            }
+            held[pairId] = null;
+            nextSendNanos[pairId] = nowNanos + minIntervalNanos[pairId];
+            return enqueue(pairId, frame, nowNanos);
+        }
+    }
+
+    long getReleaseNanos(int pairId) {
+        synchronized (pending) {
+            return nextSendNanos[pairId];
+        }
+    }
+
+    // Callers hold the pending lock
+    private OfferResult enqueue(int pairId, SseFrame frame, long nowNanos) {
+        if (pending.isFull() && !pending.contains(pairId)) {
+            droppedTicks.incrementAndGet();
+            requestKeyframe(pairId);
+            return OfferResult.DROPPED;
+        }
+        if (pending.put(pairId, frame)) {
+            conflatedTicks.incrementAndGet();
+            requestKeyframe(pairId);
+            return OfferResult.CONFLATED;
+        }
+        if (pending.size() == 1) {
+            pendingSinceNanos = nowNanos;
+        }
+        return OfferResult.QUEUED;
+    }
+
+    /**
+     * Drops the unsent frame of the pair if its sequence is not above {@code sequence}, because the
+     * client has already been sent it by a replay.
+     */
+    void discardPending(int pairId, long sequence) {
+        synchronized (pending) {
+            SseFrame frame = pending.get(pairId);
+            if (frame != null && frame.getId() <= sequence) {
+                pending.remove(pairId);
+            }
+            if (held != null && held[pairId] != null && held[pairId].getId() <= sequence) {
+                held[pairId] = null;
+            }
+        }
+    }
+
+    SseFrame poll() {
+        synchronized (pending) {
+            return pending.poll();
+        }
+    }
+
+    List<SseFrame> pollBatch() {
+        synchronized (pending) {
+            List<SseFrame> batch = new ArrayList<>(Math.min(pending.size(), batchSize));
+            SseFrame frame;
+            while (batch.size() < batchSize && (frame = pending.poll()) != null) {
+                batch.add(frame);
+            }
+            return batch;
+        }
+    }
+
+    void onSent(int ticks, long nowNanos) {
+        sentTicks.addAndGet(ticks);
+        lastWriteNanos = nowNanos;
+        synchronized (pending) {
+            pendingSinceNanos = nowNanos;
+        }
+    }
+
+    void onDropped(int pairId) {
+        droppedTicks.incrementAndGet();
+        requestKeyframe(pairId);
+    }
+
+    private static long[] minIntervals(StreamOptions options, Instruments instruments) {
+        long[] intervals = null;
+        int size = instruments.size();
+        for (int pairId = 0; pairId < instruments.capacity(); pairId++) {
+            // Pairs added by a later reload get the default rate
+            double rate = pairId < size ? options.maxRateHz(instruments.name(pairId)) : options.getDefaultMaxRateHz();
+            if (rate > 0) {
+                if (intervals == null) {
+                    intervals = new long[instruments.capacity()];
+                }
+                intervals[pairId] = (long) (1e9 / rate);
+            }
+        }
+        return intervals;
+    }
+
+    private void requestKeyframe(int pairId) {
+        if (delta != null) {
+            delta.requestKeyframe(pairId);
+        }
+    }
+
+    /**
+     * Returns the frame to write for a polled tick frame: itself, or in delta mode the difference from
+     * the last price sent for its pair. Writer thread only.
+     */
+    SseFrame encode(SseFrame frame, long nowNanos) {
+        return delta == null ? frame : delta.encode(frame, nowNanos);
+    }
+
+    boolean hasPending() {
+        synchronized (pending) {
+            return !pending.isEmpty();
+        }
+    }
+
+    boolean tryStartDrain() {
+        return draining.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks the writer of the current pass as writing from now on; called on the writer thread.
+     */
+    void onWriting(long nowNanos) {
+        drainStartedNanos = nowNanos;
+    }
+
+    void endDrain() {
+        drainStartedNanos = 0;
+        draining.set(false);
+    }
+
+    /**
+     * Returns true when nothing has been written for at least {@code idleNanos} and marks a heartbeat due
+     * for the next drain pass, unless one already is.
+     */
+    boolean requestHeartbeat(long nowNanos, long idleNanos) {
+        return nowNanos - lastWriteNanos >= idleNanos && heartbeatDue.compareAndSet(false, true);
+    }
+
+    /**
+     * Buffers a candle event for the writer. Only the latest few are kept for a stream that is not
+     * being drained; the bars of older ones can be fetched from {@code /candles}.
+     */
+    void offerCandles(SseFrame frame) {
+        candles.add(frame);
+        while (candles.size() > MAX_CANDLE_EVENTS) {
+            candles.poll();
+        }
+    }
+
+    SseFrame pollCandles() {
+        return candles.poll();
+    }
+
+    void offerInstruments(SseFrame frame) {
+        instrumentsUpdate.set(frame);
+    }
+
+    SseFrame takeInstruments() {
+        return instrumentsUpdate.getAndSet(null);
+    }
+
+    boolean takeHeartbeat() {
+        return heartbeatDue.getAndSet(false);
+    }
+
+    void onHeartbeat(long nowNanos) {
+        lastWriteNanos = nowNanos;
+    }
+
+    /**
+     * Returns true if a write has been blocked, or buffered ticks have waited without any progress, for
+     * longer than {@code stallNanos}: the peer is most likely gone without the connection being closed.
+     * Time a pass spends queued for a writer thread does not count.
+     */
+    boolean isStalled(long nowNanos, long stallNanos) {
+        long started = drainStartedNanos;
+        if (started != 0) {
+            return nowNanos - started > stallNanos;
+        }
+        if (draining.get()) {
+            // A pass waits for a writer: a busy node, not a dead peer
+            return false;
+        }
+        synchronized (pending) {
+            return !pending.isEmpty() && nowNanos - pendingSinceNanos > stallNanos;
+        }
+    }
+
+    void setBatchTask(ScheduledFuture<?> batchTask) {
+        this.batchTask = batchTask;
+    }
+
+    void cancelBatchTask() {
+        ScheduledFuture<?> task = batchTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    boolean degrade() {
+        return degraded.compareAndSet(false, true);
+    }
+
+    boolean recover() {
+        return degraded.compareAndSet(true, false);
+    }
+}
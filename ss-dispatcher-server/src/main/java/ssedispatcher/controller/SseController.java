@@ -2,41 +2,314 @@ package ssedispatcher.controller;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-import ssedispatcher.metrics.CustomHttp2Metrics;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import ssedispatcher.config.DispatcherProperties;
+import ssedispatcher.metrics.DispatcherMetrics;
 
+import javax.annotation.PreDestroy;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 public class SseController {
 
     private static final Logger logger = LoggerFactory.getLogger(SseController.class);
+    private static final long MAX_BATCH_MS = 10_000L;
+    // Ticks are not generated faster than this, so a higher limit would never apply
+    private static final double MAX_RATE_HZ = TickEngine.MAX_TICK_RATE_HZ;
+    private static final long DEFAULT_HISTORY_MS = 60_000L;
     private final ScheduledExecutorService scheduler;
-    private final CustomHttp2Metrics customHttp2Metrics;
+    private final ExecutorService writers;
     private final BaseDispatcher baseDispatcher;
+    private final FluxDispatcher fluxDispatcher;
     private final Pricer pricer;
+    private final PriceBus bus;
+    private final boolean pricing;
+    private final boolean reactive;
+    private final TokenStore tokenStore;
+    private final Instruments instruments;
+    private final TickJournal journal;
+    private final TickEncoder historyEncoder;
+    private final CrossRates crossRates;
 
-    public SseController(CustomHttp2Metrics customHttp2Metrics) throws IOException {
-        this.customHttp2Metrics = customHttp2Metrics;
+    public SseController(DispatcherMetrics dispatcherMetrics,
+                         DispatcherProperties dispatcherProperties,
+                         TokenStore tokenStore,
+                         @Value("${spring.main.web-application-type:servlet}") String webApplicationType) throws IOException {
+        this.reactive = "reactive".equalsIgnoreCase(webApplicationType);
+        this.tokenStore = tokenStore;
         this.scheduler = Executors.newScheduledThreadPool(10, new CustomThreadFactory("SseScheduler"));
-        this.pricer = new Pricer("ccypair-list.csv"); // Provide the path to the config file
-        this.baseDispatcher = new BaseDispatcher(scheduler, customHttp2Metrics, pricer);
-        this.pricer.startPriceGeneration(); // Start price generation here
-        scheduleMetricsPrinting();
+        scheduler.scheduleAtFixedRate(tokenStore::purgeExpired, 1, 1, TimeUnit.MINUTES);
+        this.writers = Executors.newFixedThreadPool(dispatcherProperties.getWriterThreads(), new CustomThreadFactory("SseWriter"));
+        this.instruments = loadInstruments(dispatcherProperties);
+        // Registered on every node so that ids match, derived only where the pairs are priced
+        this.crossRates = new CrossRates(instruments, dispatcherProperties.getCrossPairs());
+        this.historyEncoder = new TickEncoder(instruments);
+        this.bus = createBus(dispatcherProperties, instruments, dispatcherMetrics);
+        this.pricer = new Pricer(instruments, dispatcherProperties.getPricingThreads(), bus,
+                dispatcherProperties.getTickRingSize(), dispatcherProperties.getTickRingWaitStrategy());
+        dispatcherMetrics.gauge("sse.ring.lag", "Ticks the furthest-behind in-process price subscriber has yet to read",
+                pricer.getRing()::getMaxLag);
+        dispatcherMetrics.gauge("sse.bus.dropped", "Derived ticks dropped because the price bus had no room left for them",
+                bus::getDropped);
+        this.baseDispatcher = new BaseDispatcher(scheduler, writers, dispatcherMetrics, instruments, bus, dispatcherProperties);
+        this.fluxDispatcher = new FluxDispatcher(instruments, bus);
+        this.journal = dispatcherProperties.isJournalEnabled() ? createJournal(dispatcherProperties, instruments, dispatcherMetrics) : null;
+        if (journal != null) {
+            pricer.addSubscriber("TickJournal", journal, dispatcherProperties.getTickRingWaitStrategy());
+        }
+        // Dispatcher-only nodes stream what the publishing node prices
+        this.pricing = dispatcherProperties.getBusMode() != PriceBusMode.SUBSCRIBE;
+        if (pricing) {
+            crossRates.attach(bus);
+            this.pricer.startPriceGeneration(); // Start price generation here
+        }
+    }
+
+    private static Instruments loadInstruments(DispatcherProperties properties) throws IOException {
+        if (properties.getInstrumentsFile().isEmpty()) {
+            return Instruments.load("ccypair-list.csv", properties.getMaxPairs());
+        }
+        return Instruments.loadFile(Paths.get(properties.getInstrumentsFile()), properties.getMaxPairs());
+    }
+
+    private static PriceBus createBus(DispatcherProperties properties, Instruments instruments, DispatcherMetrics metrics) {
+        switch (properties.getBusMode()) {
+            case PUBLISH:
+                return MulticastPriceBus.publisher(properties.getBusGroup(), properties.getBusPort(),
+                        properties.getBusInterface(), instruments);
+            case SUBSCRIBE:
+                return MulticastPriceBus.subscriber(properties.getBusGroup(), properties.getBusPort(),
+                        properties.getBusInterface(), instruments, metrics);
+            default:
+                return new InProcessPriceBus();
+        }
+    }
+
+    private static TickJournal createJournal(DispatcherProperties properties, Instruments instruments,
+                                             DispatcherMetrics metrics) throws IOException {
+        return new TickJournal(Paths.get(properties.getJournalDir()), instruments, metrics, properties.getJournalSegmentRecords(),
+                properties.getJournalRollMs(), properties.getJournalRetentionMs());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pricer.stopPriceGeneration();
+        baseDispatcher.shutdown();
+        bus.close();
+        if (journal != null) {
+            pricer.removeSubscriber(journal);
+            journal.close();
+        }
     }
 
     @GetMapping("/stream-sse")
-    public SseEmitter streamSse(@RequestParam String userId) {
-        return baseDispatcher.createEmitter(userId);
+    public SseEmitter streamSse(@RequestParam String userId,
+                                @RequestParam(required = false) List<String> ccyPairs,
+                                @RequestParam(defaultValue = "0") long batchMs,
+                                @RequestParam(defaultValue = "0") int batchSize,
+                                @RequestParam(required = false) Long lastEventId,
+                                @RequestParam(defaultValue = "false") boolean snapshot,
+                                @RequestParam(defaultValue = "json") String format,
+                                @RequestParam(defaultValue = "false") boolean delta,
+                                @RequestParam(defaultValue = "0") double maxRateHz,
+                                @RequestParam(required = false) List<String> candles,
+                                @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventIdHeader) {
+        if (reactive) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "Use /stream-flux in reactive mode");
+        }
+        if (batchMs < 0 || batchMs > MAX_BATCH_MS || batchSize < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "batchMs must be between 0 and " + MAX_BATCH_MS
+                    + " and batchSize must not be negative");
+        }
+        checkMaxRate(maxRateHz);
+        Map<String, Double> maxRatesHz = new HashMap<>();
+        StreamOptions options = new StreamOptions(toCcyPairs(stripMaxRates(ccyPairs, maxRatesHz)));
+        options.setMaxRatesHz(maxRatesHz);
+        options.setDefaultMaxRateHz(maxRateHz);
+        options.setBatchMs(batchMs);
+        options.setBatchSize(batchSize);
+        options.setSnapshot(snapshot);
+        options.setFormat(toWireFormat(format));
+        if (delta && options.getFormat() != WireFormat.COMPACT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "delta requires format=compact");
+        }
+        options.setDelta(delta);
+        options.setCandleIntervals(toCandleIntervals(candles));
+        // Browsers send the header on automatic reconnects, clients that reconnect manually use the parameter
+        options.setLastEventId(lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+        return baseDispatcher.createEmitter(userId, options);
+    }
+
+    @GetMapping(path = "/stream-flux", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Price>> streamFlux(@RequestParam(required = false) List<String> ccyPairs) {
+        return fluxDispatcher.stream(toCcyPairs(ccyPairs));
+    }
+
+    @GetMapping("/subscribe")
+    public Set<String> subscribe(@RequestParam String userId, @RequestParam(required = false) Long connectionId,
+                                 @RequestParam List<String> ccyPairs) {
+        try {
+            return baseDispatcher.subscribe(userId, connectionId, toCcyPairs(ccyPairs));
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+
+    @GetMapping("/unsubscribe")
+    public Set<String> unsubscribe(@RequestParam String userId, @RequestParam(required = false) Long connectionId,
+                                   @RequestParam List<String> ccyPairs) {
+        try {
+            return baseDispatcher.unsubscribe(userId, connectionId, toCcyPairs(ccyPairs));
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+
+    @GetMapping("/prices/snapshot")
+    public ResponseEntity<byte[]> getSnapshot(@RequestParam(required = false) List<String> ccyPairs) {
+        PriceSnapshot.Body body = baseDispatcher.getSnapshot(toCcyPairs(ccyPairs));
+        // With the ETag set, Spring answers a matching If-None-Match with a 304 and no body
+        return ResponseEntity.ok()
+                .eTag(body.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body.getJson());
+    }
+
+    /**
+     * Streams the journaled ticks of a pair from {@code from} up to {@code to} (epoch millis, the last
+     * minute by default), as the JSON or compact tick objects of the stream, or as the raw journal records.
+     * Raw records keep the scale they were journaled at, so a range across a change of scale is refused.
+     */
+    @GetMapping("/history")
+    public ResponseEntity<StreamingResponseBody> getHistory(@RequestParam String ccyPair,
+                                                            @RequestParam(required = false) Long from,
+                                                            @RequestParam(required = false) Long to,
+                                                            @RequestParam(defaultValue = "0") int limit,
+                                                            @RequestParam(defaultValue = "json") String format) {
+        if (reactive) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "History is served in servlet mode only");
+        }
+        if (journal == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The tick journal is disabled");
+        }
+        int pairId = instruments.idOf(toCcyPair(ccyPair));
+        long toMillis = to != null ? to : System.currentTimeMillis();
+        long fromMillis = from != null ? from : toMillis - DEFAULT_HISTORY_MS;
+        if (fromMillis > toMillis || limit < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to and limit must not be negative");
+        }
+        boolean raw = "raw".equalsIgnoreCase(format.trim());
+        WireFormat wireFormat = raw ? null : toWireFormat(format);
+        if (wireFormat == WireFormat.BINARY_BASE64) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "History format must be json, compact or raw");
+        }
+        List<TickJournal.Records> records = journal.read(pairId, fromMillis * 1_000_000L, toMillis * 1_000_000L, limit);
+        if (raw) {
+            // Big-endian records of sequence, bid, ask and epoch nanos, prices at the scale in the header
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .header("X-Price-Scale", Integer.toString(rawScale(records, pairId)))
+                    .body(out -> writeRecords(records, out));
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> writeTicks(records, pairId, wireFormat, out));
+    }
+
+    // Raw records are not rescaled, so they can only share one header if their segments share a scale
+    private int rawScale(List<TickJournal.Records> records, int pairId) {
+        int scale = records.isEmpty() ? instruments.scale(pairId) : records.get(0).getScale();
+        for (TickJournal.Records segment : records) {
+            if (segment.getScale() != scale) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "The range spans a change of price scale, query json or compact, or each side of it");
+            }
+        }
+        return scale;
+    }
+
+    // Prices are rescaled to the current scale of the pair, which the stream and its instruments event use
+    private void writeTicks(List<TickJournal.Records> records, int pairId, WireFormat format, OutputStream out) throws IOException {
+        int scale = instruments.scale(pairId);
+        OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        buffered.write('[');
+        boolean first = true;
+        for (TickJournal.Records segment : records) {
+            ByteBuffer view = segment.getView();
+            int segmentScale = segment.getScale();
+            for (int offset = view.position(); offset < view.limit(); offset += TickJournal.RECORD_BYTES) {
+                if (!first) {
+                    buffered.write(',');
+                }
+                first = false;
+                long bid = Instruments.rescale(TickJournal.bid(view, offset), segmentScale, scale, false);
+                long ask = Instruments.rescale(TickJournal.ask(view, offset), segmentScale, scale, true);
+                historyEncoder.encode(format, TickJournal.sequence(view, offset), pairId, bid, ask,
+                        TickJournal.timestampNanos(view, offset)).writeData(buffered);
+            }
+        }
+        buffered.write(']');
+        buffered.flush();
+    }
+
+    // The records go out as they are in the mapped segments, without decoding; the servlet response only
+    // takes bytes from the heap, so they are copied through one chunk on the way
+    private static void writeRecords(List<TickJournal.Records> records, OutputStream out) throws IOException {
+        byte[] chunk = new byte[64 * 1024];
+        for (TickJournal.Records segment : records) {
+            ByteBuffer view = segment.getView();
+            while (view.hasRemaining()) {
+                int length = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Returns the latest {@code limit} bars of the pair for the interval, oldest first, the bar in
+     * progress included.
+     */
+    @GetMapping("/candles")
+    public ResponseEntity<byte[]> getCandles(@RequestParam String ccyPair,
+                                             @RequestParam(defaultValue = "1m") String interval,
+                                             @RequestParam(defaultValue = "100") int limit) {
+        int maxBars = baseDispatcher.getCandleHistoryBars();
+        if (limit < 1 || limit > maxBars) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxBars);
+        }
+        PriceSnapshot.Body body = baseDispatcher.getCandles(toCcyPair(ccyPair), toCandleInterval(interval), limit);
+        // As for the snapshot, a matching If-None-Match gets a 304 until a bar changes or closes
+        return ResponseEntity.ok()
+                .eTag(body.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body.getJson());
+    }
+
+    @GetMapping("/connections")
+    public List<Map<String, Object>> getConnections() {
+        return baseDispatcher.getConnectionStats();
     }
 
     @PostMapping("/login")
@@ -45,33 +318,65 @@ public class SseController {
         if (userId == null || userId.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User ID is required");
         }
-        // Generate a unique token for the user
-        String token = UUID.randomUUID().toString();
-        logger.info("User {} logged in with token {}", userId, token);
+        String token = tokenStore.issue(userId);
+        logger.info("User {} logged in", userId);
         return Map.of("token", token);
     }
 
     @GetMapping("/ccyPairs")
-    public List<String> getCcyPairs() throws IOException {
-        return readCcyPairsFromCsv("ccypair-list.csv");
+    public ResponseEntity<byte[]> getCcyPairs() {
+        return ResponseEntity.ok()
+                .eTag(instruments.namesEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(instruments.namesJson());
+    }
+
+    /**
+     * Returns the crosses derived from the priced pairs, each with the two pairs it is derived from.
+     */
+    @GetMapping("/crossPairs")
+    public Map<String, List<String>> getCrossPairs() {
+        return crossRates.getLegs();
+    }
+
+    /**
+     * Re-reads the pair file and returns the pairs it added. Existing pairs keep their ids and take their
+     * new base price and tick rate; streams of the indexed formats get a new {@code instruments} event.
+     */
+    @PostMapping("/reloadInstruments")
+    public List<String> reloadInstruments() throws IOException {
+        List<String> added;
+        try {
+            added = instruments.reload();
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+        pricer.onInstrumentsReloaded();
+        baseDispatcher.onInstrumentsReloaded();
+        logger.info("Reloaded instruments, {} pairs, added: {}", instruments.size(), added);
+        return added;
     }
 
     @GetMapping("/startPricing")
     public String startPricing(@RequestParam String ccyPair) {
-        pricer.startPricing(ccyPair);
+        requirePricingNode();
+        pricer.startPricing(toPricedCcyPair(ccyPair));
         logger.info("Started pricing for currency pair: {}", ccyPair);
         return "Started pricing for " + ccyPair;
     }
 
     @GetMapping("/pausePricing")
     public String pausePricing(@RequestParam String ccyPair) {
-        pricer.pausePricing(ccyPair);
+        requirePricingNode();
+        pricer.pausePricing(toPricedCcyPair(ccyPair));
         logger.info("Paused pricing for currency pair: {}", ccyPair);
         return "Paused pricing for " + ccyPair;
     }
 
     @GetMapping("/startAllPricing")
     public String startAllPricing() {
+        requirePricingNode();
         pricer.startAllPricing();
         logger.info("Started pricing for all currency pairs");
         return "Started pricing for all currency pairs";
@@ -79,6 +384,7 @@ public class SseController {
 
     @GetMapping("/pauseAllPricing")
     public String pauseAllPricing() {
+        requirePricingNode();
         pricer.pauseAllPricing();
         logger.info("Paused pricing for all currency pairs");
         return "Paused pricing for all currency pairs";
@@ -89,26 +395,118 @@ public class SseController {
         return pricer.getPricingState();
     }
 
-    private List<String> readCcyPairsFromCsv(String filePath) throws IOException {
-        List<String> ccyPairs = new ArrayList<>();
-        ClassPathResource resource = new ClassPathResource(filePath);
-        try (InputStream inputStream = resource.getInputStream();
-             BufferedReader br = new BufferedReader(new InputStreamReader(inputStream))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                ccyPairs.add(line.split(",")[0]);
+    private static WireFormat toWireFormat(String format) {
+        try {
+            return WireFormat.fromParameter(format.trim());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage() + ", expected json, compact or binary-base64");
+        }
+    }
+
+    private static CandleInterval toCandleInterval(String interval) {
+        try {
+            return CandleInterval.fromParameter(interval.trim());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage() + ", expected 1s, 1m or 5m");
+        }
+    }
+
+    private static Set<CandleInterval> toCandleIntervals(List<String> intervals) {
+        if (intervals == null) {
+            return Collections.emptySet();
+        }
+        Set<CandleInterval> result = EnumSet.noneOf(CandleInterval.class);
+        for (String interval : intervals) {
+            if (!interval.trim().isEmpty()) {
+                result.add(toCandleInterval(interval));
+            }
+        }
+        return result;
+    }
+
+    private void requirePricingNode() {
+        if (!pricing) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Pricing is controlled on the publishing node");
+        }
+    }
+
+    private String toCcyPair(String ccyPair) {
+        String trimmed = ccyPair.trim().toUpperCase();
+        if (!pricer.getCcyPairs().contains(trimmed)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown currency pair: " + trimmed);
+        }
+        return trimmed;
+    }
+
+    // A pair the pricing controls apply to, not one derived from others
+    private String toPricedCcyPair(String ccyPair) {
+        String trimmed = toCcyPair(ccyPair);
+        if (instruments.isDerived(instruments.idOf(trimmed))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, trimmed + " is derived from other pairs and ticks with them");
+        }
+        return trimmed;
+    }
+
+    /**
+     * Returns the pairs of a {@code ccyPairs} list whose entries may carry a maximum update rate, as in
+     * {@code EURUSD@5Hz}, putting the rates in {@code maxRatesHz}.
+     */
+    private static List<String> stripMaxRates(List<String> ccyPairs, Map<String, Double> maxRatesHz) {
+        if (ccyPairs == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>(ccyPairs.size());
+        for (String entry : ccyPairs) {
+            int at = entry.indexOf('@');
+            if (at < 0) {
+                result.add(entry);
+                continue;
+            }
+            String ccyPair = entry.substring(0, at).trim().toUpperCase();
+            String rate = entry.substring(at + 1).trim();
+            if (rate.regionMatches(true, rate.length() - 2, "hz", 0, 2)) {
+                rate = rate.substring(0, rate.length() - 2);
+            }
+            double rateHz;
+            try {
+                rateHz = Double.parseDouble(rate);
+            } catch (NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid rate in " + entry.trim() + ", expected e.g. EURUSD@5Hz");
             }
+            checkMaxRate(rateHz);
+            maxRatesHz.put(ccyPair, rateHz);
+            result.add(ccyPair);
+        }
+        return result;
+    }
+
+    private static void checkMaxRate(double rateHz) {
+        if (!(rateHz >= 0 && rateHz <= MAX_RATE_HZ)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Rate must be between 0 (unlimited) and " + MAX_RATE_HZ + " Hz");
         }
-        return ccyPairs;
     }
 
-    private void scheduleMetricsPrinting() {
-        scheduler.scheduleAtFixedRate(customHttp2Metrics::printMetrics, 0, 1, TimeUnit.MINUTES); // Adjust the period as needed
+    private Set<String> toCcyPairs(List<String> ccyPairs) {
+        if (ccyPairs == null) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new HashSet<>();
+        for (String ccyPair : ccyPairs) {
+            String trimmed = ccyPair.trim().toUpperCase();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (!pricer.getCcyPairs().contains(trimmed)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown currency pair: " + trimmed);
+            }
+            result.add(trimmed);
+        }
+        return result;
     }
 
     private static class CustomThreadFactory implements ThreadFactory {
         private final String namePrefix;
-        private int threadNumber = 1;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
 
         CustomThreadFactory(String namePrefix) {
             this.namePrefix = namePrefix;
@@ -116,7 +514,7 @@ public class SseController {
 
         @Override
         public Thread newThread(Runnable r) {
-            Thread t = new Thread(r, namePrefix + "-thread-" + threadNumber++);
+            Thread t = new Thread(r, namePrefix + "-thread-" + threadNumber.getAndIncrement());
             t.setDaemon(true);
             return t;
         }
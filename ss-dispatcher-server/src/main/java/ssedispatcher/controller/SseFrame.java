@@ -0,0 +1,222 @@
+package ssedispatcher.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A fully encoded SSE event ({@code id}, {@code event} and {@code data} lines) that is built once
+ * per tick and written as-is to every emitter, so no per-connection message conversion takes place.
+ */
+public final class SseFrame implements SseEmitter.SseEventBuilder {
+
+    private final long id;
+    private final String event;
+    private final byte[] bytes;
+    // Position of the data line's payload within bytes
+    private final int dataOffset;
+    private final int dataLength;
+    // Epoch nanos of the (oldest) tick in the frame, 0 if unknown
+    private final long timestampNanos;
+    // The tick of a single-tick frame, kept so it can be re-encoded per connection; pair id -1 otherwise
+    private final int pairId;
+    private final long bid;
+    private final long ask;
+    private final Set<DataWithMediaType> payload;
+
+    SseFrame(long id, String event, byte[] bytes, int dataOffset, int dataLength, long timestampNanos) {
+        this(id, event, bytes, dataOffset, dataLength, timestampNanos, -1, 0, 0);
+    }
+
+    SseFrame(long id, String event, byte[] bytes, int dataOffset, int dataLength, long timestampNanos,
+             int pairId, long bid, long ask) {
+        this.id = id;
+        this.event = event;
+        this.bytes = bytes;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+        this.timestampNanos = timestampNanos;
+        this.pairId = pairId;
+        this.bid = bid;
+        this.ask = ask;
+        // byte[] goes straight through ByteArrayHttpMessageConverter without copying
+        this.payload = Collections.singleton(new DataWithMediaType(bytes, MediaType.APPLICATION_OCTET_STREAM));
+    }
+
+    /**
+     * Creates an event without an {@code id} line, which leaves the client's last event id as it is.
+     */
+    public static SseFrame unsequenced(String event, byte[] data) {
+        byte[] eventLine = ("event:" + event + "\ndata:").getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[eventLine.length + data.length + 2];
+        System.arraycopy(eventLine, 0, bytes, 0, eventLine.length);
+        System.arraycopy(data, 0, bytes, eventLine.length, data.length);
+        bytes[bytes.length - 2] = '\n';
+        bytes[bytes.length - 1] = '\n';
+        return new SseFrame(0, event, bytes, eventLine.length, data.length, 0);
+    }
+
+    /**
+     * Creates a frame of field lines that carry no event, such as a {@code :} comment or a {@code retry:}
+     * interval; clients dispatch nothing for it.
+     */
+    public static SseFrame control(String lines) {
+        byte[] bytes = (lines + "\n\n").getBytes(StandardCharsets.UTF_8);
+        return new SseFrame(0, null, bytes, bytes.length, 0, 0);
+    }
+
+    public static SseFrame of(long id, String event, byte[] data) {
+        return of(id, event, data, 0);
+    }
+
+    public static SseFrame of(long id, String event, byte[] data, long timestampNanos) {
+        byte[] idLine = ("id:" + id + "\nevent:" + event + "\ndata:").getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[idLine.length + data.length + 2];
+        System.arraycopy(idLine, 0, bytes, 0, idLine.length);
+        System.arraycopy(data, 0, bytes, idLine.length, data.length);
+        bytes[bytes.length - 2] = '\n';
+        bytes[bytes.length - 1] = '\n';
+        return new SseFrame(id, event, bytes, idLine.length, data.length, timestampNanos);
+    }
+
+    /**
+     * Combines the data of several frames into one event whose data is a JSON array of their data,
+     * carrying the highest id in the batch.
+     */
+    public static SseFrame batch(String event, List<SseFrame> frames) {
+        return batch(event, frames, WireFormat.JSON);
+    }
+
+    /**
+     * Combines the data of several frames of the given format into one event, carrying the highest id
+     * in the batch.
+     */
+    public static SseFrame batch(String event, List<SseFrame> frames, WireFormat format) {
+        long id = 0;
+        long timestampNanos = Long.MAX_VALUE;
+        for (SseFrame frame : frames) {
+            id = Math.max(id, frame.id);
+            timestampNanos = Math.min(timestampNanos, frame.timestampNanos);
+        }
+        return of(id, event, joinData(frames, format), frames.isEmpty() ? 0 : timestampNanos);
+    }
+
+    /**
+     * Returns the data of the frames as a JSON array.
+     */
+    public static byte[] joinData(List<SseFrame> frames) {
+        return joinData(frames, WireFormat.JSON);
+    }
+
+    /**
+     * Returns the data of the frames as a JSON array, or comma-separated for a format that is not JSON.
+     */
+    public static byte[] joinData(List<SseFrame> frames, WireFormat format) {
+        int brackets = format.isJsonArray() ? 2 : 0;
+        int length = brackets + Math.max(0, frames.size() - 1);
+        for (SseFrame frame : frames) {
+            length += frame.dataLength;
+        }
+        byte[] data = new byte[length];
+        int pos = 0;
+        if (brackets > 0) {
+            data[pos++] = '[';
+        }
+        for (int i = 0; i < frames.size(); i++) {
+            if (i > 0) {
+                data[pos++] = ',';
+            }
+            SseFrame frame = frames.get(i);
+            System.arraycopy(frame.bytes, frame.dataOffset, data, pos, frame.dataLength);
+            pos += frame.dataLength;
+        }
+        if (brackets > 0) {
+            data[pos] = ']';
+        }
+        return data;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public byte[] getData() {
+        return Arrays.copyOfRange(bytes, dataOffset, dataOffset + dataLength);
+    }
+
+    /**
+     * Writes the data of the frame without copying it.
+     */
+    public void writeData(OutputStream out) throws IOException {
+        out.write(bytes, dataOffset, dataLength);
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getPairId() {
+        return pairId;
+    }
+
+    public long getBid() {
+        return bid;
+    }
+
+    public long getAsk() {
+        return ask;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    @Override
+    public Set<DataWithMediaType> build() {
+        return payload;
+    }
+
+    // The frame is immutable once encoded; the builder mutators are not supported.
+
+    @Override
+    public SseEmitter.SseEventBuilder comment(String comment) {
+        throw new UnsupportedOperationException("SseFrame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder name(String eventName) {
+        throw new UnsupportedOperationException("SseFrame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder id(String id) {
+        throw new UnsupportedOperationException("SseFrame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder reconnectTime(long reconnectTimeMillis) {
+        throw new UnsupportedOperationException("SseFrame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder data(Object object) {
+        throw new UnsupportedOperationException("SseFrame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder data(Object object, MediaType mediaType) {
+        throw new UnsupportedOperationException("SseFrame is already encoded");
+    }
+}
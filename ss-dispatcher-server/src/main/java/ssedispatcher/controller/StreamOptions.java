@@ -0,0 +1,120 @@
+package ssedispatcher.controller;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-connection options requested on {@code /stream-sse}.
+ */
+public class StreamOptions {
+
+    private final Set<String> ccyPairs;
+    // 0 streams every tick as its own event; otherwise ticks are collected over this window
+    private long batchMs;
+    // Maximum number of pairs per batch event, 0 for no limit
+    private int batchSize;
+    // Id of the last event the client received before reconnecting, null for a fresh stream
+    private Long lastEventId;
+    // Send the latest price of every subscribed pair as the first event of a fresh stream
+    private boolean snapshot;
+    private WireFormat format = WireFormat.JSON;
+    // Send compact ticks as differences from the last price sent for the pair
+    private boolean delta;
+    // Most updates per second sent for a pair; pairs without an entry get the default, 0 for no limit
+    private Map<String, Double> maxRatesHz = Collections.emptyMap();
+    private double defaultMaxRateHz;
+    // Bar lengths whose OHLC candles of the subscribed pairs are sent as 'candles' events
+    private Set<CandleInterval> candleIntervals = Collections.emptySet();
+
+    public StreamOptions(Set<String> ccyPairs) {
+        this.ccyPairs = ccyPairs;
+    }
+
+    public Set<String> getCcyPairs() {
+        return ccyPairs;
+    }
+
+    public long getBatchMs() {
+        return batchMs;
+    }
+
+    public void setBatchMs(long batchMs) {
+        this.batchMs = batchMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Long getLastEventId() {
+        return lastEventId;
+    }
+
+    public void setLastEventId(Long lastEventId) {
+        this.lastEventId = lastEventId;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(WireFormat format) {
+        this.format = format;
+    }
+
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public void setDelta(boolean delta) {
+        this.delta = delta;
+    }
+
+    public Map<String, Double> getMaxRatesHz() {
+        return maxRatesHz;
+    }
+
+    public void setMaxRatesHz(Map<String, Double> maxRatesHz) {
+        this.maxRatesHz = maxRatesHz;
+    }
+
+    public double getDefaultMaxRateHz() {
+        return defaultMaxRateHz;
+    }
+
+    public void setDefaultMaxRateHz(double defaultMaxRateHz) {
+        this.defaultMaxRateHz = defaultMaxRateHz;
+    }
+
+    /**
+     * Returns the most updates per second to send for the pair, 0 for every tick.
+     */
+    public double maxRateHz(String ccyPair) {
+        return maxRatesHz.getOrDefault(ccyPair, defaultMaxRateHz);
+    }
+
+    public Set<CandleInterval> getCandleIntervals() {
+        return candleIntervals;
+    }
+
+    public void setCandleIntervals(Set<CandleInterval> candleIntervals) {
+        this.candleIntervals = candleIntervals;
+    }
+
+    public boolean isBatching() {
+        return batchMs > 0;
+    }
+}
@@ -0,0 +1,27 @@
+package ssedispatcher.controller;
+
+/**
+ * Thrown when admission control refuses a new stream; answered with 503 and a {@code Retry-After}.
+ */
+public class StreamRejectedException extends RuntimeException {
+
+    private final String reason;
+    private final long retryAfterSeconds;
+
+    public StreamRejectedException(String reason, String message, long retryAfterSeconds) {
+        super(message);
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Returns the limit that refused the stream, as tagged on {@code sse.connections.rejected}.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
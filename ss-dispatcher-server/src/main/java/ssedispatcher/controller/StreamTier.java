@@ -0,0 +1,12 @@
+package ssedispatcher.controller;
+
+/**
+ * Admission priority of a user's streams. Viewers leave a reserve of the streams and of the connect
+ * budget to desks, and are the first refused when fan-out slows down.
+ */
+public enum StreamTier {
+    /** Trading desks, listed in {@code desk-users}: only refused at the hard limits. */
+    DESK,
+    /** Everyone else. */
+    VIEWER
+}
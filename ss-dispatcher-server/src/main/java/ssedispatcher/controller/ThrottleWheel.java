@@ -0,0 +1,153 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Releases the ticks that rate-limited streams hold back, at the time each pair may send again. A
+ * single thread runs a hashed timer wheel with 1 ms buckets, like {@link TickEngine}, so a turn only
+ * touches the releases that are due; other threads hand new releases over in a batch that the wheel
+ * thread swaps for an empty one. Releases are kept as connection, pair id and deadline in arrays that
+ * grow and are reused, so holding back a tick allocates nothing once they have grown.
+ */
+public class ThrottleWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThrottleWheel.class);
+    private static final int WHEEL_SLOTS = 1024; // power of two
+    private static final int WHEEL_MASK = WHEEL_SLOTS - 1;
+    private static final long RESOLUTION_NANOS = 1_000_000L;
+
+    interface ReleaseHandler {
+        void release(SseConnection connection, int pairId, long nowNanos);
+    }
+
+    private final ReleaseHandler handler;
+    private final Object lock = new Object();
+    // Filled by other threads under the lock, swapped with the emptied one by the wheel thread
+    private Releases added = new Releases();
+    private Releases adding = new Releases();
+    private volatile boolean pending;
+    // Buckets are only touched by the wheel thread
+    private final Releases[] buckets = new Releases[WHEEL_SLOTS];
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public ThrottleWheel(ReleaseHandler handler) {
+        this.handler = handler;
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            buckets[i] = new Releases();
+        }
+        this.thread = new Thread(this::run, "ThrottleWheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Calls the handler for the pair of the connection once {@code System.nanoTime()} has reached
+     * {@code deadlineNanos}, give or take one bucket.
+     */
+    void schedule(SseConnection connection, int pairId, long deadlineNanos) {
+        synchronized (lock) {
+            added.add(connection, pairId, deadlineNanos);
+            pending = true;
+        }
+        LockSupport.unpark(thread);
+    }
+
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        long tick = System.nanoTime() / RESOLUTION_NANOS;
+        int scheduled = 0;
+        while (running) {
+            if (pending) {
+                Releases batch;
+                synchronized (lock) {
+                    batch = added;
+                    added = adding;
+                    pending = false;
+                }
+                adding = batch;
+                for (int i = 0; i < batch.size; i++) {
+                    // Anything already due goes in the current bucket
+                    long due = Math.max(batch.deadlines[i] / RESOLUTION_NANOS, tick);
+                    buckets[(int) (due & WHEEL_MASK)].add(batch.connections[i], batch.pairIds[i], batch.deadlines[i]);
+                    scheduled++;
+                }
+                batch.clear(0);
+            }
+            long now = System.nanoTime();
+            while (tick <= now / RESOLUTION_NANOS) {
+                scheduled -= expire(tick, now);
+                tick++;
+            }
+            if (!pending) {
+                if (scheduled == 0) {
+                    LockSupport.park(this);
+                    tick = Math.max(tick, System.nanoTime() / RESOLUTION_NANOS);
+                } else {
+                    long sleep = tick * RESOLUTION_NANOS - System.nanoTime();
+                    if (sleep > 0) {
+                        LockSupport.parkNanos(this, sleep);
+                    }
+                }
+            }
+        }
+    }
+
+    private int expire(long tick, long now) {
+        Releases bucket = buckets[(int) (tick & WHEEL_MASK)];
+        int fired = 0;
+        int kept = 0;
+        for (int i = 0; i < bucket.size; i++) {
+            SseConnection connection = bucket.connections[i];
+            if (bucket.deadlines[i] / RESOLUTION_NANOS > tick) {
+                // Due on a later turn of the wheel
+                bucket.set(kept++, connection, bucket.pairIds[i], bucket.deadlines[i]);
+                continue;
+            }
+            fired++;
+            try {
+                handler.release(connection, bucket.pairIds[i], now);
+            } catch (RuntimeException e) {
+                logger.error("Error releasing throttled tick for user: {}", connection.getUserId(), e);
+            }
+        }
+        bucket.clear(kept);
+        return fired;
+    }
+
+    private static final class Releases {
+        private SseConnection[] connections = new SseConnection[4];
+        private int[] pairIds = new int[4];
+        private long[] deadlines = new long[4];
+        private int size;
+
+        void add(SseConnection connection, int pairId, long deadlineNanos) {
+            if (size == connections.length) {
+                connections = Arrays.copyOf(connections, size * 2);
+                pairIds = Arrays.copyOf(pairIds, size * 2);
+                deadlines = Arrays.copyOf(deadlines, size * 2);
+            }
+            set(size++, connection, pairId, deadlineNanos);
+        }
+
+        void set(int index, SseConnection connection, int pairId, long deadlineNanos) {
+            connections[index] = connection;
+            pairIds[index] = pairId;
+            deadlines[index] = deadlineNanos;
+        }
+
+        // Keeps the first releases, dropping the connections of the others so closed streams can be collected
+        void clear(int keep) {
+            Arrays.fill(connections, keep, size, null);
+            size = keep;
+        }
+    }
+}
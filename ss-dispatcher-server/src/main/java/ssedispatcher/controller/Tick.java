@@ -0,0 +1,70 @@
+package ssedispatcher.controller;
+
+import java.time.Instant;
+
+/**
+ * Mutable, reusable representation of one price update on the tick path. Bid and ask are fixed-point
+ * values at the scale of the instrument, the timestamp is in nanoseconds since the epoch. Consumers
+ * must copy what they keep, because the owner overwrites the instance with the next tick.
+ */
+public final class Tick {
+
+    // Offset from System.nanoTime() to epoch nanos, so timestamps can be taken without allocating an Instant.
+    // It is taken from the wall clock again every second, so timestamps follow NTP adjustments rather than
+    // drifting with the monotonic clock; callers needing monotonic timestamps per pair clamp them.
+    private static final long RESYNC_NANOS = 1_000_000_000L;
+    private static volatile long epochNanosOffset;
+    private static volatile long resyncAtNanos = System.nanoTime();
+
+    private final int pairId;
+    private long bid;
+    private long ask;
+    private long timestampNanos;
+    private long sequence;
+
+    public Tick(int pairId) {
+        this.pairId = pairId;
+    }
+
+    public static long epochNanos() {
+        long now = System.nanoTime();
+        if (now - resyncAtNanos >= 0) {
+            // Threads racing here both re-sync, which is harmless, so no lock is needed
+            Instant wallClock = Instant.now();
+            now = System.nanoTime();
+            epochNanosOffset = wallClock.getEpochSecond() * 1_000_000_000L + wallClock.getNano() - now;
+            resyncAtNanos = now + RESYNC_NANOS;
+        }
+        return epochNanosOffset + now;
+    }
+
+    public void set(long bid, long ask, long timestampNanos) {
+        this.bid = bid;
+        this.ask = ask;
+        this.timestampNanos = timestampNanos;
+    }
+
+    public int getPairId() {
+        return pairId;
+    }
+
+    public long getBid() {
+        return bid;
+    }
+
+    public long getAsk() {
+        return ask;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+}
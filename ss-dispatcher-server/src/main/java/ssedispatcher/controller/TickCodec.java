@@ -0,0 +1,61 @@
+package ssedispatcher.controller;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size binary form of a tick on the price bus, one per datagram, big-endian:
+ * <pre>
+ *  0 int  magic and version
+ *  4 int  pair id
+ *  8 long publisher session
+ * 16 long sequence
+ * 24 long pair sequence
+ * 32 long bid
+ * 40 long ask
+ * 48 long timestamp, epoch nanos
+ * </pre>
+ * The pair sequence counts the ticks of one pair, so a subscriber can tell per pair which ticks it lost
+ * and drop a datagram the network delivered after a newer one of the same pair.
+ */
+final class TickCodec {
+
+    static final int RECORD_SIZE = 56;
+    private static final int MAGIC = 0x53544B01; // "STK", version 1
+
+    private TickCodec() {
+    }
+
+    static void encode(ByteBuffer buffer, Tick tick, long session, long pairSequence) {
+        buffer.clear();
+        buffer.putInt(MAGIC)
+                .putInt(tick.getPairId())
+                .putLong(session)
+                .putLong(tick.getSequence())
+                .putLong(pairSequence)
+                .putLong(tick.getBid())
+                .putLong(tick.getAsk())
+                .putLong(tick.getTimestampNanos());
+        buffer.flip();
+    }
+
+    static boolean isValid(ByteBuffer buffer) {
+        return buffer.remaining() == RECORD_SIZE && buffer.getInt(0) == MAGIC;
+    }
+
+    static int pairId(ByteBuffer buffer) {
+        return buffer.getInt(4);
+    }
+
+    static long session(ByteBuffer buffer) {
+        return buffer.getLong(8);
+    }
+
+    static long pairSequence(ByteBuffer buffer) {
+        return buffer.getLong(24);
+    }
+
+    static void decode(ByteBuffer buffer, Tick tick) {
+        tick.setSequence(buffer.getLong(16));
+        tick.set(buffer.getLong(32), buffer.getLong(40), buffer.getLong(48));
+    }
+}
@@ -0,0 +1,313 @@
+package ssedispatcher.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * Writes a tick straight into an SSE frame with the same JSON as the {@link Price} view
+ * ({@code {"bid":1.1012,"ask":1.1013,"ccyPair":"EURUSD","timestamp":"2024-05-01T10:15:30.123456789"}}),
+ * without going through {@code BigDecimal}, {@code LocalDateTime} or Jackson. The only allocation is
+ * the frame itself, which is shared by every subscriber. The {@link WireFormat#COMPACT} and
+ * {@link WireFormat#BINARY_BASE64} forms carry the same tick as integers, with the pair as its index.
+ */
+public class TickEncoder {
+
+    static final byte[] ID = ascii("id:");
+    static final byte[] EVENT_DATA = ascii("\nevent:" + BaseDispatcher.PRICE_EVENT + "\ndata:");
+    private static final byte[] BID = ascii("{\"bid\":");
+    private static final byte[] ASK = ascii(",\"ask\":");
+    private static final byte[] CCY_PAIR = ascii(",\"ccyPair\":\"");
+    private static final byte[] TIMESTAMP = ascii("\",\"timestamp\":\"");
+    private static final byte[] END = ascii("\"}");
+    private static final int SCRATCH_BYTES = 512;
+    private static final byte[] BASE64 = ascii("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
+
+    private final Instruments instruments;
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[SCRATCH_BYTES]);
+    private final ThreadLocal<byte[]> binaryScratch = ThreadLocal.withInitial(() -> new byte[SCRATCH_BYTES]);
+    private volatile InstrumentsFrame instrumentsFrame;
+    // UTC offset of the system zone and the epoch-second range it applies to, refreshed at transitions
+    private volatile OffsetWindow offsetWindow = new OffsetWindow(0, 0, 0);
+
+    public TickEncoder(Instruments instruments) {
+        this.instruments = instruments;
+        this.instrumentsFrame = new InstrumentsFrame(instruments.version(), encodeInstruments(instruments));
+    }
+
+    // [["EURUSD",4],["USDJPY",4],...] in pair index order, sent ahead of compact and binary ticks
+    private static SseFrame encodeInstruments(Instruments instruments) {
+        StringBuilder data = new StringBuilder("[");
+        for (int id = 0; id < instruments.size(); id++) {
+            if (id > 0) {
+                data.append(',');
+            }
+            data.append("[\"").append(instruments.name(id)).append("\",").append(instruments.scale(id)).append(']');
+        }
+        return SseFrame.unsequenced(BaseDispatcher.INSTRUMENTS_EVENT, ascii(data.append(']').toString()));
+    }
+
+    /**
+     * Returns the {@code instruments} event, mapping the pair indexes of the indexed formats to names and scales.
+     */
+    public SseFrame getInstrumentsFrame() {
+        InstrumentsFrame current = instrumentsFrame;
+        long version = instruments.version();
+        if (current.version != version) {
+            // Re-encoded once after a reload; a race only encodes it twice
+            current = new InstrumentsFrame(version, encodeInstruments(instruments));
+            instrumentsFrame = current;
+        }
+        return current.frame;
+    }
+
+    public SseFrame encode(Tick tick) {
+        return encode(tick.getSequence(), tick.getPairId(), tick.getBid(), tick.getAsk(), tick.getTimestampNanos());
+    }
+
+    public SseFrame encode(Tick tick, WireFormat format) {
+        return encode(format, tick.getSequence(), tick.getPairId(), tick.getBid(), tick.getAsk(), tick.getTimestampNanos());
+    }
+
+    public SseFrame encode(WireFormat format, long sequence, int pairId, long bid, long ask, long timestampNanos) {
+        switch (format) {
+            case COMPACT:
+                return encodeCompact(sequence, pairId, bid, ask, timestampNanos);
+            case BINARY_BASE64:
+                return encodeBinary(sequence, pairId, bid, ask, timestampNanos);
+            default:
+                return encode(sequence, pairId, bid, ask, timestampNanos);
+        }
+    }
+
+    private SseFrame encodeCompact(long sequence, int pairId, long bid, long ask, long timestampNanos) {
+        byte[] buf = scratch.get();
+        int pos = put(buf, 0, ID);
+        pos = putLong(buf, pos, sequence);
+        pos = put(buf, pos, EVENT_DATA);
+        int dataOffset = pos;
+        buf[pos++] = '[';
+        pos = putLong(buf, pos, pairId);
+        buf[pos++] = ',';
+        pos = putLong(buf, pos, bid);
+        buf[pos++] = ',';
+        pos = putLong(buf, pos, ask);
+        buf[pos++] = ',';
+        // Micros stay below 2^53, so JavaScript numbers hold them exactly
+        pos = putLong(buf, pos, Math.floorDiv(timestampNanos, 1_000L));
+        buf[pos++] = ']';
+        return frame(buf, pos, sequence, dataOffset, timestampNanos, pairId, bid, ask);
+    }
+
+    private SseFrame encodeBinary(long sequence, int pairId, long bid, long ask, long timestampNanos) {
+        byte[] record = binaryScratch.get();
+        int length = putVarint(record, 0, pairId);
+        length = putVarint(record, length, zigzag(bid));
+        length = putVarint(record, length, zigzag(ask - bid));
+        length = putVarint(record, length, Math.floorDiv(timestampNanos, 1_000L));
+        byte[] buf = scratch.get();
+        int pos = put(buf, 0, ID);
+        pos = putLong(buf, pos, sequence);
+        pos = put(buf, pos, EVENT_DATA);
+        int dataOffset = pos;
+        pos = putBase64(buf, pos, record, length);
+        return frame(buf, pos, sequence, dataOffset, timestampNanos, pairId, bid, ask);
+    }
+
+    static SseFrame frame(byte[] buf, int pos, long sequence, int dataOffset, long timestampNanos,
+                          int pairId, long bid, long ask) {
+        int dataLength = pos - dataOffset;
+        buf[pos++] = '\n';
+        buf[pos++] = '\n';
+        return new SseFrame(sequence, BaseDispatcher.PRICE_EVENT, Arrays.copyOf(buf, pos), dataOffset, dataLength,
+                timestampNanos, pairId, bid, ask);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int putVarint(byte[] buf, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    // RFC 4648 base64 without padding
+    private static int putBase64(byte[] buf, int pos, byte[] src, int length) {
+        int i = 0;
+        for (; i + 3 <= length; i += 3) {
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+            buf[pos++] = BASE64[bits >>> 18];
+            buf[pos++] = BASE64[bits >>> 12 & 0x3F];
+            buf[pos++] = BASE64[bits >>> 6 & 0x3F];
+            buf[pos++] = BASE64[bits & 0x3F];
+        }
+        int remaining = length - i;
+        if (remaining > 0) {
+            int bits = (src[i] & 0xFF) << 16 | (remaining == 2 ? (src[i + 1] & 0xFF) << 8 : 0);
+            buf[pos++] = BASE64[bits >>> 18];
+            buf[pos++] = BASE64[bits >>> 12 & 0x3F];
+            if (remaining == 2) {
+                buf[pos++] = BASE64[bits >>> 6 & 0x3F];
+            }
+        }
+        return pos;
+    }
+
+    public SseFrame encode(long sequence, int pairId, long bid, long ask, long timestampNanos) {
+        byte[] buf = scratch.get();
+        int scale = instruments.scale(pairId);
+        int pos = put(buf, 0, ID);
+        pos = putLong(buf, pos, sequence);
+        pos = put(buf, pos, EVENT_DATA);
+        int dataOffset = pos;
+        pos = put(buf, pos, BID);
+        pos = putDecimal(buf, pos, bid, scale);
+        pos = put(buf, pos, ASK);
+        pos = putDecimal(buf, pos, ask, scale);
+        pos = put(buf, pos, CCY_PAIR);
+        pos = put(buf, pos, instruments.asciiName(pairId));
+        pos = put(buf, pos, TIMESTAMP);
+        pos = putTimestamp(buf, pos, timestampNanos);
+        pos = put(buf, pos, END);
+        return frame(buf, pos, sequence, dataOffset, timestampNanos, pairId, bid, ask);
+    }
+
+    static int put(byte[] buf, int pos, byte[] bytes) {
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    static int putLong(byte[] buf, int pos, long value) {
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    // Fixed-point value with exactly scale decimals, as BigDecimal.toPlainString() prints it
+    static int putDecimal(byte[] buf, int pos, long value, int scale) {
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        long unit = Instruments.powerOfTen(scale);
+        pos = putLong(buf, pos, value / unit);
+        if (scale > 0) {
+            buf[pos++] = '.';
+            pos = putPadded(buf, pos, value % unit, scale);
+        }
+        return pos;
+    }
+
+    private static int putPadded(byte[] buf, int pos, long value, int width) {
+        for (int i = pos + width - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + width;
+    }
+
+    // ISO-8601 local date-time in the system zone, as LocalDateTime is serialised by Jackson
+    private int putTimestamp(byte[] buf, int pos, long epochNanos) {
+        long epochSecond = Math.floorDiv(epochNanos, 1_000_000_000L);
+        int nanos = (int) Math.floorMod(epochNanos, 1_000_000_000L);
+        long localSecond = epochSecond + offsetSeconds(epochSecond);
+        long epochDay = Math.floorDiv(localSecond, 86_400L);
+        int secondOfDay = (int) Math.floorMod(localSecond, 86_400L);
+
+        // Civil date from days since 1970-01-01 (proleptic Gregorian)
+        long z = epochDay + 719_468L;
+        long era = (z >= 0 ? z : z - 146_096L) / 146_097L;
+        long dayOfEra = z - era * 146_097L;
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        pos = putPadded(buf, pos, year, 4);
+        buf[pos++] = '-';
+        pos = putPadded(buf, pos, month, 2);
+        buf[pos++] = '-';
+        pos = putPadded(buf, pos, day, 2);
+        buf[pos++] = 'T';
+        pos = putPadded(buf, pos, secondOfDay / 3_600, 2);
+        buf[pos++] = ':';
+        pos = putPadded(buf, pos, secondOfDay / 60 % 60, 2);
+        buf[pos++] = ':';
+        pos = putPadded(buf, pos, secondOfDay % 60, 2);
+        if (nanos != 0) {
+            buf[pos++] = '.';
+            int width = 9;
+            while (nanos % 10 == 0) {
+                nanos /= 10;
+                width--;
+            }
+            pos = putPadded(buf, pos, nanos, width);
+        }
+        return pos;
+    }
+
+    private int offsetSeconds(long epochSecond) {
+        OffsetWindow window = offsetWindow;
+        if (epochSecond < window.from || epochSecond >= window.until) {
+            window = OffsetWindow.at(epochSecond);
+            offsetWindow = window;
+        }
+        return window.offsetSeconds;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class OffsetWindow {
+        final int offsetSeconds;
+        final long from;
+        final long until;
+
+        OffsetWindow(int offsetSeconds, long from, long until) {
+            this.offsetSeconds = offsetSeconds;
+            this.from = from;
+            this.until = until;
+        }
+
+        static OffsetWindow at(long epochSecond) {
+            ZoneRules rules = ZoneId.systemDefault().getRules();
+            Instant instant = Instant.ofEpochSecond(epochSecond);
+            ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            return new OffsetWindow(rules.getOffset(instant).getTotalSeconds(),
+                    previous == null ? Long.MIN_VALUE : previous.toEpochSecond(),
+                    next == null ? Long.MAX_VALUE : next.toEpochSecond());
+        }
+    }
+
+    private static final class InstrumentsFrame {
+        private final long version;
+        private final SseFrame frame;
+
+        InstrumentsFrame(long version, SseFrame frame) {
+            this.version = version;
+            this.frame = frame;
+        }
+    }
+}
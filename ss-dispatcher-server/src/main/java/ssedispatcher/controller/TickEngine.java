@@ -0,0 +1,220 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+/**
+ * Drives the ticks of every pair from a fixed set of threads. Pairs are partitioned by id and each
+ * partition thread runs a hashed timer wheel with 1 ms buckets, so a wheel turn only touches the pairs
+ * that are due. A pair is always ticked by the same thread. Starting and pausing a pair only flip its
+ * state, so both are idempotent and a pair never has more than one schedule. The engine is sized for a
+ * capacity of pairs up front, so pairs added later only need a tick rate.
+ */
+public class TickEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(TickEngine.class);
+    private static final int UNSET = 0;
+    private static final int PAUSED = 1;
+    private static final int RUNNING = 2;
+    private static final int WHEEL_SLOTS = 1024; // power of two
+    private static final int WHEEL_MASK = WHEEL_SLOTS - 1;
+    private static final long RESOLUTION_NANOS = 1_000_000L;
+    // A pair cannot tick more than once per bucket
+    static final int MAX_TICK_RATE_HZ = 1_000;
+
+    private final IntConsumer onTick;
+    // Changed by reloads, read by the thread owning the pair when it schedules the next tick
+    private final AtomicLongArray intervalNanos;
+    private final AtomicIntegerArray states;
+    // Deadlines and schedule flags are only touched by the thread owning the pair
+    private final long[] deadlines;
+    private final boolean[] scheduled;
+    private final Partition[] partitions;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final long origin = System.nanoTime();
+    private volatile boolean running = true;
+
+    public TickEngine(int[] tickRatesHz, int threads, IntConsumer onTick) {
+        this(tickRatesHz, tickRatesHz.length, threads, onTick);
+    }
+
+    public TickEngine(int[] tickRatesHz, int capacity, int threads, IntConsumer onTick) {
+        this.onTick = onTick;
+        int pairs = Math.max(capacity, tickRatesHz.length);
+        this.intervalNanos = new AtomicLongArray(pairs);
+        for (int id = 0; id < pairs; id++) {
+            setTickRate(id, id < tickRatesHz.length ? tickRatesHz[id] : Instruments.DEFAULT_TICK_RATE_HZ);
+        }
+        this.states = new AtomicIntegerArray(pairs);
+        this.deadlines = new long[pairs];
+        this.scheduled = new boolean[pairs];
+        this.partitions = new Partition[Math.max(1, Math.min(threads, pairs))];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i);
+        }
+    }
+
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            for (Partition partition : partitions) {
+                Thread thread = new Thread(partition, "TickEngine-" + partition.index);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            logger.info("Tick engine started with {} partitions for up to {} pairs", partitions.length, intervalNanos.length());
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+    }
+
+    /**
+     * Sets how many times per second the pair ticks, from its next tick on.
+     */
+    public void setTickRate(int id, int tickRateHz) {
+        int rate = Math.min(Math.max(tickRateHz, 1), MAX_TICK_RATE_HZ);
+        intervalNanos.set(id, 1_000_000_000L / rate);
+    }
+
+    /**
+     * Starts ticking the pair. Returns false if it was already running.
+     */
+    public boolean startPricing(int id) {
+        if (states.getAndSet(id, RUNNING) == RUNNING) {
+            return false;
+        }
+        partitions[id % partitions.length].requestStart(id);
+        return true;
+    }
+
+    /**
+     * Stops ticking the pair. Returns false if it was not running.
+     */
+    public boolean pausePricing(int id) {
+        return states.getAndSet(id, PAUSED) == RUNNING;
+    }
+
+    public boolean isRunning(int id) {
+        return states.get(id) == RUNNING;
+    }
+
+    /**
+     * Returns true once the pair has been started or paused at least once.
+     */
+    public boolean isKnown(int id) {
+        return states.get(id) != UNSET;
+    }
+
+    private final class Partition implements Runnable {
+        private final int index;
+        private final Queue<Integer> starts = new ConcurrentLinkedQueue<>();
+        private final int[][] buckets = new int[WHEEL_SLOTS][];
+        private final int[] bucketSizes = new int[WHEEL_SLOTS];
+        private volatile Thread thread;
+
+        Partition(int index) {
+            this.index = index;
+            for (int i = 0; i < WHEEL_SLOTS; i++) {
+                buckets[i] = new int[4];
+            }
+        }
+
+        void requestStart(int id) {
+            starts.add(id);
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            long tick = (System.nanoTime() - origin) / RESOLUTION_NANOS;
+            while (running) {
+                scheduleStarted(tick);
+                long now = System.nanoTime() - origin;
+                // Catch up on every bucket passed since the last turn, missed ticks are not replayed
+                while (tick <= now / RESOLUTION_NANOS) {
+                    expire(tick, now);
+                    tick++;
+                }
+                long sleep = tick * RESOLUTION_NANOS - (System.nanoTime() - origin);
+                if (sleep > 0 && starts.isEmpty()) {
+                    LockSupport.parkNanos(this, sleep);
+                }
+            }
+        }
+
+        private void scheduleStarted(long tick) {
+            Integer id;
+            while ((id = starts.poll()) != null) {
+                if (!scheduled[id] && states.get(id) == RUNNING) {
+                    scheduled[id] = true;
+                    // Spread the first ticks of pairs started together over one interval
+                    long jitter = ThreadLocalRandom.current().nextLong(intervalNanos.get(id));
+                    deadlines[id] = Math.max(System.nanoTime() - origin + jitter, tick * RESOLUTION_NANOS);
+                    add(id);
+                }
+            }
+        }
+
+        private void expire(long tick, long now) {
+            int slot = (int) (tick & WHEEL_MASK);
+            int[] ids = buckets[slot];
+            int size = bucketSizes[slot];
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int id = ids[i];
+                if (deadlines[id] / RESOLUTION_NANOS > tick) {
+                    // Due on a later turn of the wheel
+                    ids[kept++] = id;
+                    continue;
+                }
+                if (states.get(id) != RUNNING) {
+                    scheduled[id] = false;
+                    continue;
+                }
+                fire(id);
+                long next = deadlines[id] + intervalNanos.get(id);
+                if (next <= now) {
+                    // Behind schedule: skip the missed ticks instead of bursting to catch up
+                    next = now + intervalNanos.get(id);
+                }
+                deadlines[id] = Math.max(next, (tick + 1) * RESOLUTION_NANOS);
+                if ((int) ((deadlines[id] / RESOLUTION_NANOS) & WHEEL_MASK) == slot) {
+                    ids[kept++] = id;
+                } else {
+                    add(id);
+                }
+            }
+            bucketSizes[slot] = kept;
+        }
+
+        private void fire(int id) {
+            try {
+                onTick.accept(id);
+            } catch (RuntimeException e) {
+                logger.error("Error generating tick for pair id {}", id, e);
+            }
+        }
+
+        private void add(int id) {
+            int slot = (int) ((deadlines[id] / RESOLUTION_NANOS) & WHEEL_MASK);
+            int size = bucketSizes[slot];
+            if (size == buckets[slot].length) {
+                buckets[slot] = Arrays.copyOf(buckets[slot], size * 2);
+            }
+            buckets[slot][size] = id;
+            bucketSizes[slot] = size + 1;
+        }
+    }
+}
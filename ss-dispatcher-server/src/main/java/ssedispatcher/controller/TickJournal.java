@@ -0,0 +1,372 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Appends every tick to a memory-mapped journal per pair, so prices can be queried after the fact. Each
+ * pair has a directory of segment files named by the timestamp of their first tick and a counter, so
+ * segments started within the same nanosecond do not collide; a segment holds a fixed number of 32-byte
+ * records (sequence, bid, ask, epoch nanos, as in {@link ReplayBuffer}) after a header that keeps the
+ * scale of their prices, and a new one is started when it is full or has been written to for the roll
+ * interval. Segments older than the retention are deleted when a pair rolls, and those of an earlier run
+ * when the journal starts, without mapping them; as readers may still hold views of a segment, its
+ * mapping, and so its disk space, is only released once the buffer is collected.
+ * <p>
+ * The journal is a {@link PriceSubscriber}: its thread follows the {@link TickRing} and writes the ticks
+ * to the segments, so the tick path only copies them into the ring. When it falls a whole ring behind,
+ * the overwritten ticks are missing from the journal and counted rather than holding up the tick path.
+ * Readers query the mapped segments directly, relying on the timestamps of a pair never going
+ * backwards. Pairs added by an instrument reload get their directory on their first tick.
+ */
+public class TickJournal implements PriceSubscriber, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TickJournal.class);
+    static final int RECORD_BYTES = 32;
+    // Header layout: magic, version, scale, record capacity, record count, first timestamp
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC = 0x544a524e; // "TJRN"
+    private static final int VERSION = 1;
+    private static final int SCALE_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+    private static final int FIRST_NANOS_OFFSET = 24;
+    private static final String SUFFIX = ".journal";
+
+    private final Instruments instruments;
+    private final DispatcherMetrics metrics;
+    private final int segmentRecords;
+    private final long rollNanos;
+    private final long retentionNanos;
+    private final Path directory;
+    // Written by the journal thread only
+    private final AtomicReferenceArray<PairJournal> pairs;
+
+    public TickJournal(Path directory, Instruments instruments, DispatcherMetrics metrics, int segmentRecords,
+                       long rollMs, long retentionMs) throws IOException {
+        this.instruments = instruments;
+        this.metrics = metrics;
+        this.segmentRecords = segmentRecords;
+        this.rollNanos = rollMs * 1_000_000L;
+        this.retentionNanos = retentionMs * 1_000_000L;
+        this.directory = directory;
+        this.pairs = new AtomicReferenceArray<>(instruments.capacity());
+        for (int id = 0; id < instruments.size(); id++) {
+            pairs.set(id, new PairJournal(id, directory.resolve(instruments.name(id))));
+        }
+        logger.info("Journaling ticks to {}", directory.toAbsolutePath());
+    }
+
+    // Runs on the journal thread
+    @Override
+    public void onPriceUpdate(Tick tick) {
+        try {
+            pair(tick.getPairId()).append(tick.getSequence(), tick.getBid(), tick.getAsk(), tick.getTimestampNanos());
+            metrics.onJournaled();
+        } catch (IOException | RuntimeException e) {
+            metrics.onJournalDropped(1);
+            logger.error("Error journaling tick of {}", instruments.name(tick.getPairId()), e);
+        }
+    }
+
+    @Override
+    public void onMissed(long ticks) {
+        metrics.onJournalDropped(ticks);
+    }
+
+    /**
+     * Returns the journaled records of the pair with a timestamp from {@code fromNanos} (inclusive) to
+     * {@code toNanos} (exclusive) as read-only views of the mapped segments, oldest first, each with the
+     * scale its segment was written at. With a positive {@code limit}, only the latest {@code limit}
+     * records of the range are returned.
+     */
+    public List<Records> read(int pairId, long fromNanos, long toNanos, int limit) {
+        List<Records> views = new ArrayList<>();
+        PairJournal pair = pairs.get(pairId);
+        if (pair == null) {
+            return views;
+        }
+        long records = 0;
+        for (Segment segment : pair.segments) {
+            ByteBuffer view = segment.view(fromNanos, toNanos);
+            if (view != null) {
+                views.add(new Records(view, segment.scale));
+                records += view.remaining() / RECORD_BYTES;
+            }
+        }
+        if (limit > 0) {
+            long skip = records - limit;
+            while (skip > 0 && !views.isEmpty()) {
+                ByteBuffer first = views.get(0).view;
+                long inFirst = first.remaining() / RECORD_BYTES;
+                if (inFirst <= skip) {
+                    views.remove(0);
+                    skip -= inFirst;
+                } else {
+                    first.position(first.position() + (int) skip * RECORD_BYTES);
+                    skip = 0;
+                }
+            }
+        }
+        return views;
+    }
+
+    static long sequence(ByteBuffer records, int offset) {
+        return records.getLong(offset);
+    }
+
+    static long bid(ByteBuffer records, int offset) {
+        return records.getLong(offset + 8);
+    }
+
+    static long ask(ByteBuffer records, int offset) {
+        return records.getLong(offset + 16);
+    }
+
+    static long timestampNanos(ByteBuffer records, int offset) {
+        return records.getLong(offset + 24);
+    }
+
+    /**
+     * Flushes the active segments; called once the journal no longer gets ticks.
+     */
+    @Override
+    public void close() {
+        for (int id = 0; id < pairs.length(); id++) {
+            PairJournal pair = pairs.get(id);
+            if (pair != null && pair.active != null) {
+                pair.active.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Records of one segment, with prices at the scale of the pair when the segment was written; a
+     * reload can change the scale of a pair, so it may differ between segments.
+     */
+    public static final class Records {
+        private final ByteBuffer view;
+        private final int scale;
+
+        Records(ByteBuffer view, int scale) {
+            this.view = view;
+            this.scale = scale;
+        }
+
+        public ByteBuffer getView() {
+            return view;
+        }
+
+        public int getScale() {
+            return scale;
+        }
+    }
+
+    private PairJournal pair(int pairId) throws IOException {
+        PairJournal pair = pairs.get(pairId);
+        if (pair == null) {
+            pair = new PairJournal(pairId, directory.resolve(instruments.name(pairId)));
+            pairs.set(pairId, pair);
+        }
+        return pair;
+    }
+
+    private final class PairJournal {
+        private final int pairId;
+        private final Path directory;
+        // Read by query threads, changed by the journal thread when it rolls
+        private final List<Segment> segments = new CopyOnWriteArrayList<>();
+        private Segment active;
+        private long activeSinceNanos;
+
+        PairJournal(int pairId, Path directory) throws IOException {
+            this.pairId = pairId;
+            this.directory = directory;
+            Files.createDirectories(directory);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                stream.forEach(files::add);
+            }
+            // Zero-padded names sort by first timestamp, then by counter
+            files.sort(null);
+            // Segments of an earlier run are measured against the clock, as no tick has come in yet
+            long expiredBeforeNanos = Tick.epochNanos() - retentionNanos;
+            for (Path file : files) {
+                try {
+                    Segment segment = Segment.open(file, expiredBeforeNanos);
+                    if (segment != null) {
+                        segments.add(segment);
+                    } else {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    logger.warn("Skipping journal segment {}: {}", file, e.toString());
+                }
+            }
+        }
+
+        void append(long sequence, long bid, long ask, long timestampNanos) throws IOException {
+            long now = System.nanoTime();
+            if (active == null || active.count == segmentRecords || now - activeSinceNanos >= rollNanos) {
+                roll(timestampNanos, now);
+            }
+            active.append(sequence, bid, ask, timestampNanos);
+        }
+
+        private void roll(long firstNanos, long now) throws IOException {
+            if (active != null) {
+                active.buffer.force();
+            }
+            Path file = directory.resolve(String.format("%020d-%04d%s", firstNanos, 0, SUFFIX));
+            for (int attempt = 1; Files.exists(file); attempt++) {
+                file = directory.resolve(String.format("%020d-%04d%s", firstNanos, attempt, SUFFIX));
+            }
+            active = Segment.create(file, instruments.scale(pairId), segmentRecords, firstNanos);
+            activeSinceNanos = now;
+            segments.add(active);
+            // Retention is measured against tick time, the segment is expired once its last tick is
+            for (Segment segment : segments) {
+                if (segment != active && firstNanos - segment.lastNanos() > retentionNanos) {
+                    segments.remove(segment);
+                    Files.deleteIfExists(segment.path);
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int scale;
+        private final long firstNanos;
+        // Written by the journal thread after the record, so readers see whole records only
+        private volatile int count;
+
+        private Segment(Path path, MappedByteBuffer buffer, int scale, long firstNanos, int count) {
+            this.path = path;
+            this.buffer = buffer;
+            this.scale = scale;
+            this.firstNanos = firstNanos;
+            this.count = count;
+        }
+
+        static Segment create(Path path, int scale, int records, long firstNanos) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) records * RECORD_BYTES);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(SCALE_OFFSET, scale);
+            buffer.putInt(12, records);
+            buffer.putLong(COUNT_OFFSET, 0);
+            buffer.putLong(FIRST_NANOS_OFFSET, firstNanos);
+            return new Segment(path, buffer, scale, firstNanos, 0);
+        }
+
+        /**
+         * Maps a segment of an earlier run, or returns null without mapping it if its last tick is older
+         * than {@code expiredBeforeNanos}.
+         */
+        static Segment open(Path path, long expiredBeforeNanos) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_BYTES) {
+                    throw new IllegalStateException("Shorter than the header");
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                readFully(channel, header, 0);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IllegalStateException("Not a version " + VERSION + " journal segment");
+                }
+                long records = (channel.size() - HEADER_BYTES) / RECORD_BYTES;
+                int count = (int) Math.min(header.getLong(COUNT_OFFSET), records);
+                long lastNanos = header.getLong(FIRST_NANOS_OFFSET);
+                if (count > 0) {
+                    ByteBuffer last = ByteBuffer.allocate(Long.BYTES);
+                    readFully(channel, last, HEADER_BYTES + (count - 1L) * RECORD_BYTES + 24);
+                    lastNanos = last.getLong(0);
+                }
+                if (lastNanos < expiredBeforeNanos) {
+                    return null;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return new Segment(path, buffer, header.getInt(SCALE_OFFSET), header.getLong(FIRST_NANOS_OFFSET), count);
+            }
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IllegalStateException("Shorter than its record count");
+                }
+            }
+        }
+
+        void append(long sequence, long bid, long ask, long timestampNanos) {
+            int offset = HEADER_BYTES + count * RECORD_BYTES;
+            buffer.putLong(offset, sequence);
+            buffer.putLong(offset + 8, bid);
+            buffer.putLong(offset + 16, ask);
+            buffer.putLong(offset + 24, timestampNanos);
+            buffer.putLong(COUNT_OFFSET, count + 1);
+            count++;
+        }
+
+        long lastNanos() {
+            int records = count;
+            return records == 0 ? firstNanos : lastNanos(records);
+        }
+
+        /**
+         * Returns a read-only view of the records in the time range, or null if there are none.
+         */
+        ByteBuffer view(long fromNanos, long toNanos) {
+            int records = count;
+            if (records == 0 || firstNanos >= toNanos || lastNanos(records) < fromNanos) {
+                return null;
+            }
+            int from = firstAtOrAfter(fromNanos, records);
+            int to = firstAtOrAfter(toNanos, records);
+            if (from >= to) {
+                return null;
+            }
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+            view.limit(HEADER_BYTES + to * RECORD_BYTES);
+            view.position(HEADER_BYTES + from * RECORD_BYTES);
+            return view;
+        }
+
+        private long lastNanos(int records) {
+            return buffer.getLong(HEADER_BYTES + (records - 1) * RECORD_BYTES + 24);
+        }
+
+        private int firstAtOrAfter(long nanos, int records) {
+            int low = 0;
+            int high = records;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getLong(HEADER_BYTES + mid * RECORD_BYTES + 24) < nanos) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
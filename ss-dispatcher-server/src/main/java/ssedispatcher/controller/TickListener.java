@@ -0,0 +1,9 @@
+package ssedispatcher.controller;
+
+/**
+ * Receives ticks from a {@link PriceBus}. The tick is only valid during the call.
+ */
+@FunctionalInterface
+public interface TickListener {
+    void onTick(Tick tick);
+}
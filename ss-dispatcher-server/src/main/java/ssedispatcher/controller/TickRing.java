@@ -0,0 +1,215 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Pre-allocated ring of tick slots between the tick path and the {@link PriceSubscriber}s in the JVM.
+ * Producers claim a position with one atomic increment and copy the tick fields into the slot's
+ * primitive arrays; every subscriber has a thread of its own that follows the ring at its own
+ * position and hands each tick to the subscriber in a reusable {@link Tick}, so nothing is allocated
+ * per tick and a slow subscriber delays neither the producers nor the other subscribers.
+ * <p>
+ * Producers never wait for subscribers. A subscriber that falls a whole ring behind finds its next
+ * slot overwritten, skips to the oldest tick still in the ring and is told how many it missed. Each
+ * slot has a marker that is negative while a producer writes it, so a subscriber only takes fields
+ * that were not overwritten while it read them.
+ */
+public class TickRing implements TickListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TickRing.class);
+    private static final long JOIN_MILLIS = 5_000L;
+
+    private final int mask;
+    private final int pairs;
+    private final int[] pairIds;
+    private final long[] sequences;
+    private final long[] bids;
+    private final long[] asks;
+    private final long[] timestamps;
+    // Per slot: position + 1 once written, -(position + 1) while being written, 0 before the first write
+    private final AtomicLongArray markers;
+    private final AtomicLong cursor = new AtomicLong();
+    // Copy-on-write, so the tick path reads it without a lock
+    private volatile Reader[] readers = new Reader[0];
+
+    public TickRing(int size, int pairs) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Tick ring size must be a power of two: " + size);
+        }
+        this.mask = size - 1;
+        this.pairs = pairs;
+        this.pairIds = new int[size];
+        this.sequences = new long[size];
+        this.bids = new long[size];
+        this.asks = new long[size];
+        this.timestamps = new long[size];
+        this.markers = new AtomicLongArray(size);
+    }
+
+    // Runs on the thread delivering the bus's ticks
+    @Override
+    public void onTick(Tick tick) {
+        if (readers.length == 0) {
+            return;
+        }
+        long position = cursor.getAndIncrement();
+        int slot = (int) (position & mask);
+        long writing = -(position + 1);
+        while (true) {
+            long marker = markers.get(slot);
+            if (positionOf(marker) > position) {
+                // Lapped before writing: subscribers see the slot as overwritten
+                return;
+            }
+            if (marker < 0) {
+                // An older producer is still writing the slot; it is a copy of five fields
+                Thread.onSpinWait();
+            } else if (markers.compareAndSet(slot, marker, writing)) {
+                break;
+            }
+        }
+        VarHandle.storeStoreFence();
+        pairIds[slot] = tick.getPairId();
+        sequences[slot] = tick.getSequence();
+        bids[slot] = tick.getBid();
+        asks[slot] = tick.getAsk();
+        timestamps[slot] = tick.getTimestampNanos();
+        markers.lazySet(slot, position + 1);
+    }
+
+    /**
+     * Starts handing every tick published from now on to the subscriber, on a thread of the given name.
+     */
+    public synchronized void subscribe(String name, PriceSubscriber subscriber, RingWaitStrategy waitStrategy) {
+        Reader reader = new Reader(subscriber, waitStrategy);
+        Reader[] current = readers;
+        Reader[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = reader;
+        readers = updated;
+        Thread thread = new Thread(reader, name);
+        thread.setDaemon(true);
+        reader.thread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops handing ticks to the subscriber once it has read those published before the call.
+     */
+    public void unsubscribe(PriceSubscriber subscriber) {
+        Reader reader = null;
+        synchronized (this) {
+            Reader[] current = readers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].subscriber == subscriber) {
+                    reader = current[i];
+                    Reader[] updated = new Reader[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    readers = updated;
+                    break;
+                }
+            }
+        }
+        if (reader != null) {
+            reader.stopAt = cursor.get();
+            try {
+                reader.thread.join(JOIN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns how many ticks the furthest-behind subscriber has yet to read.
+     */
+    public long getMaxLag() {
+        long head = cursor.get();
+        long lag = 0;
+        for (Reader reader : readers) {
+            lag = Math.max(lag, head - reader.position);
+        }
+        return lag;
+    }
+
+    private static long positionOf(long marker) {
+        return (marker < 0 ? -marker : marker) - 1;
+    }
+
+    private final class Reader implements Runnable {
+        private final PriceSubscriber subscriber;
+        private final RingWaitStrategy waitStrategy;
+        // One reusable tick per pair, handed to the subscriber
+        private final Tick[] ticks = new Tick[pairs];
+        private final long start = cursor.get();
+        private volatile long position = start;
+        private volatile long stopAt = Long.MAX_VALUE;
+        private Thread thread;
+
+        Reader(PriceSubscriber subscriber, RingWaitStrategy waitStrategy) {
+            this.subscriber = subscriber;
+            this.waitStrategy = waitStrategy;
+            for (int id = 0; id < pairs; id++) {
+                ticks[id] = new Tick(id);
+            }
+        }
+
+        @Override
+        public void run() {
+            long next = start;
+            int idle = 0;
+            while (next < stopAt) {
+                int slot = (int) (next & mask);
+                long expected = next + 1;
+                long marker = markers.get(slot);
+                if (marker == expected) {
+                    int pairId = pairIds[slot];
+                    long sequence = sequences[slot];
+                    long bid = bids[slot];
+                    long ask = asks[slot];
+                    long timestampNanos = timestamps[slot];
+                    VarHandle.loadLoadFence();
+                    if (markers.get(slot) == expected) {
+                        deliver(pairId, sequence, bid, ask, timestampNanos);
+                        position = ++next;
+                        idle = 0;
+                        continue;
+                    }
+                } else if (positionOf(marker) < next || marker == -expected) {
+                    waitStrategy.idle(idle++);
+                    continue;
+                }
+                // Overwritten before it was read: resume at the oldest tick still in the ring
+                long resume = Math.max(next + 1, cursor.get() - mask);
+                notifyMissed(resume - next);
+                position = next = resume;
+            }
+        }
+
+        private void deliver(int pairId, long sequence, long bid, long ask, long timestampNanos) {
+            Tick tick = ticks[pairId];
+            tick.set(bid, ask, timestampNanos);
+            tick.setSequence(sequence);
+            // A failing subscriber must not stop its thread
+            try {
+                subscriber.onPriceUpdate(tick);
+            } catch (RuntimeException e) {
+                logger.error("Error in price subscriber {}", thread.getName(), e);
+            }
+        }
+
+        private void notifyMissed(long count) {
+            try {
+                subscriber.onMissed(count);
+            } catch (RuntimeException e) {
+                logger.error("Error in price subscriber {}", thread.getName(), e);
+            }
+        }
+    }
+}
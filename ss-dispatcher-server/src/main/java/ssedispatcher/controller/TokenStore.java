@@ -0,0 +1,151 @@
+package ssedispatcher.controller;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bearer tokens issued by {@code /login}, held in memory until they expire. The store keeps the SHA-256
+ * of each token rather than the token itself, so a lookup is a digest plus a hash probe. A small
+ * direct-mapped cache of recently verified digests sits in front of it, so clients reconnecting with the
+ * same token skip the map; a cache hit is compared in constant time and, with the digest taken into a
+ * per-thread buffer, allocates nothing. Neither holds a usable token.
+ */
+public class TokenStore {
+
+    private static final int TOKEN_BYTES = 32;
+    private static final int CACHE_SLOTS = 1024; // power of two
+    private static final int DIGEST_BYTES = 32;
+    private static final ThreadLocal<Hasher> HASHERS = ThreadLocal.withInitial(Hasher::new);
+
+    private final long ttlMillis;
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<String, Grant> grants = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Verified> cache = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    public TokenStore(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Issues a new token for the user, valid for the configured time to live.
+     */
+    public String issue(String userId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        grants.put(digest(token), new Grant(userId, System.currentTimeMillis() + ttlMillis));
+        return token;
+    }
+
+    /**
+     * Returns the user the token was issued to, or null if it is unknown or has expired.
+     */
+    public String validate(String token) {
+        long now = System.currentTimeMillis();
+        byte[] digest = HASHERS.get().digest(token);
+        if (digest == null) {
+            return null;
+        }
+        int slot = slotOf(digest);
+        Verified verified = cache.get(slot);
+        if (verified != null && MessageDigest.isEqual(verified.digest, digest)) {
+            return verified.grant.expiresAtMillis > now ? verified.grant.userId : null;
+        }
+        Grant grant = grants.get(Base64.getEncoder().encodeToString(digest));
+        if (grant == null || grant.expiresAtMillis <= now) {
+            return null;
+        }
+        cache.set(slot, new Verified(digest.clone(), grant));
+        return grant.userId;
+    }
+
+    /**
+     * Drops expired tokens; called periodically so the store does not grow with abandoned logins.
+     */
+    public int purgeExpired() {
+        long now = System.currentTimeMillis();
+        int before = grants.size();
+        grants.values().removeIf(grant -> grant.expiresAtMillis <= now);
+        for (int slot = 0; slot < CACHE_SLOTS; slot++) {
+            Verified verified = cache.get(slot);
+            if (verified != null && verified.grant.expiresAtMillis <= now) {
+                cache.compareAndSet(slot, verified, null);
+            }
+        }
+        return before - grants.size();
+    }
+
+    public int size() {
+        return grants.size();
+    }
+
+    private static String digest(String token) {
+        return Base64.getEncoder().encodeToString(HASHERS.get().digest(token));
+    }
+
+    // The leading digest bytes are as random as the token, so they pick the slot
+    static int slotOf(byte[] digest) {
+        int hash = (digest[0] & 0xFF) << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8
+                | (digest[3] & 0xFF);
+        return hash & (CACHE_SLOTS - 1);
+    }
+
+    /**
+     * SHA-256 of a token into a reused buffer, valid until the thread's next digest.
+     */
+    private static final class Hasher {
+        private final MessageDigest sha256;
+        private final byte[] digest = new byte[DIGEST_BYTES];
+
+        Hasher() {
+            try {
+                this.sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        // Returns null for a token with other than ASCII chars, which no issued token has
+        byte[] digest(String token) {
+            for (int i = 0; i < token.length(); i++) {
+                char c = token.charAt(i);
+                if (c > 0x7F) {
+                    sha256.reset();
+                    return null;
+                }
+                sha256.update((byte) c);
+            }
+            try {
+                sha256.digest(digest, 0, DIGEST_BYTES);
+            } catch (DigestException e) {
+                throw new IllegalStateException("SHA-256 digest does not fit", e);
+            }
+            return digest;
+        }
+    }
+
+    private static final class Grant {
+        private final String userId;
+        private final long expiresAtMillis;
+
+        Grant(String userId, long expiresAtMillis) {
+            this.userId = userId;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private static final class Verified {
+        private final byte[] digest;
+        private final Grant grant;
+
+        Verified(byte[] digest, Grant grant) {
+            this.digest = digest;
+            this.grant = grant;
+        }
+    }
+}
@@ -2,9 +2,7 @@ package ssedispatcher.controller;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.annotation.Bean;
-import org.springframework.stereotype.Component;
-import org.springframework.stereotype.Service;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.filter.OncePerRequestFilter;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -12,43 +10,58 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
-
+/**
+ * Admits requests carrying a token issued by {@code /login}, as an {@code Authorization: Bearer} header or,
+ * for {@code EventSource} clients that cannot set headers, a {@code token} parameter. A request naming a
+ * {@code userId} must name the user the token was issued to. Nothing is logged above debug level on
+ * this path, so authentication stays cheap during reconnect storms.
+ */
 public class TokenValidationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(TokenValidationFilter.class);
+    private static final String BEARER = "Bearer ";
+
+    private final TokenStore tokenStore;
+
+    public TokenValidationFilter(TokenStore tokenStore) {
+        this.tokenStore = tokenStore;
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
-        /*String authorizationHeader = request.getHeader("Authorization");
-
-        logger.info("Received request for URL: {}", request.getRequestURL());
-
-        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
-            logger.warn("Authorization header is missing or does not start with 'Bearer '");
-
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        // CORS preflights carry no credentials
+        if ("OPTIONS".equals(request.getMethod())) {
+            filterChain.doFilter(request, response);
+            return;
         }
-
-        String token = authorizationHeader.substring(7);
-        logger.info("Extracted token: {}", token);
-
-        if (!isValidToken(token)) {
-            logger.warn("Invalid token: {}", token);
-            response.setHeader("Cache-Control", "no-store");
+        String token = extractToken(request);
+        String tokenUserId = token != null ? tokenStore.validate(token) : null;
+        if (tokenUserId == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Rejected request for {}: {} token", request.getRequestURI(), token == null ? "missing" : "invalid or expired");
+            }
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             return;
-        }*/
-
-        // Set Cache-Control header to no-store
-        response.setHeader("Cache-Control", "no-store");
-
-        logger.info("Token is valid, proceeding with the request");
+        }
+        String userId = request.getParameter("userId");
+        if (userId != null && !userId.equals(tokenUserId)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Rejected request for {}: token of {} used for {}", request.getRequestURI(), tokenUserId, userId);
+            }
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
         filterChain.doFilter(request, response);
     }
 
-    private boolean isValidToken(String token) {
-        // Implement your token validation logic here
-        // For example, check if the token exists in a database or cache
-        return true; // Replace with actual validation logic
+    private static String extractToken(HttpServletRequest request) {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return authorization.substring(BEARER.length()).trim();
+        }
+        return request.getParameter("token");
     }
-}
\ No newline at end of file
+}
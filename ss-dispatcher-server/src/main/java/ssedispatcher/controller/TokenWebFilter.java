@@ -0,0 +1,78 @@
+package ssedispatcher.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reactive counterpart of {@link TokenValidationFilter}: admits requests to the given paths only with a
+ * token issued by {@code /login}, as a bearer header or a {@code token} parameter, and only for the
+ * {@code userId} it was issued to.
+ */
+public class TokenWebFilter implements WebFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenWebFilter.class);
+    private static final String BEARER = "Bearer ";
+
+    private final TokenStore tokenStore;
+    private final Set<String> paths;
+
+    public TokenWebFilter(TokenStore tokenStore, String... paths) {
+        this.tokenStore = tokenStore;
+        this.paths = new HashSet<>(Arrays.asList(paths));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().pathWithinApplication().value();
+        if (!paths.contains(path)) {
+            return chain.filter(exchange);
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().set(HttpHeaders.CACHE_CONTROL, "no-store");
+        // CORS preflights carry no credentials
+        if (request.getMethod() == HttpMethod.OPTIONS) {
+            return chain.filter(exchange);
+        }
+        String token = extractToken(request);
+        String tokenUserId = token != null ? tokenStore.validate(token) : null;
+        if (tokenUserId == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Rejected request for {}: {} token", path, token == null ? "missing" : "invalid or expired");
+            }
+            response.getHeaders().set(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return response.setComplete();
+        }
+        String userId = request.getQueryParams().getFirst("userId");
+        if (userId != null && !userId.equals(tokenUserId)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Rejected request for {}: token of {} used for {}", path, tokenUserId, userId);
+            }
+            response.setStatusCode(HttpStatus.FORBIDDEN);
+            return response.setComplete();
+        }
+        return chain.filter(exchange);
+    }
+
+    private static String extractToken(ServerHttpRequest request) {
+        String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return authorization.substring(BEARER.length()).trim();
+        }
+        return request.getQueryParams().getFirst("token");
+    }
+}
@@ -0,0 +1,49 @@
+package ssedispatcher.controller;
+
+/**
+ * Encoding of the tick events on {@code /stream-sse}, chosen with {@code format=}.
+ */
+public enum WireFormat {
+    /** {@code {"bid":1.1012,"ask":1.1013,"ccyPair":"EURUSD","timestamp":"2024-05-01T10:15:30.123456789"}} */
+    JSON("json"),
+    /** {@code [pairIndex,bid,ask,epochMicros]} with fixed-point prices at the pair's scale. */
+    COMPACT("compact"),
+    /**
+     * Base64 (no padding) of varint pair index, zigzag varint bid, zigzag varint ask minus bid and
+     * varint epoch micros. Batches are comma-separated records.
+     */
+    BINARY_BASE64("binary-base64");
+
+    private final String parameter;
+
+    WireFormat(String parameter) {
+        this.parameter = parameter;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    /**
+     * Whether a batch of events is a JSON array of their data.
+     */
+    boolean isJsonArray() {
+        return this != BINARY_BASE64;
+    }
+
+    /**
+     * Whether the client needs the pair index and scales, sent as an {@code instruments} event first.
+     */
+    boolean isIndexed() {
+        return this != JSON;
+    }
+
+    public static WireFormat fromParameter(String parameter) {
+        for (WireFormat format : values()) {
+            if (format.parameter.equalsIgnoreCase(parameter)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown format: " + parameter);
+    }
+}
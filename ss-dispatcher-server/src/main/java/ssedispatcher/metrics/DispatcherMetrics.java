@@ -0,0 +1,208 @@
+package ssedispatcher.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Dispatcher instrumentation, published through Micrometer (and so through {@code /actuator/prometheus}).
+ * Counters on the tick and write paths are {@link LongAdder}s read by the registry when it scrapes,
+ * so recording is a single striped increment without going through a meter.
+ */
+public class DispatcherMetrics {
+
+    // Weight of the newest sample in the smoothed fan-out latency, as a shift: 1/16
+    private static final int SMOOTHING_SHIFT = 4;
+    // Without fan-outs for this long the smoothed latency is stale and reads as zero
+    private static final long FAN_OUT_STALE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final String[] REJECTION_REASONS = {"connections", "user", "rate", "latency"};
+
+    private final MeterRegistry registry;
+    private final LongAdder outboundBytes = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder journaled = new LongAdder();
+    private final LongAdder journalDropped = new LongAdder();
+    private final LongAdder fanOutConflated = new LongAdder();
+    private volatile LongAdder[] ticks = new LongAdder[0];
+    private final Timer fanOut;
+    private final Timer writeLatency;
+    private final Counter writeFailures;
+    private final Counter timeouts;
+    private final Counter emitterErrors;
+    private final Counter stalls;
+    private final Counter busGaps;
+    private final Counter busLate;
+    private final Map<String, Counter> rejections = new HashMap<>();
+    // Racy across shard threads: a lost update only drops one sample from the average
+    private volatile long fanOutSmoothedNanos;
+    private volatile long fanOutRecordedAt;
+
+    public DispatcherMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        FunctionCounter.builder("sse.outbound.bytes", outboundBytes, LongAdder::sum)
+                .description("Bytes of SSE frames written to clients")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("sse.outbound.events", writes, LongAdder::sum)
+                .description("SSE events written to clients")
+                .register(registry);
+        FunctionCounter.builder("sse.heartbeats", heartbeats, LongAdder::sum)
+                .description("Heartbeat comments written to idle streams")
+                .register(registry);
+        FunctionCounter.builder("sse.journal.records", journaled, LongAdder::sum)
+                .description("Ticks appended to the tick journal")
+                .register(registry);
+        FunctionCounter.builder("sse.journal.dropped", journalDropped, LongAdder::sum)
+                .description("Ticks left out of the tick journal because its thread fell a whole tick ring behind or failed")
+                .register(registry);
+        FunctionCounter.builder("sse.fanout.conflated", fanOutConflated, LongAdder::sum)
+                .description("Queued ticks a fan-out shard replaced with a newer tick of the pair as its backlog was full")
+                .register(registry);
+        this.fanOut = Timer.builder("sse.fanout.duration")
+                .description("Time from publishing a tick until a shard has handed it to its subscribed connections")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100))
+                .maximumExpectedValue(Duration.ofMillis(100))
+                .register(registry);
+        this.writeLatency = Timer.builder("sse.write.latency")
+                .description("Time from tick generation until its frame is written to a client")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1).dividedBy(100))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+        this.writeFailures = sendFailures("write");
+        this.timeouts = sendFailures("timeout");
+        this.emitterErrors = sendFailures("error");
+        this.stalls = sendFailures("stall");
+        this.busGaps = Counter.builder("sse.bus.gaps")
+                .description("Ticks lost on the price bus, detected from the per-pair sequence")
+                .register(registry);
+        this.busLate = Counter.builder("sse.bus.late")
+                .description("Price bus ticks dropped because a newer tick of the pair had arrived")
+                .register(registry);
+        for (String reason : REJECTION_REASONS) {
+            rejections.put(reason, Counter.builder("sse.connections.rejected")
+                    .description("Streams refused with 503 by admission control")
+                    .tag("reason", reason)
+                    .register(registry));
+        }
+        Gauge.builder("sse.fanout.latency.smoothed", this, metrics -> metrics.getFanOutLatencyNanos() / 1e9)
+                .description("Moving average of the fan-out duration that admission control sheds load on")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    private Counter sendFailures(String reason) {
+        return Counter.builder("sse.send.failures")
+                .description("Streams closed because a send failed, timed out or stalled")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * Registers one tick counter per pair, indexed by pair id. Called again after a reload, it keeps the
+     * counters of the pairs already registered and adds those of the new ones.
+     */
+    public synchronized void registerPairs(List<String> ccyPairs) {
+        LongAdder[] counters = Arrays.copyOf(ticks, Math.max(ticks.length, ccyPairs.size()));
+        for (int id = ticks.length; id < counters.length; id++) {
+            counters[id] = new LongAdder();
+            FunctionCounter.builder("sse.ticks", counters[id], LongAdder::sum)
+                    .description("Ticks generated")
+                    .tag("ccyPair", ccyPairs.get(id))
+                    .register(registry);
+        }
+        this.ticks = counters;
+    }
+
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(name, value).description(description).register(registry);
+    }
+
+    public void onTick(int pairId) {
+        ticks[pairId].increment();
+    }
+
+    public void recordFanOut(long publishedNanos, long doneNanos) {
+        long nanos = doneNanos - publishedNanos;
+        fanOut.record(nanos, TimeUnit.NANOSECONDS);
+        long smoothed = fanOutSmoothedNanos;
+        fanOutSmoothedNanos = smoothed + ((nanos - smoothed) >> SMOOTHING_SHIFT);
+        fanOutRecordedAt = doneNanos;
+    }
+
+    public void onFanOutConflated() {
+        fanOutConflated.increment();
+    }
+
+    /**
+     * Returns the moving average of the recent fan-out durations, or 0 when no tick was fanned out lately.
+     */
+    public long getFanOutLatencyNanos() {
+        return System.nanoTime() - fanOutRecordedAt > FAN_OUT_STALE_NANOS ? 0 : fanOutSmoothedNanos;
+    }
+
+    /**
+     * Records one event written to a client, with the time since its (oldest) tick was generated.
+     */
+    public void onWrite(int bytes, long latencyNanos) {
+        writes.increment();
+        outboundBytes.add(bytes);
+        if (latencyNanos > 0) {
+            writeLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void onHeartbeat(int bytes) {
+        heartbeats.increment();
+        outboundBytes.add(bytes);
+    }
+
+    public void onJournaled() {
+        journaled.increment();
+    }
+
+    public void onJournalDropped(long ticks) {
+        journalDropped.add(ticks);
+    }
+
+    public void onStall() {
+        stalls.increment();
+    }
+
+    public void onWriteFailure() {
+        writeFailures.increment();
+    }
+
+    public void onTimeout() {
+        timeouts.increment();
+    }
+
+    public void onEmitterError() {
+        emitterErrors.increment();
+    }
+
+    public void onBusGap(long missedTicks) {
+        busGaps.increment(missedTicks);
+    }
+
+    public void onBusLate() {
+        busLate.increment();
+    }
+
+    public void onRejected(String reason) {
+        rejections.get(reason).increment();
+    }
+}
@@ -0,0 +1,25 @@
+package ssedispatcher;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ssedispatcher.controller.StreamRejectedException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CustomExceptionHandlerTest {
+
+    @Test
+    void refusedStreamIsAnswered503WithRetryAfter() {
+        StreamRejectedException rejected = new StreamRejectedException("rate", "Too many new streams", 3);
+
+        ResponseEntity<CustomExceptionHandler.ErrorResponse> response =
+                new CustomExceptionHandler().handleStreamRejected(rejected);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("3", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals("Stream refused: rate", response.getBody().getError());
+        assertEquals("Too many new streams", response.getBody().getMessage());
+    }
+}
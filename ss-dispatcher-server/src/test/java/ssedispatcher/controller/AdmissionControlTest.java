@@ -0,0 +1,128 @@
+package ssedispatcher.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ssedispatcher.config.DispatcherProperties;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    private SimpleMeterRegistry registry;
+    private DispatcherMetrics metrics;
+    private DispatcherProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new DispatcherMetrics(registry);
+        properties = new DispatcherProperties();
+        // Every limit off unless a test sets it, and a retry delay without jitter
+        properties.setMaxConnections(0);
+        properties.setMaxConnectionsPerUser(0);
+        properties.setConnectRatePerSecond(0);
+        properties.setShedFanOutMicros(0);
+        properties.setRetryMs(1_000);
+        properties.setRetryJitterMs(0);
+        properties.setDeskUsers(List.of("desk"));
+    }
+
+    @Test
+    void refusesStreamsBeyondThePerUserLimitUntilOneCloses() {
+        properties.setMaxConnectionsPerUser(2);
+        AdmissionControl admission = new AdmissionControl(properties, metrics);
+        admission.admit("alice");
+        admission.admit("alice");
+        admission.admit("bob");
+
+        StreamRejectedException rejected = assertThrows(StreamRejectedException.class, () -> admission.admit("alice"));
+        assertEquals("user", rejected.getReason());
+        assertEquals(1, rejected.getRetryAfterSeconds());
+
+        admission.release("alice");
+        admission.admit("alice");
+        assertEquals(1, rejections("user"));
+    }
+
+    @Test
+    void viewersLeaveTheDeskReserveOfTheStreams() {
+        properties.setMaxConnections(10);
+        properties.setDeskReserve(0.2);
+        AdmissionControl admission = new AdmissionControl(properties, metrics);
+        for (int i = 0; i < 8; i++) {
+            admission.admit("viewer" + i);
+        }
+
+        StreamRejectedException rejected = assertThrows(StreamRejectedException.class, () -> admission.admit("viewer"));
+        assertEquals("connections", rejected.getReason());
+        admission.admit("desk");
+        admission.admit("desk");
+        assertThrows(StreamRejectedException.class, () -> admission.admit("desk"));
+    }
+
+    @Test
+    void emptyConnectBucketRefusesUntilItRefills() throws InterruptedException {
+        // A token every 20 ms, two in the bucket
+        properties.setConnectRatePerSecond(50);
+        properties.setConnectBurst(2);
+        properties.setDeskReserve(0);
+        AdmissionControl admission = new AdmissionControl(properties, metrics);
+        admission.admit("alice");
+        admission.admit("bob");
+
+        StreamRejectedException rejected = assertThrows(StreamRejectedException.class, () -> admission.admit("carol"));
+        assertEquals("rate", rejected.getReason());
+        // The wait for the next token is added to the retry delay, rounded up to whole seconds
+        assertEquals(2, rejected.getRetryAfterSeconds());
+
+        Thread.sleep(30);
+        admission.admit("carol");
+        assertThrows(StreamRejectedException.class, () -> admission.admit("dave"));
+        assertEquals(2, rejections("rate"));
+    }
+
+    @Test
+    void viewersLeaveTheDeskReserveOfTheConnectBucket() {
+        properties.setConnectRatePerSecond(1);
+        properties.setConnectBurst(10);
+        properties.setDeskReserve(0.2);
+        AdmissionControl admission = new AdmissionControl(properties, metrics);
+        for (int i = 0; i < 8; i++) {
+            admission.admit("viewer" + i);
+        }
+
+        StreamRejectedException rejected = assertThrows(StreamRejectedException.class, () -> admission.admit("viewer"));
+        assertEquals("rate", rejected.getReason());
+        admission.admit("desk");
+        admission.admit("desk");
+    }
+
+    @Test
+    void shedsViewerStreamsWhileFanOutIsBehindAndStretchesTheirRetry() {
+        properties.setShedFanOutMicros(1_000);
+        AdmissionControl admission = new AdmissionControl(properties, metrics);
+        // Enough samples of 5 ms for the moving average to settle well above the threshold
+        for (int i = 0; i < 100; i++) {
+            long now = System.nanoTime();
+            metrics.recordFanOut(now - 5_000_000L, now);
+        }
+
+        StreamRejectedException rejected = assertThrows(StreamRejectedException.class, () -> admission.admit("alice"));
+        assertEquals("latency", rejected.getReason());
+        // Fan-out four to five times the threshold stretches the second of retry as much
+        assertTrue(rejected.getRetryAfterSeconds() >= 4 && rejected.getRetryAfterSeconds() <= 5,
+                "Retry after: " + rejected.getRetryAfterSeconds());
+        admission.admit("desk");
+        assertEquals(1, rejections("latency"));
+    }
+
+    private double rejections(String reason) {
+        return registry.get("sse.connections.rejected").tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,324 @@
+package ssedispatcher.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ssedispatcher.config.DispatcherProperties;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BaseDispatcherTest {
+
+    private static final long MAX_LAG_MS = 20;
+
+    private Instruments instruments;
+    private DispatcherProperties properties;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService writers;
+    private BaseDispatcher dispatcher;
+    private Tick[] ticks;
+    private long sequence;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instruments = Instruments.load("ccypair-list.csv");
+        properties = new DispatcherProperties();
+        properties.setFanOutShards(2);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        writers = Executors.newSingleThreadExecutor();
+        ticks = new Tick[instruments.size()];
+        for (int id = 0; id < ticks.length; id++) {
+            ticks[id] = new Tick(id);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        scheduler.shutdownNow();
+        writers.shutdownNow();
+    }
+
+    @Test
+    void eachTickIsEncodedOncePerFormatAndSharedByTheStreams() throws Exception {
+        start();
+        RecordingEmitter first = open("alice", Set.of("EURUSD"), WireFormat.JSON);
+        RecordingEmitter second = open("bob", Set.of("EURUSD"), WireFormat.JSON);
+        RecordingEmitter compact = open("carol", Set.of("EURUSD"), WireFormat.COMPACT);
+
+        publish("EURUSD");
+
+        SseFrame frame = first.prices().get(0);
+        assertSame(frame, second.prices().get(0));
+        assertNotSame(frame, compact.prices().get(0));
+        assertEquals(sequence, frame.getId());
+        assertEquals(sequence, compact.prices().get(0).getId());
+    }
+
+    @Test
+    void streamsOnlyGetTheTicksOfTheirPairs() throws Exception {
+        start();
+        RecordingEmitter eurusd = open("alice", Set.of("EURUSD"), WireFormat.JSON);
+        RecordingEmitter all = open("bob", Set.of(), WireFormat.JSON);
+
+        publish("EURUSD");
+        publish("USDJPY");
+        publish("EURUSD");
+
+        assertEquals(List.of(1L, 3L), ids(eurusd.prices()));
+        assertEquals(List.of(1L, 2L, 3L), ids(all.prices()));
+    }
+
+    @Test
+    void subscriptionChangesApplyFromTheNextTick() throws Exception {
+        start();
+        RecordingEmitter alice = open("alice", Set.of("EURUSD"), WireFormat.JSON);
+        RecordingEmitter bob = open("bob", Set.of(), WireFormat.JSON);
+
+        assertEquals(Set.of("EURUSD", "USDJPY"), dispatcher.subscribe("alice", Set.of("USDJPY")));
+        assertEquals(Set.of("USDJPY"), dispatcher.unsubscribe("alice", Set.of("EURUSD")));
+        // A wildcard stream is pinned to the pairs known at the time
+        dispatcher.unsubscribe("bob", Set.of("USDJPY"));
+        publish("EURUSD");
+        publish("USDJPY");
+
+        assertEquals(List.of(2L), ids(alice.prices()));
+        assertEquals(List.of(1L), ids(bob.prices()));
+    }
+
+    @Test
+    void dropPolicyDiscardsTicksWhileTheStreamLags() throws Exception {
+        RecordingEmitter alice = slowConsumer(SlowConsumerPolicy.DROP);
+
+        alice.gate.countDown();
+        await(() -> alice.prices().size() == 2);
+        flush();
+
+        // The second tick was buffered before the stream lagged, the third was dropped
+        assertEquals(List.of(1L, 2L), ids(alice.prices()));
+        assertEquals(1L, dispatcher.getConnectionStats().get(0).get("droppedTicks"));
+    }
+
+    @Test
+    void disconnectPolicyClosesTheLaggingStream() throws Exception {
+        RecordingEmitter alice = slowConsumer(SlowConsumerPolicy.DISCONNECT);
+
+        assertTrue(alice.completed);
+        assertTrue(dispatcher.getConnectionStats().isEmpty());
+        alice.gate.countDown();
+    }
+
+    @Test
+    void snapshotPolicySendsTheLatestPricesUntilTheStreamCatchesUp() throws Exception {
+        properties.setSnapshotIntervalMs(10);
+        RecordingEmitter alice = slowConsumer(SlowConsumerPolicy.SNAPSHOT);
+        assertEquals(true, dispatcher.getConnectionStats().get(0).get("degraded"));
+
+        alice.gate.countDown();
+        await(() -> Boolean.FALSE.equals(dispatcher.getConnectionStats().get(0).get("degraded")));
+
+        // The third tick replaced the second, which was still buffered
+        assertEquals(List.of(1L, 3L), ids(alice.prices()));
+    }
+
+    @Test
+    void batchingStreamGetsTheTicksOfAWindowAsOneEvent() throws Exception {
+        start();
+        StreamOptions options = new StreamOptions(Set.of("EURUSD", "USDJPY"));
+        options.setBatchMs(50);
+        RecordingEmitter alice = open("alice", options);
+
+        fanOut("EURUSD");
+        fanOut("USDJPY");
+        fanOut("EURUSD");
+        await(() -> !alice.events(BaseDispatcher.BATCH_EVENT).isEmpty());
+
+        SseFrame batch = alice.events(BaseDispatcher.BATCH_EVENT).get(0);
+        JsonNode prices = new ObjectMapper().readTree(batch.getData());
+        // One price per pair, the latest, in the order of their latest ticks
+        assertEquals(2, prices.size());
+        assertEquals("USDJPY", prices.get(0).get("ccyPair").asText());
+        assertEquals("EURUSD", prices.get(1).get("ccyPair").asText());
+        assertEquals(3, batch.getId());
+        assertTrue(alice.prices().isEmpty());
+    }
+
+    @Test
+    void idleStreamGetsHeartbeats() {
+        properties.setHeartbeatIntervalMs(20);
+        start();
+        RecordingEmitter alice = open("alice", Set.of("EURUSD"), WireFormat.JSON);
+
+        await(() -> alice.heartbeats() >= 2);
+
+        assertTrue(alice.prices().isEmpty());
+        assertFalse(alice.completed);
+    }
+
+    @Test
+    void streamWhoseWriteIsBlockedIsEvicted() throws Exception {
+        properties.setHeartbeatIntervalMs(10);
+        properties.setStallTimeoutMs(30);
+        start();
+        RecordingEmitter alice = open("alice", Set.of("EURUSD"), WireFormat.JSON);
+        RecordingEmitter bob = open("bob", Set.of("EURUSD"), WireFormat.JSON);
+        alice.gate = new CountDownLatch(1);
+
+        fanOut("EURUSD");
+        await(() -> alice.completed);
+        alice.gate.countDown();
+
+        // Bob's tick waited for the writer alice held, which is not a stall of his
+        assertEquals(1, dispatcher.getConnectionStats().size());
+        assertEquals("bob", dispatcher.getConnectionStats().get(0).get("userId"));
+        assertFalse(bob.completed);
+    }
+
+    // Opens a stream whose writer blocks on the first tick, then buffers a second tick and offers a third
+    // once the second has waited longer than the maximum lag
+    private RecordingEmitter slowConsumer(SlowConsumerPolicy policy) throws Exception {
+        properties.setSlowConsumerPolicy(policy);
+        properties.setMaxLagMs(MAX_LAG_MS);
+        start();
+        RecordingEmitter alice = open("alice", Set.of("EURUSD"), WireFormat.JSON);
+        alice.gate = new CountDownLatch(1);
+
+        fanOut("EURUSD");
+        await(() -> alice.blocked);
+        fanOut("EURUSD");
+        Thread.sleep(MAX_LAG_MS * 2);
+        fanOut("EURUSD");
+        return alice;
+    }
+
+    private void start() {
+        dispatcher = new BaseDispatcher(scheduler, writers, new DispatcherMetrics(new SimpleMeterRegistry()), instruments,
+                new InProcessPriceBus(), properties);
+        dispatcher.setEmitterFactory(RecordingEmitter::new);
+    }
+
+    private RecordingEmitter open(String userId, Set<String> ccyPairs, WireFormat format) {
+        StreamOptions options = new StreamOptions(ccyPairs);
+        options.setFormat(format);
+        return open(userId, options);
+    }
+
+    private RecordingEmitter open(String userId, StreamOptions options) {
+        return (RecordingEmitter) dispatcher.createEmitter(userId, options);
+    }
+
+    // As the bus would, sequenced; returns once the writer has sent what the tick was queued for
+    private void publish(String ccyPair) throws Exception {
+        fanOut(ccyPair);
+        flush();
+    }
+
+    // Returns once the tick has been offered to the streams
+    private void fanOut(String ccyPair) throws InterruptedException {
+        Tick tick = ticks[instruments.idOf(ccyPair)];
+        long base = instruments.basePrice(tick.getPairId());
+        tick.set(base + sequence, base + sequence + 1, Tick.epochNanos());
+        tick.setSequence(++sequence);
+        dispatcher.sendPriceUpdate(tick);
+        dispatcher.awaitFanOut();
+    }
+
+    // Drains scheduled so far run ahead of this on the single writer
+    private void flush() throws Exception {
+        writers.submit(() -> { }).get();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(condition.getAsBoolean(), "Timed out");
+    }
+
+    private static List<Long> ids(List<SseFrame> frames) {
+        List<Long> ids = new ArrayList<>();
+        for (SseFrame frame : frames) {
+            ids.add(frame.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Keeps the frames the dispatcher sends, as they are shared between streams. With a gate, the writer
+     * is held on the first tick until the gate opens, as by a client that does not read.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        final List<SseFrame> frames = new CopyOnWriteArrayList<>();
+        volatile CountDownLatch gate;
+        volatile boolean blocked;
+        volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            SseFrame frame = (SseFrame) builder;
+            CountDownLatch latch = gate;
+            if (latch != null && BaseDispatcher.PRICE_EVENT.equals(frame.getEvent())) {
+                blocked = true;
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            frames.add(frame);
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            completed = true;
+        }
+
+        // Comment lines with nothing else, as the dispatcher sends to idle streams
+        long heartbeats() {
+            return frames.stream().filter(frame -> frame.getEvent() == null && frame.size() == 3).count();
+        }
+
+        List<SseFrame> prices() {
+            return events(BaseDispatcher.PRICE_EVENT);
+        }
+
+        List<SseFrame> events(String event) {
+            List<SseFrame> events = new ArrayList<>();
+            for (SseFrame frame : frames) {
+                if (event.equals(frame.getEvent())) {
+                    events.add(frame);
+                }
+            }
+            return events;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ssedispatcher.controller;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CandleAggregatorTest {
+
+    // A multiple of every interval, so all bars start here
+    private static final long START_MILLIS = 1_700_000_100_000L - 1_700_000_100_000L % 300_000L;
+
+    // Prices keep their trailing zeros, as they are on the wire
+    private final ObjectMapper mapper = new ObjectMapper()
+            .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+            .setNodeFactory(JsonNodeFactory.withExactBigDecimals(true));
+    private CandleAggregator candles;
+    private Tick tick;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Instruments instruments = Instruments.load("ccypair-list.csv");
+        candles = new CandleAggregator(instruments, 3);
+        tick = new Tick(instruments.idOf("EURUSD"));
+    }
+
+    @Test
+    void barTracksOpenHighLowCloseOfTheBid() throws IOException {
+        onTick(11010, 100);
+        onTick(11025, 200);
+        onTick(11001, 300);
+        onTick(11015, 400);
+
+        JsonNode bar = recent(CandleInterval.ONE_SECOND, START_MILLIS + 500).get(0);
+        assertEquals("EURUSD", bar.get("ccyPair").asText());
+        assertEquals("1s", bar.get("interval").asText());
+        assertEquals(START_MILLIS, bar.get("start").asLong());
+        assertEquals("1.1010", bar.get("open").asText());
+        assertEquals("1.1025", bar.get("high").asText());
+        assertEquals("1.1001", bar.get("low").asText());
+        assertEquals("1.1015", bar.get("close").asText());
+        assertEquals(4, bar.get("ticks").asInt());
+        assertFalse(bar.get("closed").asBoolean());
+    }
+
+    @Test
+    void barClosesAfterItsPeriodAndGraceWithoutALaterTick() throws IOException {
+        onTick(11010, 100);
+
+        assertFalse(recent(CandleInterval.ONE_SECOND, START_MILLIS + 1_100).get(0).get("closed").asBoolean());
+        assertTrue(recent(CandleInterval.ONE_SECOND, START_MILLIS + 1_250).get(0).get("closed").asBoolean());
+        // Still open on the longer intervals
+        assertFalse(recent(CandleInterval.ONE_MINUTE, START_MILLIS + 1_250).get(0).get("closed").asBoolean());
+    }
+
+    @Test
+    void tickInTheNextPeriodStartsANewBar() throws IOException {
+        onTick(11010, 100);
+        onTick(11020, 1_100);
+
+        JsonNode bars = recent(CandleInterval.ONE_SECOND, START_MILLIS + 1_200);
+        assertEquals(2, bars.size());
+        assertTrue(bars.get(0).get("closed").asBoolean());
+        assertEquals(START_MILLIS + 1_000, bars.get(1).get("start").asLong());
+        assertEquals("1.1020", bars.get(1).get("open").asText());
+        assertFalse(bars.get(1).get("closed").asBoolean());
+        assertEquals(2, recent(CandleInterval.ONE_MINUTE, START_MILLIS + 1_200).get(0).get("ticks").asInt());
+    }
+
+    @Test
+    void collectPublishesClosedBarsOnce() throws IOException {
+        onTick(11010, 100);
+        long afterClose = START_MILLIS + 1_300;
+
+        JsonNode published = collect(CandleInterval.ONE_SECOND, afterClose);
+        assertEquals(1, published.size());
+        assertTrue(published.get(0).get("closed").asBoolean());
+        assertNull(candles.collect(afterClose)[CandleInterval.ONE_SECOND.ordinal()][tick.getPairId()]);
+    }
+
+    @Test
+    void lateTicksForAPublishedOrPassedBarAreIgnored() throws IOException {
+        onTick(11010, 100);
+        collect(CandleInterval.ONE_SECOND, START_MILLIS + 1_300);
+        // Arrives after the bar was published as closed
+        onTick(10900, 900);
+
+        JsonNode bar = recent(CandleInterval.ONE_SECOND, START_MILLIS + 1_300).get(0);
+        assertEquals(1, bar.get("ticks").asInt());
+        assertEquals("1.1010", bar.get("low").asText());
+
+        onTick(11020, 2_100);
+        // Older than the bar in progress
+        onTick(10800, 1_500);
+        JsonNode bars = recent(CandleInterval.ONE_SECOND, START_MILLIS + 2_200);
+        assertEquals(2, bars.size());
+        assertEquals(START_MILLIS + 2_000, bars.get(1).get("start").asLong());
+        assertEquals(1, bars.get(1).get("ticks").asInt());
+    }
+
+    @Test
+    void keepsTheLatestBarsOnly() throws IOException {
+        for (int second = 0; second < 5; second++) {
+            onTick(11000 + second, second * 1_000L + 100);
+        }
+
+        JsonNode bars = recent(CandleInterval.ONE_SECOND, START_MILLIS + 4_500);
+        assertEquals(3, bars.size());
+        assertEquals(START_MILLIS + 2_000, bars.get(0).get("start").asLong());
+        assertEquals(START_MILLIS + 4_000, bars.get(2).get("start").asLong());
+        assertEquals(2, recent(CandleInterval.ONE_SECOND, 2, START_MILLIS + 4_500).size());
+    }
+
+    @Test
+    void entityTagChangesWithTheBars() {
+        onTick(11010, 100);
+        PriceSnapshot.Body first = candles.recent(tick.getPairId(), CandleInterval.ONE_SECOND, 10, START_MILLIS + 500);
+        PriceSnapshot.Body same = candles.recent(tick.getPairId(), CandleInterval.ONE_SECOND, 10, START_MILLIS + 500);
+        onTick(11020, 200);
+        PriceSnapshot.Body updated = candles.recent(tick.getPairId(), CandleInterval.ONE_SECOND, 10, START_MILLIS + 500);
+
+        assertEquals(first.getEtag(), same.getEtag());
+        assertNotEquals(first.getEtag(), updated.getEtag());
+    }
+
+    private void onTick(long bid, long offsetMillis) {
+        tick.set(bid, bid + 1, (START_MILLIS + offsetMillis) * 1_000_000L);
+        candles.onTick(tick);
+    }
+
+    private JsonNode recent(CandleInterval interval, long nowMillis) throws IOException {
+        return recent(interval, 10, nowMillis);
+    }
+
+    private JsonNode recent(CandleInterval interval, int limit, long nowMillis) throws IOException {
+        return mapper.readTree(candles.recent(tick.getPairId(), interval, limit, nowMillis).getJson());
+    }
+
+    private JsonNode collect(CandleInterval interval, long nowMillis) throws IOException {
+        byte[] part = candles.collect(nowMillis)[interval.ordinal()][tick.getPairId()];
+        return mapper.readTree(CandleAggregator.join(List.of(part)));
+    }
+}
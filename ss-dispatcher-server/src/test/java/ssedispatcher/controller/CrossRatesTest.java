@@ -0,0 +1,67 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrossRatesTest {
+
+    @Test
+    void multipliesLegsAtTheCrossScale() {
+        // EURJPY = EURUSD 1.1000 * USDJPY 110.00
+        assertEquals(12100, CrossRates.derive(11000, 4, false, 11000, 2, false, 2, false));
+        assertEquals(12100, CrossRates.derive(11000, 4, false, 11000, 2, false, 2, true));
+    }
+
+    @Test
+    void roundsTheBidDownAndTheAskUp() {
+        // 1.1001 * 110.03 = 121.044003
+        assertEquals(12104, CrossRates.derive(11001, 4, false, 11003, 2, false, 2, false));
+        assertEquals(12105, CrossRates.derive(11001, 4, false, 11003, 2, false, 2, true));
+    }
+
+    @Test
+    void dividesByAnInvertedLeg() {
+        // EURGBP = EURUSD 1.1000 / GBPUSD 1.3000 = 0.846153...
+        assertEquals(8461, CrossRates.derive(11000, 4, false, 13000, 4, true, 4, false));
+        assertEquals(8462, CrossRates.derive(11000, 4, false, 13000, 4, true, 4, true));
+        // CHFJPY = USDJPY 110.00 / USDCHF 0.9200 = 119.5652...
+        assertEquals(11956, CrossRates.derive(9200, 4, true, 11000, 2, false, 2, false));
+        assertEquals(11957, CrossRates.derive(9200, 4, true, 11000, 2, false, 2, true));
+    }
+
+    @Test
+    void exactQuotientsAreNotRoundedUp() {
+        // 1.2000 / 0.6000 = 2.0000
+        assertEquals(20000, CrossRates.derive(12000, 4, false, 6000, 4, true, 4, true));
+    }
+
+    @Test
+    void invertsBothLegs() {
+        // 1 / (0.5000 * 0.8000) = 2.5000
+        assertEquals(25000, CrossRates.derive(5000, 4, true, 8000, 4, true, 4, false));
+    }
+
+    @Test
+    void resolvesLegsAndQuotesCrossesLikeTheirQuoteLeg() throws IOException {
+        Instruments instruments = Instruments.load("ccypair-list.csv", 32);
+        CrossRates crosses = new CrossRates(instruments, List.of("EURJPY", "EURGBP", "CHFJPY", "XAUEUR", "EURUSD"));
+
+        Map<String, List<String>> legs = crosses.getLegs();
+        assertEquals(List.of("EURJPY", "EURGBP", "CHFJPY"), List.copyOf(legs.keySet()));
+        assertEquals(List.of("EURUSD", "USDJPY"), legs.get("EURJPY"));
+        assertEquals(List.of("EURUSD", "GBPUSD"), legs.get("EURGBP"));
+        assertEquals(List.of("USDCHF", "USDJPY"), legs.get("CHFJPY"));
+        assertTrue(instruments.isDerived(instruments.idOf("EURJPY")));
+        assertFalse(instruments.isDerived(instruments.idOf("EURUSD")));
+        assertEquals(2, instruments.scale(instruments.idOf("EURJPY")));
+        assertEquals(4, instruments.scale(instruments.idOf("EURGBP")));
+        assertEquals(-1, instruments.idOf("XAUEUR"));
+    }
+}
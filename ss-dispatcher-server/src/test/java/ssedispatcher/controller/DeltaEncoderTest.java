@@ -0,0 +1,123 @@
+package ssedispatcher.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeltaEncoderTest {
+
+    private static final long MILLIS = 1_000_000L;
+    private static final long KEYFRAME_INTERVAL_MS = 1_000;
+    private static final long START_NANOS = 1_714_558_530_000_000_000L;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Instruments instruments;
+    private TickEncoder encoder;
+    private DeltaEncoder delta;
+    private int eurusd;
+    private int usdjpy;
+    // What a client decoding the stream holds per pair: bid, ask and epoch micros
+    private long[][] decoded;
+    private long sequence;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instruments = Instruments.load("ccypair-list.csv");
+        encoder = new TickEncoder(instruments);
+        delta = new DeltaEncoder(instruments.capacity(), KEYFRAME_INTERVAL_MS);
+        eurusd = instruments.idOf("EURUSD");
+        usdjpy = instruments.idOf("USDJPY");
+        decoded = new long[instruments.capacity()][];
+    }
+
+    @Test
+    void firstTickOfAPairIsSentAsTheCompactKeyframe() throws IOException {
+        SseFrame frame = compact(eurusd, 11012, 11013, START_NANOS);
+
+        assertSame(frame, delta.encode(frame, MILLIS));
+        assertTrue(decode(frame) >= 0);
+    }
+
+    @Test
+    void laterTicksAreSentAsDeltasThatDecodeToThePrice() throws IOException {
+        decode(delta.encode(compact(eurusd, 11012, 11013, START_NANOS), MILLIS));
+        SseFrame frame = compact(eurusd, 11010, 11015, START_NANOS + 2_500_000L);
+
+        SseFrame sent = delta.encode(frame, 2 * MILLIS);
+
+        assertNotSame(frame, sent);
+        assertEquals(frame.getId(), sent.getId());
+        assertEquals(~eurusd, decode(sent));
+        assertEquals("[" + ~eurusd + ",-2,2,2500]", new String(sent.getData()));
+        assertPrice(eurusd, 11010, 11015, START_NANOS + 2_500_000L);
+    }
+
+    @Test
+    void pairsAreDeltaEncodedAgainstTheirOwnLastTick() throws IOException {
+        decode(delta.encode(compact(eurusd, 11012, 11013, START_NANOS), MILLIS));
+        decode(delta.encode(compact(usdjpy, 15600, 15602, START_NANOS + 1_000L), MILLIS));
+        decode(delta.encode(compact(eurusd, 11013, 11014, START_NANOS + 2_000L), 2 * MILLIS));
+        decode(delta.encode(compact(usdjpy, 15590, 15593, START_NANOS + 3_000L), 2 * MILLIS));
+
+        assertPrice(eurusd, 11013, 11014, START_NANOS + 2_000L);
+        assertPrice(usdjpy, 15590, 15593, START_NANOS + 3_000L);
+    }
+
+    @Test
+    void keyframeIsSentOncePerKeyframeInterval() {
+        delta.encode(compact(eurusd, 11012, 11013, START_NANOS), MILLIS);
+        SseFrame beforeInterval = compact(eurusd, 11013, 11014, START_NANOS);
+        SseFrame afterInterval = compact(eurusd, 11014, 11015, START_NANOS);
+
+        assertNotSame(beforeInterval, delta.encode(beforeInterval, MILLIS + KEYFRAME_INTERVAL_MS * MILLIS - 1));
+        assertSame(afterInterval, delta.encode(afterInterval, MILLIS + KEYFRAME_INTERVAL_MS * MILLIS));
+    }
+
+    @Test
+    void keyframeIsSentAfterATickOfThePairWasLost() throws IOException {
+        decode(delta.encode(compact(eurusd, 11012, 11013, START_NANOS), MILLIS));
+        // Conflated or dropped before the writer saw it, so the client never got it
+        compact(eurusd, 11020, 11021, START_NANOS + 1_000L);
+        delta.requestKeyframe(eurusd);
+        SseFrame frame = compact(eurusd, 11030, 11031, START_NANOS + 2_000L);
+
+        assertSame(frame, delta.encode(frame, 2 * MILLIS));
+        decode(frame);
+        assertPrice(eurusd, 11030, 11031, START_NANOS + 2_000L);
+        // Only the next tick: the one after is a delta again
+        assertTrue(decode(delta.encode(compact(eurusd, 11031, 11032, START_NANOS + 3_000L), 3 * MILLIS)) < 0);
+    }
+
+    private SseFrame compact(int pairId, long bid, long ask, long timestampNanos) {
+        return encoder.encode(WireFormat.COMPACT, ++sequence, pairId, bid, ask, timestampNanos);
+    }
+
+    // Applies the frame as a client would and returns its first element, the pair index or its complement
+    private long decode(SseFrame frame) throws IOException {
+        JsonNode values = mapper.readTree(frame.getData());
+        long index = values.get(0).asLong();
+        if (index >= 0) {
+            decoded[(int) index] = new long[] {values.get(1).asLong(), values.get(2).asLong(), values.get(3).asLong()};
+        } else {
+            long[] price = decoded[(int) ~index];
+            for (int i = 0; i < 3; i++) {
+                price[i] += values.get(i + 1).asLong();
+            }
+        }
+        return index;
+    }
+
+    private void assertPrice(int pairId, long bid, long ask, long timestampNanos) {
+        assertEquals(bid, decoded[pairId][0]);
+        assertEquals(ask, decoded[pairId][1]);
+        assertEquals(timestampNanos / 1_000L, decoded[pairId][2]);
+    }
+}
@@ -0,0 +1,235 @@
+package ssedispatcher.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FanOutShardTest {
+
+    private static final int PAIRS = 4;
+    private static final int BACKLOG = 1_000;
+
+    private final List<Offer> offers = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private Instruments instruments;
+    private SseConnection json;
+    private SseConnection compact;
+    private FanOutShard shard;
+    // Holds the worker on the first tick while set
+    private volatile CountDownLatch gate;
+    private final CountDownLatch busy = new CountDownLatch(1);
+    private long sequence;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instruments = Instruments.load("ccypair-list.csv");
+        json = connection(1, WireFormat.JSON);
+        compact = connection(2, WireFormat.COMPACT);
+        shard = new FanOutShard(0, PAIRS, BACKLOG, this::offer, new DispatcherMetrics(registry));
+        for (int pairId = 0; pairId < PAIRS; pairId++) {
+            shard.subscribers(WireFormat.JSON, pairId).add(json);
+        }
+        shard.wildcardSubscribers(WireFormat.COMPACT).add(compact);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shard.shutdown();
+    }
+
+    @Test
+    void handsEachFrameToTheSubscribersOfItsFormat() throws InterruptedException {
+        SseFrame[] frames = frames(true, true);
+        shard.submit(1, frames, 0);
+        shard.await();
+
+        assertEquals(2, offers.size());
+        assertSame(json, offers.get(0).connection);
+        assertSame(frames[WireFormat.JSON.ordinal()], offers.get(0).frame);
+        assertSame(compact, offers.get(1).connection);
+        assertSame(frames[WireFormat.COMPACT.ordinal()], offers.get(1).frame);
+    }
+
+    @Test
+    void formatsWithoutAFrameAreSkipped() throws InterruptedException {
+        shard.submit(1, frames(true, false), 0);
+        shard.await();
+
+        assertEquals(1, offers.size());
+        assertSame(json, offers.get(0).connection);
+    }
+
+    @Test
+    void ticksQueuedWhileTheWorkerIsBusyAreHandedOutInQueueOrder() throws InterruptedException {
+        gate = new CountDownLatch(1);
+        shard.submit(0, frames(true, false), 0);
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        // More than the initial batch, so the batch grows while the worker is held
+        for (int i = 0; i < 100; i++) {
+            shard.submit(i % PAIRS, frames(true, false), 0);
+        }
+        gate.countDown();
+        shard.await();
+
+        List<Long> ids = ids();
+        assertEquals(101, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i + 1, ids.get(i));
+        }
+    }
+
+    @Test
+    void pastTheBacklogATickSupersedesTheQueuedTickOfItsPair() throws InterruptedException {
+        gate = new CountDownLatch(1);
+        shard.submit(0, frames(true, false), 0);
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        // The first ticks fill the backlog, each one after that supersedes the queued tick of its pair;
+        // superseded ticks are compacted away as they pile up
+        int submitted = 5 * BACKLOG;
+        for (int i = 0; i < submitted; i++) {
+            shard.submit(i % PAIRS, frames(true, false), 0);
+        }
+        gate.countDown();
+        shard.await();
+
+        List<Long> ids = ids();
+        assertEquals(1 + BACKLOG, ids.size());
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i) > ids.get(i - 1), "Out of order at " + i);
+        }
+        // The latest tick of each pair is kept
+        assertEquals(sequence, ids.get(ids.size() - 1));
+        assertEquals(submitted - BACKLOG, registry.get("sse.fanout.conflated").functionCounter().count());
+    }
+
+    @Test
+    void framesAreCopiedSoTheCallerMayReuseTheArray() throws InterruptedException {
+        gate = new CountDownLatch(1);
+        SseFrame[] frames = frames(true, false);
+        SseFrame first = frames[WireFormat.JSON.ordinal()];
+        shard.submit(0, frames, 0);
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        shard.submit(1, frames, 0);
+        frames[WireFormat.JSON.ordinal()] = frame();
+        gate.countDown();
+        shard.await();
+
+        assertSame(first, offers.get(0).frame);
+        assertSame(first, offers.get(1).frame);
+    }
+
+    @Test
+    void awaitReturnsOnceTheTicksSubmittedBeforeItAreHandedOut() throws Exception {
+        gate = new CountDownLatch(1);
+        shard.submit(0, frames(true, false), 0);
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        shard.submit(1, frames(true, false), 0);
+        CompletableFuture<Void> awaited = CompletableFuture.runAsync(() -> {
+            try {
+                shard.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        Thread.sleep(50);
+        assertFalse(awaited.isDone());
+        gate.countDown();
+        awaited.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(1L, 2L), ids());
+    }
+
+    @Test
+    void failingHandlerDoesNotStopTheWorker() throws InterruptedException {
+        FanOutShard failing = new FanOutShard(1, PAIRS, BACKLOG, (subscribers, pairId, frame, nowNanos) -> {
+            if (subscribers.length > 0) {
+                offers.add(new Offer(subscribers[0], frame));
+                throw new IllegalStateException("Failing on purpose");
+            }
+        }, new DispatcherMetrics(new SimpleMeterRegistry()));
+        failing.subscribers(WireFormat.JSON, 0).add(json);
+        try {
+            failing.submit(0, frames(true, false), 0);
+            failing.submit(0, frames(true, false), 0);
+            failing.await();
+        } finally {
+            failing.shutdown();
+        }
+
+        assertEquals(List.of(1L, 2L), ids());
+    }
+
+    private void offer(SseConnection[] subscribers, int pairId, SseFrame frame, long nowNanos) {
+        CountDownLatch latch = gate;
+        if (latch != null) {
+            busy.countDown();
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (SseConnection connection : subscribers) {
+            offers.add(new Offer(connection, frame));
+        }
+    }
+
+    // Frames of one tick, for JSON and compact streams as asked
+    private SseFrame[] frames(boolean withJson, boolean withCompact) {
+        SseFrame[] frames = new SseFrame[WireFormat.values().length];
+        SseFrame frame = frame();
+        if (withJson) {
+            frames[WireFormat.JSON.ordinal()] = frame;
+        }
+        if (withCompact) {
+            frames[WireFormat.COMPACT.ordinal()] = SseFrame.of(frame.getId(), BaseDispatcher.PRICE_EVENT, new byte[0]);
+        }
+        return frames;
+    }
+
+    private SseFrame frame() {
+        return SseFrame.of(++sequence, BaseDispatcher.PRICE_EVENT, new byte[0]);
+    }
+
+    private SseConnection connection(long id, WireFormat format) {
+        StreamOptions options = new StreamOptions(Set.of());
+        options.setFormat(format);
+        return new SseConnection(id, "alice", new SseEmitter(), options, instruments, 16, 1_000, 1_000);
+    }
+
+    private List<Long> ids() {
+        List<Long> ids = new ArrayList<>();
+        for (Offer offer : offers) {
+            ids.add(offer.frame.getId());
+        }
+        return ids;
+    }
+
+    private static final class Offer {
+        final SseConnection connection;
+        final SseFrame frame;
+
+        Offer(SseConnection connection, SseFrame frame) {
+            this.connection = connection;
+            this.frame = frame;
+        }
+    }
+}
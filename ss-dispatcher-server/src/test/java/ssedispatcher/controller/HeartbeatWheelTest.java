@@ -0,0 +1,107 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeartbeatWheelTest {
+
+    // A slot per millisecond
+    private static final long INTERVAL_MS = 64;
+
+    private final List<SseConnection> visits = new CopyOnWriteArrayList<>();
+    private Instruments instruments;
+    private ScheduledExecutorService scheduler;
+    private HeartbeatWheel wheel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instruments = Instruments.load("ccypair-list.csv");
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (wheel != null) {
+            wheel.cancel();
+        }
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void visitsEveryStreamOncePerInterval() throws InterruptedException {
+        wheel = new HeartbeatWheel(scheduler, INTERVAL_MS, visits::add);
+        SseConnection first = connection(1);
+        SseConnection second = connection(2);
+        wheel.add(first);
+        wheel.add(second);
+
+        Thread.sleep(INTERVAL_MS * 5);
+        wheel.cancel();
+
+        long firstVisits = count(first);
+        long secondVisits = count(second);
+        // About five turns of the wheel, give or take a late scheduler
+        assertTrue(firstVisits >= 3 && firstVisits <= 6, "Visits: " + firstVisits);
+        assertTrue(Math.abs(firstVisits - secondVisits) <= 1, "Visits: " + firstVisits + " and " + secondVisits);
+    }
+
+    @Test
+    void removedStreamIsNoLongerVisited() throws InterruptedException {
+        wheel = new HeartbeatWheel(scheduler, INTERVAL_MS, visits::add);
+        SseConnection connection = connection(1);
+        wheel.add(connection);
+        await(() -> count(connection) > 0);
+
+        wheel.remove(connection);
+        visits.clear();
+        Thread.sleep(INTERVAL_MS * 2);
+
+        assertFalse(visits.contains(connection));
+    }
+
+    @Test
+    void failingVisitDoesNotStopTheWheel() {
+        wheel = new HeartbeatWheel(scheduler, INTERVAL_MS, connection -> {
+            visits.add(connection);
+            throw new IllegalStateException("Failing on purpose");
+        });
+        SseConnection connection = connection(1);
+        wheel.add(connection);
+
+        await(() -> count(connection) >= 2);
+
+        assertEquals(connection, visits.get(1));
+    }
+
+    private long count(SseConnection connection) {
+        return visits.stream().filter(visited -> visited == connection).count();
+    }
+
+    private SseConnection connection(long id) {
+        return new SseConnection(id, "alice", new SseEmitter(), new StreamOptions(Set.of()), instruments, 16, 1_000,
+                1_000);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(condition.getAsBoolean(), "Timed out");
+    }
+}
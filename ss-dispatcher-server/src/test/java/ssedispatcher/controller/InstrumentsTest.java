@@ -0,0 +1,116 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstrumentsTest {
+
+    private static final int CAPACITY = 4;
+
+    @TempDir
+    Path directory;
+    private Path file;
+    private Instruments instruments;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = directory.resolve("pairs.csv");
+        write("EURUSD,1.10,100,4", "USDJPY,156.00,50,2");
+        instruments = Instruments.loadFile(file, CAPACITY);
+    }
+
+    @Test
+    void reloadKeepsThePairIdsAndGivesNewPairsTheirScales() throws IOException {
+        long version = instruments.version();
+        String etag = instruments.namesEtag();
+        write("GBPUSD,1.2500,10,5", "USDJPY,156.00,50,2", "EURUSD,1.10,100,4", "AUDUSD,0.66");
+
+        assertEquals(List.of("GBPUSD", "AUDUSD"), instruments.reload());
+
+        assertEquals(0, instruments.idOf("EURUSD"));
+        assertEquals(1, instruments.idOf("USDJPY"));
+        assertEquals(2, instruments.idOf("GBPUSD"));
+        assertEquals(3, instruments.idOf("AUDUSD"));
+        assertEquals(5, instruments.scale(2));
+        assertEquals(125_000, instruments.basePrice(2));
+        assertEquals(10, instruments.tickRateHz(2));
+        assertEquals(Instruments.DEFAULT_SCALE, instruments.scale(3));
+        assertEquals(Instruments.DEFAULT_TICK_RATE_HZ, instruments.tickRateHz(3));
+        assertNotEquals(version, instruments.version());
+        assertNotEquals(etag, instruments.namesEtag());
+        assertEquals("[\"EURUSD\",\"USDJPY\",\"GBPUSD\",\"AUDUSD\"]", new String(instruments.namesJson()));
+    }
+
+    @Test
+    void reloadAppliesNewBasePricesAndRatesButKeepsTheScale() throws IOException {
+        write("EURUSD,1.12345,200,5", "USDJPY,156.00,50,2");
+
+        assertTrue(instruments.reload().isEmpty());
+
+        int eurusd = instruments.idOf("EURUSD");
+        // The new price at the scale the pair was loaded with
+        assertEquals(4, instruments.scale(eurusd));
+        assertEquals(11_235, instruments.basePrice(eurusd));
+        assertEquals(200, instruments.tickRateHz(eurusd));
+    }
+
+    @Test
+    void pairsLeftOutOfTheFileKeepTheirIdAndSettings() throws IOException {
+        write("USDJPY,157.00,50,2");
+
+        instruments.reload();
+
+        assertEquals(2, instruments.size());
+        assertEquals(0, instruments.idOf("EURUSD"));
+        assertEquals(11_000, instruments.basePrice(0));
+        assertEquals(15_700, instruments.basePrice(1));
+    }
+
+    @Test
+    void reloadBeyondTheCapacityFailsAndKeepsThePairs() throws IOException {
+        write("EURUSD,1.10", "USDJPY,156.00", "GBPUSD,1.25", "AUDUSD,0.66", "NZDUSD,0.60");
+
+        assertThrows(IllegalStateException.class, () -> instruments.reload());
+
+        assertEquals(2, instruments.size());
+        assertEquals(-1, instruments.idOf("GBPUSD"));
+    }
+
+    @Test
+    void derivedPairsTakeTheNextIdsAndCannotBePricedFromTheFile() throws IOException {
+        instruments.addDerived(Map.of("EURJPY", 2));
+
+        int eurjpy = instruments.idOf("EURJPY");
+        assertEquals(2, eurjpy);
+        assertTrue(instruments.isDerived(eurjpy));
+        assertEquals(2, instruments.scale(eurjpy));
+
+        write("EURUSD,1.10", "USDJPY,156.00", "EURJPY,171.00");
+        assertThrows(IllegalStateException.class, () -> instruments.reload());
+    }
+
+    @Test
+    void rescalesRoundingDownOrUpWhenDigitsAreDropped() {
+        assertEquals(1_101_200, Instruments.rescale(11_012, 4, 6, false));
+        assertEquals(110, Instruments.rescale(11_012, 4, 2, false));
+        assertEquals(111, Instruments.rescale(11_012, 4, 2, true));
+        assertEquals(110, Instruments.rescale(11_000, 4, 2, true));
+        assertEquals(-111, Instruments.rescale(-11_012, 4, 2, false));
+    }
+
+    private void write(String... lines) throws IOException {
+        Files.write(file, List.of(lines));
+    }
+}
@@ -0,0 +1,98 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingFramesTest {
+
+    @Test
+    void keepsOnlyTheLatestFramePerPair() {
+        PendingFrames pending = new PendingFrames(16);
+        SseFrame first = frame(1, 3);
+        SseFrame second = frame(2, 3);
+
+        assertFalse(pending.put(3, first));
+        assertTrue(pending.put(3, second));
+
+        assertEquals(1, pending.size());
+        assertSame(second, pending.get(3));
+        assertSame(second, pending.poll());
+        assertNull(pending.poll());
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    void conflatedPairMovesBehindTheOthers() {
+        PendingFrames pending = new PendingFrames(16);
+        pending.put(1, frame(1, 1));
+        pending.put(2, frame(2, 2));
+        pending.put(1, frame(3, 1));
+        pending.put(3, frame(4, 3));
+
+        assertEquals(List.of(2L, 3L, 4L), drain(pending));
+    }
+
+    @Test
+    void removedPairLeavesTheOrderOfTheRest() {
+        PendingFrames pending = new PendingFrames(16);
+        for (int pairId = 0; pairId < 4; pairId++) {
+            pending.put(pairId, frame(pairId + 1, pairId));
+        }
+        pending.remove(1);
+        pending.remove(7);
+
+        assertFalse(pending.contains(1));
+        assertEquals(List.of(1L, 3L, 4L), drain(pending));
+    }
+
+    @Test
+    void growingKeepsFramesAndOrder() {
+        PendingFrames pending = new PendingFrames(1_000);
+        for (int pairId = 0; pairId < 100; pairId++) {
+            pending.put(pairId, frame(pairId, pairId));
+        }
+        // Conflating the first half sends it behind the second
+        for (int pairId = 0; pairId < 50; pairId++) {
+            pending.put(pairId, frame(100 + pairId, pairId));
+        }
+
+        List<Long> ids = drain(pending);
+        assertEquals(100, ids.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(50L + i, ids.get(i));
+        }
+    }
+
+    @Test
+    void reportsFullAtTheMaximum() {
+        PendingFrames pending = new PendingFrames(2);
+        pending.put(1, frame(1, 1));
+        assertFalse(pending.isFull());
+        pending.put(2, frame(2, 2));
+        assertTrue(pending.isFull());
+        pending.poll();
+        assertFalse(pending.isFull());
+    }
+
+    private static SseFrame frame(long id, int pairId) {
+        byte[] data = ("[" + pairId + "]").getBytes();
+        return new SseFrame(id, BaseDispatcher.PRICE_EVENT, data, 0, data.length, 0, pairId, 0, 0);
+    }
+
+    private static List<Long> drain(PendingFrames pending) {
+        List<Long> ids = new ArrayList<>();
+        SseFrame frame;
+        while ((frame = pending.poll()) != null) {
+            ids.add(frame.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,108 @@
+package ssedispatcher.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PriceSnapshotTest {
+
+    private Instruments instruments;
+    private PriceSnapshot snapshot;
+    private int eurusd;
+    private int usdjpy;
+    private int[] allPairs;
+    private long sequence;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instruments = Instruments.load("ccypair-list.csv");
+        snapshot = new PriceSnapshot(instruments, new TickEncoder(instruments));
+        eurusd = instruments.idOf("EURUSD");
+        usdjpy = instruments.idOf("USDJPY");
+        allPairs = new int[instruments.size()];
+        for (int id = 0; id < allPairs.length; id++) {
+            allPairs[id] = id;
+        }
+    }
+
+    @Test
+    void pairsThatHaveNotTickedAreLeftOut() {
+        update(eurusd);
+
+        assertNull(snapshot.latest(usdjpy, WireFormat.JSON));
+        List<SseFrame> frames = snapshot.latest(new int[] {eurusd, usdjpy});
+        assertEquals(1, frames.size());
+        assertEquals(sequence, frames.get(0).getId());
+    }
+
+    @Test
+    void latestFrameIsEncodedOnceUntilThePairTicksAgain() {
+        update(eurusd);
+        SseFrame frame = snapshot.latest(eurusd, WireFormat.JSON);
+
+        assertSame(frame, snapshot.latest(eurusd, WireFormat.JSON));
+        assertNotSame(frame, snapshot.latest(eurusd, WireFormat.COMPACT));
+
+        update(eurusd);
+        SseFrame next = snapshot.latest(eurusd, WireFormat.JSON);
+        assertNotSame(frame, next);
+        assertEquals(sequence, next.getId());
+    }
+
+    @Test
+    void bodyHoldsTheLatestPriceOfEachPair() throws IOException {
+        update(eurusd);
+        update(usdjpy);
+        update(eurusd);
+
+        JsonNode prices = new ObjectMapper().readTree(snapshot.body(new int[] {eurusd, usdjpy}).getJson());
+
+        assertEquals(2, prices.size());
+        JsonNode price = prices.get(0);
+        assertEquals("EURUSD", price.get("ccyPair").asText());
+        // The bid of the third tick, published with two before it
+        long bid = instruments.basePrice(eurusd) + 2;
+        assertEquals(0, Instruments.toBigDecimal(bid, instruments.scale(eurusd))
+                .compareTo(price.get("bid").decimalValue()));
+    }
+
+    @Test
+    void entityTagChangesOnlyWhenOneOfThePairsTicks() {
+        update(eurusd);
+        String etag = snapshot.body(new int[] {eurusd}).getEtag();
+
+        assertEquals(etag, snapshot.body(new int[] {eurusd}).getEtag());
+        update(usdjpy);
+        assertEquals(etag, snapshot.body(new int[] {eurusd}).getEtag());
+        update(eurusd);
+        assertNotEquals(etag, snapshot.body(new int[] {eurusd}).getEtag());
+    }
+
+    @Test
+    void bodyOfAllPairsIsReusedUntilAPairTicks() {
+        update(eurusd);
+        PriceSnapshot.Body body = snapshot.body(allPairs);
+
+        assertSame(body, snapshot.body(allPairs));
+        update(usdjpy);
+        assertNotSame(body, snapshot.body(allPairs));
+    }
+
+    private void update(int pairId) {
+        Tick tick = new Tick(pairId);
+        long base = instruments.basePrice(pairId);
+        tick.set(base + sequence, base + sequence + 1, Tick.epochNanos());
+        tick.setSequence(++sequence);
+        snapshot.update(tick);
+    }
+}
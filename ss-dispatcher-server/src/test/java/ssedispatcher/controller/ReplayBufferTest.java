@@ -0,0 +1,121 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayBufferTest {
+
+    private static final int SLOTS = 4;
+
+    private ReplayBuffer buffer;
+    private Tick eurusd;
+    private Tick usdjpy;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Instruments instruments = Instruments.load("ccypair-list.csv");
+        buffer = new ReplayBuffer(instruments.capacity(), SLOTS, new TickEncoder(instruments));
+        eurusd = new Tick(instruments.idOf("EURUSD"));
+        usdjpy = new Tick(instruments.idOf("USDJPY"));
+    }
+
+    @Test
+    void replaysTheTicksAfterTheLastSequenceInOrder() {
+        append(eurusd, 1);
+        append(usdjpy, 2);
+        append(eurusd, 3);
+        append(eurusd, 5);
+
+        List<SseFrame> out = new ArrayList<>();
+        assertEquals(5, buffer.replay(eurusd.getPairId(), 1, out, WireFormat.JSON));
+        assertEquals(List.of(3L, 5L), ids(out));
+    }
+
+    @Test
+    void replaysAcrossTheWrapOfTheRing() {
+        for (long sequence = 1; sequence <= 10; sequence++) {
+            append(eurusd, sequence);
+        }
+
+        // The ring holds 7 to 10, so a client that has seen 6 misses nothing
+        List<SseFrame> out = new ArrayList<>();
+        assertEquals(10, buffer.replay(eurusd.getPairId(), 6, out, WireFormat.JSON));
+        assertEquals(List.of(7L, 8L, 9L, 10L), ids(out));
+
+        out.clear();
+        assertEquals(10, buffer.replay(eurusd.getPairId(), 8, out, WireFormat.JSON));
+        assertEquals(List.of(9L, 10L), ids(out));
+    }
+
+    @Test
+    void sendsOnlyTheLatestTickWhenTicksWereOverwritten() {
+        for (long sequence = 1; sequence <= 10; sequence++) {
+            append(eurusd, sequence);
+        }
+
+        List<SseFrame> out = new ArrayList<>();
+        assertEquals(10, buffer.replay(eurusd.getPairId(), 5, out, WireFormat.JSON));
+        assertEquals(List.of(10L), ids(out));
+    }
+
+    @Test
+    void replaysNothingToAClientThatIsUpToDate() {
+        append(eurusd, 1);
+        append(eurusd, 2);
+
+        List<SseFrame> out = new ArrayList<>();
+        assertEquals(2, buffer.replay(eurusd.getPairId(), 2, out, WireFormat.JSON));
+        assertEquals(4, buffer.replay(usdjpy.getPairId(), 4, out, WireFormat.JSON));
+        assertTrue(out.isEmpty());
+    }
+
+    @Test
+    void replayedFramesCarryTheRetainedPrices() {
+        eurusd.set(11012, 11013, 1_000_000_000L);
+        eurusd.setSequence(1);
+        buffer.append(eurusd);
+
+        List<SseFrame> out = new ArrayList<>();
+        buffer.replay(eurusd.getPairId(), 0, out, WireFormat.COMPACT);
+        assertEquals("[" + eurusd.getPairId() + ",11012,11013,1000000]", new String(out.get(0).getData()));
+    }
+
+    @Test
+    void clearForgetsTheOldSequence() {
+        for (long sequence = 1; sequence <= 10; sequence++) {
+            append(eurusd, sequence);
+        }
+        buffer.clear();
+
+        List<SseFrame> out = new ArrayList<>();
+        assertEquals(8, buffer.replay(eurusd.getPairId(), 8, out, WireFormat.JSON));
+        assertEquals(0, buffer.latest(eurusd.getPairId(), out, WireFormat.JSON));
+        assertTrue(out.isEmpty());
+
+        // A new session starts numbering again
+        append(eurusd, 1);
+        assertEquals(1, buffer.replay(eurusd.getPairId(), 0, out, WireFormat.JSON));
+        assertEquals(List.of(1L), ids(out));
+    }
+
+    private void append(Tick tick, long sequence) {
+        tick.set(11000 + sequence, 11001 + sequence, sequence * 1_000_000L);
+        tick.setSequence(sequence);
+        buffer.append(tick);
+    }
+
+    private static List<Long> ids(List<SseFrame> frames) {
+        List<Long> ids = new ArrayList<>();
+        for (SseFrame frame : frames) {
+            ids.add(frame.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,198 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseConnectionTest {
+
+    private static final long MILLIS = 1_000_000L;
+    private static final int CAPACITY = 2;
+    private static final long MAX_LAG_MS = 10;
+
+    private Instruments instruments;
+    private int eurusd;
+    private int usdjpy;
+    private int gbpusd;
+    private long sequence;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instruments = Instruments.load("ccypair-list.csv");
+        eurusd = instruments.idOf("EURUSD");
+        usdjpy = instruments.idOf("USDJPY");
+        gbpusd = instruments.idOf("GBPUSD");
+    }
+
+    @Test
+    void keepsOnlyTheLatestUnsentTickOfAPair() {
+        SseConnection connection = connection(new StreamOptions(Set.of()));
+        SseFrame first = frame();
+        SseFrame second = frame();
+
+        assertEquals(SseConnection.OfferResult.QUEUED, connection.offer(eurusd, first, 0));
+        assertEquals(SseConnection.OfferResult.CONFLATED, connection.offer(eurusd, second, MILLIS));
+
+        assertSame(second, connection.poll());
+        assertNull(connection.poll());
+        assertEquals(1, connection.getConflatedTicks());
+    }
+
+    @Test
+    void dropsTicksOfOtherPairsWhileTheBufferIsFull() {
+        SseConnection connection = connection(new StreamOptions(Set.of()));
+        connection.offer(eurusd, frame(), 0);
+        connection.offer(usdjpy, frame(), 0);
+
+        assertEquals(SseConnection.OfferResult.DROPPED, connection.offer(gbpusd, frame(), MILLIS));
+        // A pair already buffered is still replaced
+        assertEquals(SseConnection.OfferResult.CONFLATED, connection.offer(eurusd, frame(), MILLIS));
+        assertEquals(2, connection.getQueueDepth());
+        assertEquals(1, connection.getDroppedTicks());
+    }
+
+    @Test
+    void lagsWhenBufferedTicksWaitLongerThanTheMaximumLag() {
+        SseConnection connection = connection(new StreamOptions(Set.of()));
+        connection.offer(eurusd, frame(), 0);
+
+        assertEquals(SseConnection.OfferResult.CONFLATED, connection.offer(eurusd, frame(), MAX_LAG_MS * MILLIS));
+        assertEquals(SseConnection.OfferResult.LAGGING, connection.offer(usdjpy, frame(), (MAX_LAG_MS + 1) * MILLIS));
+
+        // A write is progress, the buffer is measured from there
+        connection.poll();
+        connection.onSent(1, (MAX_LAG_MS + 2) * MILLIS);
+        assertEquals(SseConnection.OfferResult.QUEUED, connection.offer(usdjpy, frame(), (MAX_LAG_MS + 2) * MILLIS));
+    }
+
+    @Test
+    void degradedConnectionKeepsBufferingWhileLagging() {
+        SseConnection connection = connection(new StreamOptions(Set.of()));
+        connection.offer(eurusd, frame(), 0);
+        connection.degrade();
+
+        assertEquals(SseConnection.OfferResult.QUEUED, connection.offer(usdjpy, frame(), (MAX_LAG_MS + 1) * MILLIS));
+    }
+
+    @Test
+    void batchesTheBufferedTicksUpToTheBatchSize() {
+        StreamOptions options = new StreamOptions(Set.of());
+        options.setBatchMs(100);
+        options.setBatchSize(2);
+        SseConnection connection = connection(options, 4);
+        SseFrame first = frame();
+        SseFrame second = frame();
+        SseFrame third = frame();
+        connection.offer(eurusd, first, 0);
+        connection.offer(usdjpy, second, 0);
+        connection.offer(gbpusd, third, 0);
+
+        assertEquals(List.of(first, second), connection.pollBatch());
+        assertEquals(List.of(third), connection.pollBatch());
+        assertTrue(connection.pollBatch().isEmpty());
+    }
+
+    @Test
+    void batchingConnectionMayHoldTicksForAWindowBeyondTheMaximumLag() {
+        StreamOptions options = new StreamOptions(Set.of());
+        options.setBatchMs(100);
+        SseConnection connection = connection(options, CAPACITY);
+        connection.offer(eurusd, frame(), 0);
+
+        assertEquals(SseConnection.OfferResult.QUEUED, connection.offer(usdjpy, frame(), (MAX_LAG_MS + 100) * MILLIS));
+        assertEquals(SseConnection.OfferResult.LAGGING, connection.offer(gbpusd, frame(), (MAX_LAG_MS + 101) * MILLIS));
+    }
+
+    @Test
+    void holdsTheLatestTickOfARateLimitedPairUntilItsIntervalIsUp() {
+        StreamOptions options = new StreamOptions(Set.of());
+        options.setMaxRatesHz(Map.of("EURUSD", 10.0));
+        SseConnection connection = connection(options);
+        SseFrame early = frame();
+        SseFrame latest = frame();
+
+        assertEquals(SseConnection.OfferResult.QUEUED, connection.offer(eurusd, frame(), 0));
+        connection.poll();
+        assertEquals(SseConnection.OfferResult.HELD, connection.offer(eurusd, early, 50 * MILLIS));
+        assertEquals(100 * MILLIS, connection.getReleaseNanos(eurusd));
+        assertEquals(SseConnection.OfferResult.THROTTLED, connection.offer(eurusd, latest, 60 * MILLIS));
+        // Pairs without a rate are not held back
+        assertEquals(SseConnection.OfferResult.QUEUED, connection.offer(usdjpy, frame(), 60 * MILLIS));
+        connection.poll();
+
+        assertEquals(SseConnection.OfferResult.QUEUED, connection.release(eurusd, 100 * MILLIS));
+        assertSame(latest, connection.poll());
+        assertNull(connection.release(eurusd, 100 * MILLIS));
+        assertEquals(200 * MILLIS, connection.getReleaseNanos(eurusd));
+        assertEquals(1, connection.getThrottledTicks());
+    }
+
+    @Test
+    void requestsOneHeartbeatOnceIdleUntilTheWriterTakesIt() {
+        SseConnection connection = connection(new StreamOptions(Set.of()));
+        // A new connection counts as written at creation
+        long now = System.nanoTime();
+
+        assertFalse(connection.requestHeartbeat(now + 5 * MILLIS, 10 * MILLIS));
+        assertTrue(connection.requestHeartbeat(now + 10 * MILLIS, 10 * MILLIS));
+        assertFalse(connection.requestHeartbeat(now + 20 * MILLIS, 10 * MILLIS));
+        assertTrue(connection.takeHeartbeat());
+        assertFalse(connection.takeHeartbeat());
+
+        // The heartbeat is a write too
+        connection.onHeartbeat(now + 20 * MILLIS);
+        assertFalse(connection.requestHeartbeat(now + 25 * MILLIS, 10 * MILLIS));
+        assertTrue(connection.requestHeartbeat(now + 30 * MILLIS, 10 * MILLIS));
+    }
+
+    @Test
+    void stallsWhenAWriteIsBlockedForLongerThanTheStallTimeout() {
+        SseConnection connection = connection(new StreamOptions(Set.of()));
+        connection.tryStartDrain();
+        // A pass queued for a writer is not a stall, however long it waits
+        assertFalse(connection.isStalled(100 * MILLIS, 10 * MILLIS));
+
+        connection.onWriting(100 * MILLIS);
+        assertFalse(connection.isStalled(110 * MILLIS, 10 * MILLIS));
+        assertTrue(connection.isStalled(111 * MILLIS, 10 * MILLIS));
+
+        connection.endDrain();
+        assertFalse(connection.isStalled(111 * MILLIS, 10 * MILLIS));
+    }
+
+    @Test
+    void stallsWhenBufferedTicksMakeNoProgressForLongerThanTheStallTimeout() {
+        SseConnection connection = connection(new StreamOptions(Set.of()));
+        assertFalse(connection.isStalled(100 * MILLIS, 10 * MILLIS));
+
+        connection.offer(eurusd, frame(), 0);
+        assertFalse(connection.isStalled(10 * MILLIS, 10 * MILLIS));
+        assertTrue(connection.isStalled(11 * MILLIS, 10 * MILLIS));
+
+        connection.onSent(1, 11 * MILLIS);
+        assertFalse(connection.isStalled(21 * MILLIS, 10 * MILLIS));
+    }
+
+    private SseConnection connection(StreamOptions options) {
+        return connection(options, CAPACITY);
+    }
+
+    private SseConnection connection(StreamOptions options, int capacity) {
+        return new SseConnection(1, "alice", new SseEmitter(), options, instruments, capacity, MAX_LAG_MS, 1_000);
+    }
+
+    private SseFrame frame() {
+        return SseFrame.of(++sequence, BaseDispatcher.PRICE_EVENT, new byte[0]);
+    }
+}
@@ -0,0 +1,127 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThrottleWheelTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    private final List<Release> releases = new CopyOnWriteArrayList<>();
+    private SseConnection connection;
+    private ThrottleWheel wheel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Instruments instruments = Instruments.load("ccypair-list.csv");
+        connection = new SseConnection(1, "alice", new SseEmitter(), new StreamOptions(Set.of()), instruments, 16,
+                1_000, 1_000);
+        wheel = new ThrottleWheel((released, pairId, nowNanos) ->
+                releases.add(new Release(released, pairId, nowNanos)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    void releasesNoSoonerThanTheDeadline() {
+        long deadline = System.nanoTime() + 20 * MILLIS;
+        wheel.schedule(connection, 3, deadline);
+
+        awaitReleases(1);
+
+        Release release = releases.get(0);
+        assertSame(connection, release.connection);
+        assertEquals(3, release.pairId);
+        // Buckets are a millisecond wide, so a release may come up to one early
+        assertTrue(release.nowNanos >= deadline - MILLIS, "Released early");
+    }
+
+    @Test
+    void releasesInDeadlineOrderWhateverTheScheduleOrder() {
+        long now = System.nanoTime();
+        wheel.schedule(connection, 2, now + 30 * MILLIS);
+        wheel.schedule(connection, 1, now + 10 * MILLIS);
+        wheel.schedule(connection, 0, now - MILLIS);
+
+        awaitReleases(3);
+
+        assertEquals(List.of(0, 1, 2), pairIds());
+    }
+
+    @Test
+    void releaseMoreThanATurnOfTheWheelAwayWaitsForItsTurn() {
+        long now = System.nanoTime();
+        // The same bucket as a release 10 ms away, one turn of 1024 buckets later
+        wheel.schedule(connection, 1, now + 1_034 * MILLIS);
+        wheel.schedule(connection, 0, now + 10 * MILLIS);
+
+        awaitReleases(1);
+        assertEquals(List.of(0), pairIds());
+        awaitReleases(2);
+
+        assertEquals(List.of(0, 1), pairIds());
+        assertTrue(releases.get(1).nowNanos >= now + 1_033 * MILLIS, "Released a turn early");
+    }
+
+    @Test
+    void failingHandlerKeepsTheWheelTurning() {
+        ThrottleWheel failing = new ThrottleWheel((released, pairId, nowNanos) -> {
+            releases.add(new Release(released, pairId, nowNanos));
+            throw new IllegalStateException("Failing on purpose");
+        });
+        try {
+            failing.schedule(connection, 0, System.nanoTime());
+            awaitReleases(1);
+            failing.schedule(connection, 1, System.nanoTime() + 5 * MILLIS);
+            awaitReleases(2);
+        } finally {
+            failing.shutdown();
+        }
+
+        assertEquals(List.of(0, 1), pairIds());
+    }
+
+    private void awaitReleases(int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (releases.size() < count && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(releases.size() >= count, "Timed out");
+    }
+
+    private List<Integer> pairIds() {
+        List<Integer> pairIds = new ArrayList<>();
+        for (Release release : releases) {
+            pairIds.add(release.pairId);
+        }
+        return pairIds;
+    }
+
+    private static final class Release {
+        final SseConnection connection;
+        final int pairId;
+        final long nowNanos;
+
+        Release(SseConnection connection, int pairId, long nowNanos) {
+            this.connection = connection;
+            this.pairId = pairId;
+            this.nowNanos = nowNanos;
+        }
+    }
+}
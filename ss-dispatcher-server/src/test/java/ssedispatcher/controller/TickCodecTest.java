@@ -0,0 +1,75 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickCodecTest {
+
+    private static final long SESSION = 0x1234_5678_9ABC_DEF0L;
+
+    @Test
+    void encodesATickIntoOneFixedSizeDatagram() {
+        ByteBuffer buffer = ByteBuffer.allocate(TickCodec.RECORD_SIZE);
+        TickCodec.encode(buffer, tick(7, 42, 11012, 11013, 1_714_558_530_123_456_789L), SESSION, 9);
+
+        assertEquals(0, buffer.position());
+        assertEquals(56, buffer.remaining());
+        assertTrue(TickCodec.isValid(buffer));
+    }
+
+    @Test
+    void decodesWhatWasEncoded() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(TickCodec.RECORD_SIZE);
+        TickCodec.encode(buffer, tick(7, 42, -11012, Long.MAX_VALUE, 1_714_558_530_123_456_789L), SESSION, 9);
+
+        assertEquals(7, TickCodec.pairId(buffer));
+        assertEquals(SESSION, TickCodec.session(buffer));
+        assertEquals(9, TickCodec.pairSequence(buffer));
+        Tick decoded = new Tick(7);
+        TickCodec.decode(buffer, decoded);
+        assertEquals(42, decoded.getSequence());
+        assertEquals(-11012, decoded.getBid());
+        assertEquals(Long.MAX_VALUE, decoded.getAsk());
+        assertEquals(1_714_558_530_123_456_789L, decoded.getTimestampNanos());
+    }
+
+    @Test
+    void bufferIsReusedForTheNextTick() {
+        ByteBuffer buffer = ByteBuffer.allocate(TickCodec.RECORD_SIZE);
+        TickCodec.encode(buffer, tick(1, 1, 100, 101, 1), SESSION, 1);
+        TickCodec.encode(buffer, tick(2, 2, 200, 201, 2), SESSION, 1);
+
+        Tick decoded = new Tick(2);
+        TickCodec.decode(buffer, decoded);
+        assertEquals(2, TickCodec.pairId(buffer));
+        assertEquals(200, decoded.getBid());
+    }
+
+    @Test
+    void rejectsDatagramsOfAnotherSizeOrFormat() {
+        ByteBuffer buffer = ByteBuffer.allocate(TickCodec.RECORD_SIZE + 8);
+        TickCodec.encode(buffer, tick(1, 1, 100, 101, 1), SESSION, 1);
+        assertTrue(TickCodec.isValid(buffer));
+
+        buffer.limit(TickCodec.RECORD_SIZE - 1);
+        assertFalse(TickCodec.isValid(buffer));
+        buffer.limit(TickCodec.RECORD_SIZE + 8);
+        assertFalse(TickCodec.isValid(buffer));
+
+        buffer.limit(TickCodec.RECORD_SIZE);
+        buffer.putInt(0, 0x53544B02);
+        assertFalse(TickCodec.isValid(buffer));
+    }
+
+    private static Tick tick(int pairId, long sequence, long bid, long ask, long timestampNanos) {
+        Tick tick = new Tick(pairId);
+        tick.set(bid, ask, timestampNanos);
+        tick.setSequence(sequence);
+        return tick;
+    }
+}
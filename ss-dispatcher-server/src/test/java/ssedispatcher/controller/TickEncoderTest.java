@@ -0,0 +1,89 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TickEncoderTest {
+
+    private Instruments instruments;
+    private TickEncoder encoder;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instruments = Instruments.load("ccypair-list.csv");
+        encoder = new TickEncoder(instruments);
+    }
+
+    @Test
+    void decimalsArePaddedToTheScale() {
+        assertEquals("1.1012", decimal(11012, 4));
+        assertEquals("1.1000", decimal(11000, 4));
+        assertEquals("0.0005", decimal(5, 4));
+        assertEquals("110.00", decimal(11000, 2));
+        assertEquals("42", decimal(42, 0));
+    }
+
+    @Test
+    void negativeDecimalsKeepTheirSign() {
+        assertEquals("-1.1012", decimal(-11012, 4));
+        assertEquals("-0.0005", decimal(-5, 4));
+        assertEquals("-0.10", decimal(-10, 2));
+    }
+
+    @Test
+    void longsArePrintedInFull() {
+        byte[] buf = new byte[32];
+        int end = TickEncoder.putLong(buf, 0, -1_792_312_546_942_762_187L);
+        assertEquals("-1792312546942762187", new String(buf, 0, end, StandardCharsets.US_ASCII));
+        end = TickEncoder.putLong(buf, 0, 0);
+        assertEquals("0", new String(buf, 0, end, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void jsonTickMatchesThePriceView() {
+        int eurusd = instruments.idOf("EURUSD");
+        long timestampNanos = Instant.parse("2024-05-01T10:15:30.123456789Z").getEpochSecond() * 1_000_000_000L + 123_456_789;
+        SseFrame frame = encoder.encode(WireFormat.JSON, 7, eurusd, 11012, 11013, timestampNanos);
+
+        String timestamp = LocalDateTime.ofInstant(Instant.ofEpochSecond(0, timestampNanos), ZoneId.systemDefault()).toString();
+        assertEquals("{\"bid\":1.1012,\"ask\":1.1013,\"ccyPair\":\"EURUSD\",\"timestamp\":\"" + timestamp + "\"}", data(frame));
+        assertEquals(7, frame.getId());
+        assertEquals("id:7\nevent:" + BaseDispatcher.PRICE_EVENT + "\ndata:" + data(frame) + "\n\n", frame(frame));
+    }
+
+    @Test
+    void jsonTickUsesThePairScale() {
+        int usdjpy = instruments.idOf("USDJPY");
+        SseFrame frame = encoder.encode(WireFormat.JSON, 1, usdjpy, 11000, 11002, 1_000_000_000L);
+        assertEquals("{\"bid\":110.00,\"ask\":110.02,", data(frame).substring(0, 27));
+    }
+
+    @Test
+    void compactTickCarriesIntegersAndMicros() {
+        int usdjpy = instruments.idOf("USDJPY");
+        SseFrame frame = encoder.encode(WireFormat.COMPACT, 3, usdjpy, 11000, 11002, 1_714_558_530_123_456_789L);
+        assertEquals("[" + usdjpy + ",11000,11002,1714558530123456]", data(frame));
+    }
+
+    private static String decimal(long value, int scale) {
+        byte[] buf = new byte[32];
+        int end = TickEncoder.putDecimal(buf, 0, value, scale);
+        return new String(buf, 0, end, StandardCharsets.US_ASCII);
+    }
+
+    private static String data(SseFrame frame) {
+        return new String(frame.getData(), StandardCharsets.US_ASCII);
+    }
+
+    private static String frame(SseFrame frame) {
+        return new String((byte[]) frame.build().iterator().next().getData(), StandardCharsets.US_ASCII);
+    }
+}
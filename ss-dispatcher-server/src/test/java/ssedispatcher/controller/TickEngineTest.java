@@ -0,0 +1,135 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickEngineTest {
+
+    private static final int PAIRS = 4;
+
+    private final AtomicIntegerArray ticks = new AtomicIntegerArray(PAIRS);
+    private final Map<Integer, Set<String>> threads = new ConcurrentHashMap<>();
+    private TickEngine engine;
+
+    @AfterEach
+    void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    void ticksEachRunningPairAtItsRate() throws InterruptedException {
+        engine = engine(new int[] {200, 20, 100, 100}, 2);
+        engine.start();
+        engine.startPricing(0);
+        engine.startPricing(1);
+
+        Thread.sleep(500);
+        engine.pausePricing(0);
+        engine.pausePricing(1);
+
+        // About 100 and 10 ticks, with room for a busy machine
+        assertTrue(ticks.get(0) >= 60 && ticks.get(0) <= 110, "Ticks of pair 0: " + ticks.get(0));
+        assertTrue(ticks.get(1) >= 6 && ticks.get(1) <= 12, "Ticks of pair 1: " + ticks.get(1));
+        assertEquals(0, ticks.get(2));
+    }
+
+    @Test
+    void pairIsAlwaysTickedByTheThreadOfItsPartition() {
+        engine = engine(new int[] {500, 500, 500, 500}, 2);
+        engine.start();
+        for (int id = 0; id < PAIRS; id++) {
+            engine.startPricing(id);
+        }
+
+        await(() -> {
+            for (int id = 0; id < PAIRS; id++) {
+                if (ticks.get(id) < 20) {
+                    return false;
+                }
+            }
+            return true;
+        });
+
+        for (int id = 0; id < PAIRS; id++) {
+            assertEquals(Set.of("TickEngine-" + id % 2), threads.get(id));
+        }
+    }
+
+    @Test
+    void startingAndPausingAreIdempotent() throws InterruptedException {
+        engine = engine(new int[] {500, 500, 500, 500}, 2);
+        engine.start();
+
+        assertFalse(engine.isKnown(0));
+        assertTrue(engine.startPricing(0));
+        assertFalse(engine.startPricing(0));
+        assertTrue(engine.isRunning(0));
+        await(() -> ticks.get(0) > 0);
+        assertTrue(engine.pausePricing(0));
+        assertFalse(engine.pausePricing(0));
+        assertTrue(engine.isKnown(0));
+
+        // A tick already being fired may still land
+        Thread.sleep(20);
+        int paused = ticks.get(0);
+        Thread.sleep(50);
+        assertEquals(paused, ticks.get(0));
+    }
+
+    @Test
+    void pausedPairResumesWithASingleSchedule() throws InterruptedException {
+        engine = engine(new int[] {100, 100, 100, 100}, 1);
+        engine.start();
+        // Restarted before the wheel dropped its schedule, which must not leave it with two
+        engine.startPricing(0);
+        engine.pausePricing(0);
+        engine.startPricing(0);
+        engine.pausePricing(0);
+        engine.startPricing(0);
+
+        Thread.sleep(300);
+
+        assertTrue(ticks.get(0) <= 33, "Ticks: " + ticks.get(0));
+    }
+
+    @Test
+    void newRateAppliesFromTheNextTick() {
+        engine = engine(new int[] {1, 1, 1, 1}, 1);
+        engine.start();
+        engine.startPricing(0);
+        await(() -> ticks.get(0) == 1);
+
+        engine.setTickRate(0, 1_000);
+
+        // The tick already scheduled a second out comes first, the next ones at the new rate
+        await(() -> ticks.get(0) >= 50);
+    }
+
+    private TickEngine engine(int[] tickRatesHz, int threadCount) {
+        return new TickEngine(tickRatesHz, threadCount, id -> {
+            ticks.incrementAndGet(id);
+            threads.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+        });
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(condition.getAsBoolean(), "Timed out");
+    }
+}
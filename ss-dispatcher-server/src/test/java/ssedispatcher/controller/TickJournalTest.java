@@ -0,0 +1,119 @@
+package ssedispatcher.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TickJournalTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1_000L;
+    private static final long HOUR_NANOS = HOUR_MILLIS * 1_000_000L;
+    private static final int SEGMENT_RECORDS = 2;
+
+    @TempDir
+    Path directory;
+    private Path instrumentsFile;
+    private Instruments instruments;
+    private Tick tick;
+    // Ticks are journaled relative to the clock, which retention is measured against on startup
+    private final long start = Tick.epochNanos();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instrumentsFile = directory.resolve("pairs.csv");
+        Files.writeString(instrumentsFile, "EURUSD,1.10,100,4\n");
+        instruments = Instruments.loadFile(instrumentsFile, 0);
+        tick = new Tick(instruments.idOf("EURUSD"));
+    }
+
+    @Test
+    void readsTheRecordsInTheRangeOldestFirst() throws IOException {
+        TickJournal journal = journal(HOUR_MILLIS);
+        for (long sequence = 1; sequence <= 5; sequence++) {
+            append(journal, sequence, 11000 + sequence, start + sequence * 1_000L);
+        }
+
+        assertEquals(List.of(2L, 3L, 4L), sequences(journal.read(tick.getPairId(), start + 2_000L, start + 5_000L, 0)));
+        assertEquals(List.of(4L, 5L), sequences(journal.read(tick.getPairId(), 0, Long.MAX_VALUE, 2)));
+    }
+
+    @Test
+    void segmentsKeepTheScaleTheyWereWrittenAt() throws IOException {
+        TickJournal journal = journal(HOUR_MILLIS);
+        append(journal, 1, 11000, start + 1_000L);
+        append(journal, 2, 11001, start + 2_000L);
+        journal.close();
+        // A new scale applies after a restart, the segments of the earlier run keep theirs
+        Files.writeString(instrumentsFile, "EURUSD,1.10,100,5\n");
+        instruments = Instruments.loadFile(instrumentsFile, 0);
+        journal = journal(HOUR_MILLIS);
+        append(journal, 3, 110020, start + 3_000L);
+
+        assertEquals(List.of(4, 5), scales(journal.read(tick.getPairId(), 0, Long.MAX_VALUE, 0)));
+    }
+
+    @Test
+    void segmentsOfAnEarlierRunPastTheRetentionAreDeletedOnStartup() throws IOException {
+        // Kept by the earlier run, which had a longer retention
+        TickJournal journal = journal(24 * HOUR_MILLIS);
+        append(journal, 1, 11000, start - 3 * HOUR_NANOS);
+        append(journal, 2, 11001, start - 2 * HOUR_NANOS);
+        append(journal, 3, 11002, start - 1_000L);
+        journal.close();
+        Path pairDirectory = directory.resolve("journal").resolve("EURUSD");
+        assertEquals(2, segmentFiles(pairDirectory));
+
+        journal = journal(HOUR_MILLIS);
+
+        assertEquals(List.of(3L), sequences(journal.read(tick.getPairId(), 0, Long.MAX_VALUE, 0)));
+        assertEquals(1, segmentFiles(pairDirectory));
+    }
+
+    private TickJournal journal(long retentionMs) throws IOException {
+        return new TickJournal(directory.resolve("journal"), instruments, new DispatcherMetrics(new SimpleMeterRegistry()),
+                SEGMENT_RECORDS, HOUR_MILLIS, retentionMs);
+    }
+
+    private void append(TickJournal journal, long sequence, long bid, long timestampNanos) {
+        tick.set(bid, bid + 1, timestampNanos);
+        tick.setSequence(sequence);
+        journal.onPriceUpdate(tick);
+    }
+
+    private static long segmentFiles(Path pairDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(pairDirectory)) {
+            return files.count();
+        }
+    }
+
+    private static List<Long> sequences(List<TickJournal.Records> records) {
+        List<Long> sequences = new ArrayList<>();
+        for (TickJournal.Records segment : records) {
+            ByteBuffer view = segment.getView();
+            for (int offset = view.position(); offset < view.limit(); offset += TickJournal.RECORD_BYTES) {
+                sequences.add(TickJournal.sequence(view, offset));
+            }
+        }
+        return sequences;
+    }
+
+    private static List<Integer> scales(List<TickJournal.Records> records) {
+        List<Integer> scales = new ArrayList<>();
+        for (TickJournal.Records segment : records) {
+            scales.add(segment.getScale());
+        }
+        return scales;
+    }
+}
@@ -0,0 +1,164 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickRingTest {
+
+    private static final int PAIRS = 4;
+
+    @Test
+    void rejectsSizesThatAreNotAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new TickRing(12, PAIRS));
+    }
+
+    @Test
+    void deliversEveryTickInPublishOrder() {
+        TickRing ring = new TickRing(8, PAIRS);
+        Collector collector = new Collector();
+        ring.subscribe("test-subscriber", collector, RingWaitStrategy.SLEEPING);
+
+        for (long sequence = 1; sequence <= 20; sequence++) {
+            publish(ring, sequence);
+            // Stay within the ring, so nothing is overwritten
+            awaitRead(collector, sequence);
+        }
+        ring.unsubscribe(collector);
+
+        assertEquals(20, collector.sequences.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i + 1, collector.sequences.get(i));
+        }
+        assertEquals(0, collector.missed.get());
+    }
+
+    @Test
+    void handsOverTheTickFields() {
+        TickRing ring = new TickRing(8, PAIRS);
+        Collector collector = new Collector();
+        ring.subscribe("test-subscriber", collector, RingWaitStrategy.SLEEPING);
+
+        Tick tick = new Tick(2);
+        tick.set(11012, 11013, 1_714_558_530_123_456_789L);
+        tick.setSequence(42);
+        ring.onTick(tick);
+        ring.unsubscribe(collector);
+
+        assertEquals(List.of("2:42:11012:11013:1714558530123456789"), collector.ticks);
+    }
+
+    @Test
+    void subscriberThatIsLappedSkipsToTheOldestTickAndIsToldWhatItMissed() throws InterruptedException {
+        TickRing ring = new TickRing(8, PAIRS);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        Collector collector = new Collector() {
+            @Override
+            public void onPriceUpdate(Tick tick) {
+                super.onPriceUpdate(tick);
+                if (tick.getSequence() == 1) {
+                    reading.countDown();
+                    await(resume);
+                }
+            }
+        };
+        ring.subscribe("test-subscriber", collector, RingWaitStrategy.SLEEPING);
+
+        publish(ring, 1);
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        // Laps the subscriber while it is held on the first tick
+        for (long sequence = 2; sequence <= 20; sequence++) {
+            publish(ring, sequence);
+        }
+        // The tick being read counts until the subscriber returns
+        assertEquals(20, ring.getMaxLag());
+        resume.countDown();
+        ring.unsubscribe(collector);
+
+        // Positions 1 to 12 were overwritten, the last 7 of the 8 slots are still readable
+        assertEquals(12, collector.missed.get());
+        assertEquals(List.of(1L, 14L, 15L, 16L, 17L, 18L, 19L, 20L), collector.sequences);
+    }
+
+    @Test
+    void failingSubscriberKeepsReading() {
+        TickRing ring = new TickRing(8, PAIRS);
+        Collector collector = new Collector() {
+            @Override
+            public void onPriceUpdate(Tick tick) {
+                super.onPriceUpdate(tick);
+                throw new IllegalStateException("Failing on purpose");
+            }
+        };
+        ring.subscribe("test-subscriber", collector, RingWaitStrategy.SLEEPING);
+
+        publish(ring, 1);
+        awaitRead(collector, 1);
+        publish(ring, 2);
+        ring.unsubscribe(collector);
+
+        assertEquals(List.of(1L, 2L), collector.sequences);
+    }
+
+    @Test
+    void subscriberOnlySeesTicksPublishedAfterItSubscribed() {
+        TickRing ring = new TickRing(8, PAIRS);
+        // No subscriber yet, so the tick is not even written
+        publish(ring, 1);
+        Collector collector = new Collector();
+        ring.subscribe("test-subscriber", collector, RingWaitStrategy.SLEEPING);
+        publish(ring, 2);
+        ring.unsubscribe(collector);
+
+        assertEquals(List.of(2L), collector.sequences);
+    }
+
+    private static void publish(TickRing ring, long sequence) {
+        Tick tick = new Tick((int) (sequence % PAIRS));
+        tick.set(11000 + sequence, 11001 + sequence, sequence);
+        tick.setSequence(sequence);
+        ring.onTick(tick);
+    }
+
+    private static void awaitRead(Collector collector, long sequence) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (collector.sequences.size() < sequence && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Collector implements PriceSubscriber {
+        final List<Long> sequences = new CopyOnWriteArrayList<>();
+        final List<String> ticks = new CopyOnWriteArrayList<>();
+        final AtomicLong missed = new AtomicLong();
+
+        @Override
+        public void onPriceUpdate(Tick tick) {
+            sequences.add(tick.getSequence());
+            ticks.add(tick.getPairId() + ":" + tick.getSequence() + ":" + tick.getBid() + ":" + tick.getAsk() + ":"
+                    + tick.getTimestampNanos());
+        }
+
+        @Override
+        public void onMissed(long ticks) {
+            missed.addAndGet(ticks);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TokenStoreTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1_000L;
+
+    @Test
+    void validatesIssuedTokens() {
+        TokenStore store = new TokenStore(HOUR_MILLIS);
+        String alice = store.issue("alice");
+        String bob = store.issue("bob");
+
+        assertNotEquals(alice, bob);
+        assertEquals("alice", store.validate(alice));
+        assertEquals("bob", store.validate(bob));
+        // Served from the cache the second time
+        assertEquals("alice", store.validate(alice));
+        assertNull(store.validate("not-a-token"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void rejectsExpiredTokens() {
+        TokenStore store = new TokenStore(0);
+        String token = store.issue("alice");
+
+        assertNull(store.validate(token));
+        assertEquals(1, store.purgeExpired());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void rejectsCachedTokensOnceExpired() throws InterruptedException {
+        TokenStore store = new TokenStore(50);
+        String token = store.issue("alice");
+        assertEquals("alice", store.validate(token));
+
+        Thread.sleep(100);
+
+        assertNull(store.validate(token));
+        assertEquals(1, store.purgeExpired());
+        assertNull(store.validate(token));
+    }
+
+    @Test
+    void tokensSharingACacheSlotKeepTheirOwnUsers() {
+        TokenStore store = new TokenStore(HOUR_MILLIS);
+        Map<Integer, String> tokensBySlot = new HashMap<>();
+        Map<String, String> users = new HashMap<>();
+        String first = null;
+        String second = null;
+        for (int i = 0; second == null; i++) {
+            String user = "user" + i;
+            String token = store.issue(user);
+            users.put(token, user);
+            String other = tokensBySlot.putIfAbsent(slotOf(token), token);
+            if (other != null) {
+                first = other;
+                second = token;
+            }
+        }
+
+        // Each evicts the other from the slot, and is then found in the store again
+        assertEquals(users.get(first), store.validate(first));
+        assertEquals(users.get(second), store.validate(second));
+        assertEquals(users.get(first), store.validate(first));
+        assertEquals(users.get(second), store.validate(second));
+    }
+
+    @Test
+    void unknownTokenInACachedSlotIsRejected() {
+        TokenStore store = new TokenStore(HOUR_MILLIS);
+        String token = store.issue("alice");
+        assertEquals("alice", store.validate(token));
+
+        String forged = token;
+        for (int i = 0; forged.equals(token) || slotOf(forged) != slotOf(token); i++) {
+            forged = "forged" + i;
+        }
+
+        assertNull(store.validate(forged));
+        assertEquals("alice", store.validate(token));
+    }
+
+    @Test
+    void tokenWithOtherThanAsciiCharsIsRejected() {
+        TokenStore store = new TokenStore(HOUR_MILLIS);
+        String token = store.issue("alice");
+        // The same low byte in every char as the issued token
+        char[] chars = token.toCharArray();
+        chars[0] += 0x100;
+
+        assertNull(store.validate(new String(chars)));
+        assertEquals("alice", store.validate(token));
+    }
+
+    // The cache slot TokenStore picks for the token
+    private static int slotOf(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return TokenStore.slotOf(sha256.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TokenValidationFilterTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1_000L;
+
+    private final TokenStore tokenStore = new TokenStore(HOUR_MILLIS);
+    private final TokenValidationFilter filter = new TokenValidationFilter(tokenStore);
+
+    @Test
+    void admitsABearerToken() throws Exception {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + tokenStore.issue("alice"));
+
+        MockFilterChain chain = filter(request, new MockHttpServletResponse());
+
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void admitsATokenInTheQueryStringForEventSourceClients() throws Exception {
+        MockHttpServletRequest request = request();
+        request.setParameter("token", tokenStore.issue("alice"));
+        request.setParameter("userId", "alice");
+
+        assertNotNull(filter(request, new MockHttpServletResponse()).getRequest());
+    }
+
+    @Test
+    void missingTokenIsUnauthorized() throws Exception {
+        assertUnauthorized(request());
+    }
+
+    @Test
+    void unknownTokenInTheQueryStringIsUnauthorized() throws Exception {
+        tokenStore.issue("alice");
+        MockHttpServletRequest request = request();
+        request.setParameter("token", "not-a-token");
+
+        assertUnauthorized(request);
+    }
+
+    @Test
+    void expiredTokenIsUnauthorized() throws Exception {
+        TokenStore expiring = new TokenStore(0);
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + expiring.issue("alice"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        MockFilterChain chain = new MockFilterChain();
+        new TokenValidationFilter(expiring).doFilter(request, response, chain);
+
+        assertEquals(401, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void tokenOfAnotherUserIsForbidden() throws Exception {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + tokenStore.issue("alice"));
+        request.setParameter("userId", "bob");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        MockFilterChain chain = filter(request, response);
+
+        assertEquals(403, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void corsPreflightNeedsNoToken() throws Exception {
+        MockHttpServletRequest request = request();
+        request.setMethod("OPTIONS");
+
+        assertNotNull(filter(request, new MockHttpServletResponse()).getRequest());
+    }
+
+    private void assertUnauthorized(MockHttpServletRequest request) throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        MockFilterChain chain = filter(request, response);
+
+        assertEquals(401, response.getStatus());
+        assertEquals("Bearer", response.getHeader(HttpHeaders.WWW_AUTHENTICATE));
+        assertEquals("no-store", response.getHeader(HttpHeaders.CACHE_CONTROL));
+        assertNull(chain.getRequest());
+    }
+
+    private MockFilterChain filter(MockHttpServletRequest request, MockHttpServletResponse response)
+            throws ServletException, IOException {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        return chain;
+    }
+
+    private static MockHttpServletRequest request() {
+        return new MockHttpServletRequest("GET", "/stream-sse");
+    }
+}
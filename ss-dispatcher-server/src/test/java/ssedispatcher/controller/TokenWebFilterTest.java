@@ -0,0 +1,97 @@
+package ssedispatcher.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenWebFilterTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1_000L;
+
+    private final TokenStore tokenStore = new TokenStore(HOUR_MILLIS);
+    private final TokenWebFilter filter = new TokenWebFilter(tokenStore, "/stream-flux");
+    private final AtomicBoolean passed = new AtomicBoolean();
+    private final WebFilterChain chain = exchange -> {
+        passed.set(true);
+        return Mono.empty();
+    };
+
+    @Test
+    void admitsABearerToken() {
+        filter(MockServerHttpRequest.get("/stream-flux")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + tokenStore.issue("alice")));
+
+        assertTrue(passed.get());
+    }
+
+    @Test
+    void admitsATokenInTheQueryStringForEventSourceClients() {
+        filter(MockServerHttpRequest.get("/stream-flux").queryParam("token", tokenStore.issue("alice"))
+                .queryParam("userId", "alice"));
+
+        assertTrue(passed.get());
+    }
+
+    @Test
+    void missingTokenIsUnauthorized() {
+        assertUnauthorized(filter(MockServerHttpRequest.get("/stream-flux")));
+    }
+
+    @Test
+    void unknownTokenInTheQueryStringIsUnauthorized() {
+        tokenStore.issue("alice");
+
+        assertUnauthorized(filter(MockServerHttpRequest.get("/stream-flux").queryParam("token", "not-a-token")));
+    }
+
+    @Test
+    void expiredTokenIsUnauthorized() {
+        TokenStore expiring = new TokenStore(0);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/stream-flux")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + expiring.issue("alice")));
+
+        new TokenWebFilter(expiring, "/stream-flux").filter(exchange, chain).block();
+
+        assertUnauthorized(exchange);
+    }
+
+    @Test
+    void tokenOfAnotherUserIsForbidden() {
+        MockServerWebExchange exchange = filter(MockServerHttpRequest.get("/stream-flux")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + tokenStore.issue("alice"))
+                .queryParam("userId", "bob"));
+
+        assertEquals(HttpStatus.FORBIDDEN, exchange.getResponse().getStatusCode());
+        assertFalse(passed.get());
+    }
+
+    @Test
+    void otherPathsNeedNoToken() {
+        filter(MockServerHttpRequest.get("/instruments"));
+
+        assertTrue(passed.get());
+    }
+
+    private void assertUnauthorized(MockServerWebExchange exchange) {
+        assertEquals(HttpStatus.UNAUTHORIZED, exchange.getResponse().getStatusCode());
+        assertEquals("Bearer", exchange.getResponse().getHeaders().getFirst(HttpHeaders.WWW_AUTHENTICATE));
+        assertEquals("no-store", exchange.getResponse().getHeaders().getFirst(HttpHeaders.CACHE_CONTROL));
+        assertFalse(passed.get());
+    }
+
+    private MockServerWebExchange filter(MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        filter.filter(exchange, chain).block();
+        return exchange;
+    }
+}
@@ -0,0 +1,56 @@
+package ssedispatcher.controller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ssedispatcher.config.DispatcherProperties;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of generating one tick of a priced pair in {@link Pricer} with the crosses that use it derived by
+ * {@link CrossRates} on the same thread: without crosses, and with the default set of crosses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CrossRatesBenchmark {
+
+    @Param({"none", "default"})
+    public String crosses;
+
+    private Pricer pricer;
+    private int pairs;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> crossPairs = "default".equals(crosses) ? new DispatcherProperties().getCrossPairs() : Collections.emptyList();
+        Instruments instruments = Instruments.load("ccypair-list.csv", 64);
+        pairs = instruments.size();
+        CrossRates crossRates = new CrossRates(instruments, crossPairs);
+        InProcessPriceBus bus = new InProcessPriceBus();
+        crossRates.attach(bus);
+        pricer = new Pricer(instruments, 1, bus);
+    }
+
+    @Benchmark
+    public void generateTick() {
+        pricer.generateAndNotifyPrice(next);
+        next = next + 1 == pairs ? 0 : next + 1;
+    }
+}
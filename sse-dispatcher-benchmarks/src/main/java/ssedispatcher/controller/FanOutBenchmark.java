@@ -0,0 +1,109 @@
+package ssedispatcher.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ssedispatcher.config.DispatcherProperties;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of delivering one tick to every open stream. {@code sendPriceUpdate} goes through
+ * {@link BaseDispatcher} with its writers running inline on the fan-out shards, and waits until every
+ * shard is done; {@code perConnectionSerialization} is the earlier approach of building and converting
+ * a {@link Price} event for each emitter, kept as the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FanOutBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int connections;
+
+    @Param({"1", "4"})
+    public int shards;
+
+    private ScheduledExecutorService scheduler;
+    private BaseDispatcher dispatcher;
+    private Instruments instruments;
+    private Tick[] ticks;
+    private final List<SseEmitter> emitters = new ArrayList<>();
+    private long sequence;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<HttpMessageConverter<?>> converters = InMemoryEmitter.defaultConverters();
+        Pricer pricer = new Pricer("ccypair-list.csv", 1);
+        instruments = pricer.getInstruments();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        DispatcherProperties properties = new DispatcherProperties();
+        properties.setFanOutShards(shards);
+        properties.setMaxConnections(0);
+        properties.setConnectRatePerSecond(0);
+        dispatcher = new BaseDispatcher(scheduler, new DirectExecutorService(), new DispatcherMetrics(new SimpleMeterRegistry()),
+                instruments, pricer.getBus(), properties);
+        dispatcher.setEmitterFactory(() -> new InMemoryEmitter(converters));
+        for (int i = 0; i < connections; i++) {
+            emitters.add(dispatcher.createEmitter("user-" + i));
+        }
+        ticks = new Tick[instruments.size()];
+        for (int id = 0; id < ticks.length; id++) {
+            ticks[id] = new Tick(id);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.shutdown();
+        scheduler.shutdownNow();
+    }
+
+    private Tick nextTick() {
+        Tick tick = ticks[next];
+        next = next + 1 == ticks.length ? 0 : next + 1;
+        long base = instruments.basePrice(tick.getPairId());
+        tick.set(base, base + 1, Tick.epochNanos());
+        tick.setSequence(++sequence);
+        return tick;
+    }
+
+    @Benchmark
+    public void sendPriceUpdate() throws InterruptedException {
+        dispatcher.sendPriceUpdate(nextTick());
+        dispatcher.awaitFanOut();
+    }
+
+    @Benchmark
+    public void perConnectionSerialization() throws IOException {
+        Tick tick = nextTick();
+        int id = tick.getPairId();
+        String eventId = Long.toString(tick.getSequence());
+        for (SseEmitter emitter : emitters) {
+            Price price = Price.of(instruments.name(id), tick.getBid(), tick.getAsk(), instruments.scale(id), tick.getTimestampNanos());
+            emitter.send(SseEmitter.event().id(eventId).name(BaseDispatcher.PRICE_EVENT).data(price));
+        }
+    }
+}
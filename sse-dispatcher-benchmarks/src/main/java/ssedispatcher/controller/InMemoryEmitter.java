@@ -0,0 +1,112 @@
+package ssedispatcher.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * SseEmitter that writes into memory the way Spring MVC writes an emitter to the response: every part
+ * of an event goes through the first message converter that can write it. The bytes are counted and
+ * discarded. Completing the emitter runs its completion callback, as the container would.
+ */
+class InMemoryEmitter extends SseEmitter {
+
+    private final List<HttpMessageConverter<?>> converters;
+    private final CountingOutputMessage output = new CountingOutputMessage();
+    private Runnable completionCallback;
+    private boolean completed;
+
+    InMemoryEmitter(List<HttpMessageConverter<?>> converters) {
+        this.converters = converters;
+    }
+
+    /**
+     * The converters Spring MVC would pick for the parts of an SSE event: raw bytes, text and JSON.
+     */
+    static List<HttpMessageConverter<?>> defaultConverters() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        return List.of(new ByteArrayHttpMessageConverter(),
+                new StringHttpMessageConverter(StandardCharsets.UTF_8),
+                new MappingJackson2HttpMessageConverter(objectMapper));
+    }
+
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+        for (DataWithMediaType part : builder.build()) {
+            write(part.getData(), part.getMediaType());
+        }
+    }
+
+    /**
+     * Writes a single body the way a controller return value is written.
+     */
+    @SuppressWarnings("unchecked")
+    void write(Object data, MediaType mediaType) throws IOException {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter.canWrite(data.getClass(), mediaType)) {
+                ((HttpMessageConverter<Object>) converter).write(data, mediaType, output);
+                return;
+            }
+        }
+        throw new HttpMessageNotWritableException("No converter for " + data.getClass());
+    }
+
+    @Override
+    public synchronized void onCompletion(Runnable callback) {
+        this.completionCallback = callback;
+    }
+
+    @Override
+    public synchronized void complete() {
+        if (!completed) {
+            completed = true;
+            if (completionCallback != null) {
+                completionCallback.run();
+            }
+        }
+    }
+
+    @Override
+    public void completeWithError(Throwable ex) {
+        complete();
+    }
+
+    private static final class CountingOutputMessage extends OutputStream implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+        private long count;
+
+        @Override
+        public OutputStream getBody() {
+            return this;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
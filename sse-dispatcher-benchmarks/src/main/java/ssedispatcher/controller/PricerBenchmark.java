@@ -0,0 +1,81 @@
+package ssedispatcher.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ssedispatcher.config.DispatcherProperties;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of generating one tick in {@link Pricer}: on its own, with a {@link BaseDispatcher} attached
+ * that has no connections, and with a {@link PriceSubscriber} on the tick ring. The bus hands ticks to
+ * its dispatch thread, so a sink only shows here once that thread is slower than the generation and the
+ * bus holds the engine back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PricerBenchmark {
+
+    @Param({"none", "dispatcher", "subscriber"})
+    public String sink;
+
+    private Pricer pricer;
+    private ScheduledExecutorService scheduler;
+    private BaseDispatcher dispatcher;
+    private PriceSubscriber subscriber;
+    private long received;
+    private int pairs;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        pricer = new Pricer("ccypair-list.csv", 1);
+        pairs = pricer.getInstruments().size();
+        if ("dispatcher".equals(sink)) {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            dispatcher = new BaseDispatcher(scheduler, new DirectExecutorService(), new DispatcherMetrics(new SimpleMeterRegistry()),
+                    pricer.getInstruments(), pricer.getBus(), new DispatcherProperties());
+        }
+        if ("subscriber".equals(sink)) {
+            subscriber = tick -> received++;
+            pricer.addSubscriber(subscriber);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (subscriber != null) {
+            pricer.removeSubscriber(subscriber);
+        }
+        if (scheduler != null) {
+            dispatcher.shutdown();
+            scheduler.shutdownNow();
+        }
+        pricer.getBus().close();
+    }
+
+    @Benchmark
+    public void generateTick() {
+        pricer.generateAndNotifyPrice(next);
+        next = next + 1 == pairs ? 0 : next + 1;
+    }
+}
@@ -0,0 +1,103 @@
+package ssedispatcher.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ssedispatcher.config.DispatcherProperties;
+import ssedispatcher.metrics.DispatcherMetrics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost of a connect/disconnect cycle through {@code createEmitter} and the completion handler, next to a
+ * population of established streams subscribed to the same pair. The threaded variant is a reconnect
+ * storm with several request threads connecting at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistryChurnBenchmark {
+
+    private static final Set<String> PAIRS = Set.of("EURUSD");
+
+    @Param({"0", "1000", "10000"})
+    public int established;
+
+    private ScheduledExecutorService scheduler;
+    private BaseDispatcher dispatcher;
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Client {
+        private String prefix;
+        private int next;
+
+        @Setup
+        public void setUp(RegistryChurnBenchmark benchmark) {
+            prefix = "churn-" + benchmark.threadIds.incrementAndGet() + "-";
+        }
+
+        String nextUserId() {
+            next = (next + 1) & 1023;
+            return prefix + next;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        List<HttpMessageConverter<?>> converters = InMemoryEmitter.defaultConverters();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        Pricer pricer = new Pricer("ccypair-list.csv", 1);
+        // Admission stays on the connect path, with limits that never refuse
+        DispatcherProperties properties = new DispatcherProperties();
+        properties.setMaxConnections(0);
+        properties.setConnectRatePerSecond(0);
+        dispatcher = new BaseDispatcher(scheduler, new DirectExecutorService(), new DispatcherMetrics(new SimpleMeterRegistry()),
+                pricer.getInstruments(), pricer.getBus(), properties);
+        dispatcher.setEmitterFactory(() -> new InMemoryEmitter(converters));
+        for (int i = 0; i < established; i++) {
+            dispatcher.createEmitter("user-" + i, new StreamOptions(PAIRS));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.shutdown();
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public void connectDisconnect(Client client) {
+        SseEmitter emitter = dispatcher.createEmitter(client.nextUserId(), new StreamOptions(PAIRS));
+        emitter.complete();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void connectDisconnectStorm(Client client) {
+        SseEmitter emitter = dispatcher.createEmitter(client.nextUserId(), new StreamOptions(PAIRS));
+        emitter.complete();
+    }
+}
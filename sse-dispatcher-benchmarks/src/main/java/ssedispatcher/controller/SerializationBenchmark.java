@@ -0,0 +1,84 @@
+package ssedispatcher.controller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one price into bytes on the wire: the {@link Price} view through the Spring message
+ * converters, as a plain JSON body and as an SSE event, against the frame written by {@link TickEncoder}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    private Instruments instruments;
+    private TickEncoder encoder;
+    private InMemoryEmitter emitter;
+    private Tick tick;
+    private long sequence;
+
+    @Setup
+    public void setUp() throws IOException {
+        instruments = Instruments.load("ccypair-list.csv");
+        encoder = new TickEncoder(instruments);
+        emitter = new InMemoryEmitter(InMemoryEmitter.defaultConverters());
+        tick = new Tick(instruments.idOf("EURUSD"));
+        tick.set(11012, 11013, Tick.epochNanos());
+    }
+
+    private Price price() {
+        int id = tick.getPairId();
+        return Price.of(instruments.name(id), tick.getBid(), tick.getAsk(), instruments.scale(id), tick.getTimestampNanos());
+    }
+
+    @Benchmark
+    public void priceJsonViaConverters() throws IOException {
+        emitter.write(price(), MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public void priceSseEventViaConverters() throws IOException {
+        emitter.send(SseEmitter.event().id(Long.toString(++sequence)).name(BaseDispatcher.PRICE_EVENT).data(price()));
+    }
+
+    @Benchmark
+    public SseFrame tickEncoder() {
+        tick.setSequence(++sequence);
+        return encoder.encode(tick);
+    }
+
+    @Benchmark
+    public SseFrame tickEncoderCompact() {
+        tick.setSequence(++sequence);
+        return encoder.encode(tick, WireFormat.COMPACT);
+    }
+
+    @Benchmark
+    public SseFrame tickEncoderBinaryBase64() {
+        tick.setSequence(++sequence);
+        return encoder.encode(tick, WireFormat.BINARY_BASE64);
+    }
+
+    @Benchmark
+    public void tickEncoderFrameViaConverters() throws IOException {
+        tick.setSequence(++sequence);
+        emitter.send(encoder.encode(tick));
+    }
+}
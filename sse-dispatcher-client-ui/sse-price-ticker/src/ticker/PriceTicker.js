@@ -7,6 +7,7 @@ import 'ag-grid-community/styles/ag-grid.css';
 import 'ag-grid-community/styles/ag-theme-alpine.css';
 import axios from 'axios';
 import config from './config';
+import { decodePrices, parseInstruments, loginUser, fetchHistory, fetchCrossPairs } from './api';
 import ChangeRenderer from './ChangeRenderer';
 import PlayArrowIcon from '@mui/icons-material/PlayArrow';
 import PauseIcon from '@mui/icons-material/Pause';
@@ -67,8 +68,12 @@ const PriceTicker = () => {
     const [priceHistory, setPriceHistory] = useState({});
     const [ccyPairs, setCcyPairs] = useState([]);
     const [pricingState, setPricingState] = useState({});
+    const [crossPairs, setCrossPairs] = useState({});
     const [token, setToken] = useState('token');
     const eventSourceRef = useRef(null); // Define eventSourceRef
+    const lastEventIdRef = useRef(null); // Resume point sent when the stream is recreated
+    const instrumentsRef = useRef([]); // Pair index of the compact and binary formats
+    const tokenRef = useRef(null); // Token the stream is opened with; EventSource cannot send headers
 
     const delay = (ms) => new Promise((resolve) => setTimeout(resolve, ms));
 
@@ -80,50 +85,54 @@ const PriceTicker = () => {
         setIsReconnecting(false);
     }, []);
 
-    const handleMessage = useCallback((event) => {
-        try {
-            const data = JSON.parse(event.data);
-            if (data.error) {
-                setError(data.message);
-            } else {
-                const { bid, ask, ccyPair } = data;
-
-                setPrices((prevPrices) => {
-                    const prevBid = prevPrices[ccyPair]?.bid;
-                    const prevAsk = prevPrices[ccyPair]?.ask;
-
-                    setPrevPrices((prevPrices) => ({
-                        ...prevPrices,
-                        [ccyPair]: { bid: prevBid, ask: prevAsk }
-                    }));
-
-                    return {
-                        ...prevPrices,
-                        [ccyPair]: { bid, ask }
-                    };
-                });
+    const applyPrice = useCallback((data) => {
+        const { bid, ask, ccyPair } = data;
 
-                setPriceHistory((prevHistory) => {
-                    const newHistory = { ...prevHistory };
-                    if (!newHistory[ccyPair]) {
-                        newHistory[ccyPair] = [];
-                    }
-                    newHistory[ccyPair].push({ bid, ask });
-                    if (newHistory[ccyPair].length > 10) {
-                        newHistory[ccyPair].shift();
-                    }
-                    return newHistory;
-                });
+        setPrices((prevPrices) => {
+            const prevBid = prevPrices[ccyPair]?.bid;
+            const prevAsk = prevPrices[ccyPair]?.ask;
+
+            setPrevPrices((prevPrices) => ({
+                ...prevPrices,
+                [ccyPair]: { bid: prevBid, ask: prevAsk }
+            }));
 
-                setTicks((prevTicks) => prevTicks + 1);
+            return {
+                ...prevPrices,
+                [ccyPair]: { bid, ask }
+            };
+        });
 
-                // Trigger notification
-                window.electron.notify(`New price for ${ccyPair}: Bid ${bid}, Ask ${ask}`);
+        setPriceHistory((prevHistory) => {
+            const newHistory = { ...prevHistory };
+            if (!newHistory[ccyPair]) {
+                newHistory[ccyPair] = [];
             }
+            newHistory[ccyPair].push({ bid, ask });
+            if (newHistory[ccyPair].length > 10) {
+                newHistory[ccyPair].shift();
+            }
+            return newHistory;
+        });
+
+        setTicks((prevTicks) => prevTicks + 1);
+
+        // Trigger notification
+        window.electron.notify(`New price for ${ccyPair}: Bid ${bid}, Ask ${ask}`);
+    }, []);
+
+    const handleMessage = useCallback((event) => {
+        if (event.lastEventId) {
+            lastEventIdRef.current = event.lastEventId;
+        }
+        try {
+            // 'prices' events carry the latest price of each pair seen during the batch window,
+            // the 'snapshot' event the latest price of every pair
+            decodePrices(config.format, event.data, instrumentsRef.current).forEach(applyPrice);
         } catch (e) {
             console.error('Failed to parse event data:', e);
         }
-    }, []);
+    }, [applyPrice]);
 
     const handleError = useCallback(async (err) => {
         try {
@@ -139,25 +148,61 @@ const PriceTicker = () => {
 
         if (!dontReconnect && reconnectAttempts < config.maxReconnectAttempts) {
             setIsReconnecting(true);
-            const delayTime = Math.pow(2, reconnectAttempts) * config.reconnectBaseDelay;
+            // Half the backoff is random, so tabs dropped together by a server restart come back spread out
+            const backoff = Math.pow(2, reconnectAttempts) * config.reconnectBaseDelay;
+            const delayTime = backoff / 2 + Math.random() * backoff / 2;
             await delay(delayTime);
             setReconnectAttempts(reconnectAttempts + 1);
+            // Tokens live in server memory, so a restarted server or an expired token needs a fresh login
+            try {
+                tokenRef.current = await loginUser(userId);
+                setToken(tokenRef.current);
+            } catch (e) {
+                console.error('Failed to renew token:', e);
+            }
             createEventSource();
         } else {
             setError('Maximum reconnection attempts reached.');
             setIsReconnecting(false);
         }
-    }, [dontReconnect, reconnectAttempts]);
+    }, [dontReconnect, reconnectAttempts, userId]);
 
     const createEventSource = useCallback(() => {
-        const eventSource = new EventSource(`${config.urls.sse}?userId=${userId}`);
+        // A fresh stream starts with a snapshot of every pair, a resumed one with the ticks it missed
+        const resume = lastEventIdRef.current ? `&lastEventId=${lastEventIdRef.current}` : '&snapshot=true';
+        const delta = config.delta && config.format === 'compact' ? '&delta=true' : '';
+        const eventSource = new EventSource(`${config.urls.sse}?userId=${userId}&batchMs=${config.batchMs}&format=${config.format}${delta}${resume}&token=${encodeURIComponent(tokenRef.current)}`);
         eventSourceRef.current = eventSource;
 
         eventSource.onopen = handleOpen;
-        eventSource.onmessage = handleMessage;
+        eventSource.addEventListener('price', handleMessage);
+        eventSource.addEventListener('prices', handleMessage);
+        eventSource.addEventListener('snapshot', handleMessage);
+        eventSource.addEventListener('instruments', (event) => {
+            instrumentsRef.current = parseInstruments(event.data, instrumentsRef.current);
+        });
         eventSource.onerror = handleError;
     }, [userId, handleOpen, handleMessage, handleError]);
 
+    // Starts the charts from the server's journal instead of only the ticks seen since connecting
+    const loadHistory = useCallback(async (pairs) => {
+        for (const ccyPair of pairs) {
+            try {
+                const history = await fetchHistory(ccyPair, tokenRef.current, 10);
+                if (history === null) {
+                    // No journal on the server, so no other pair has history either
+                    return;
+                }
+                setPriceHistory((prevHistory) => ({
+                    ...prevHistory,
+                    [ccyPair]: [...history.map(({ bid, ask }) => ({ bid, ask })), ...(prevHistory[ccyPair] || [])].slice(-10)
+                }));
+            } catch (e) {
+                console.error(`Failed to load history of ${ccyPair}:`, e);
+            }
+        }
+    }, []);
+
     const handleSubscribe = async () => {
         if (userId.trim() !== '') {
             try {
@@ -166,9 +211,11 @@ const PriceTicker = () => {
                         'Content-Type': 'application/json'
                     }
                 });
+                tokenRef.current = response.data.token;
                 setToken(response.data.token);
                 setSubscribed(true);
                 createEventSource();
+                loadHistory(ccyPairs);
             } catch (error) {
                 setError('Failed to login and get token.');
             }
@@ -226,6 +273,12 @@ const PriceTicker = () => {
                     console.error('Error fetching currency pairs:', error);
                 });
 
+            fetchCrossPairs()
+                .then(setCrossPairs)
+                .catch(error => {
+                    console.error('Error fetching cross pairs:', error);
+                });
+
             fetchPricingState();
         }
     }, [token, fetchPricingState]);
@@ -295,7 +348,9 @@ const PriceTicker = () => {
         {
             headerName: 'Action',
             field: 'action',
-            cellRenderer: (params) => (
+            cellRenderer: (params) => crossPairs[params.data.ccyPair] ? (
+                <span>{`from ${crossPairs[params.data.ccyPair].join(' & ')}`}</span>
+            ) : (
                 <div>
                     <IconButton className={classes.greenButton} onClick={() => startPricing(params.data.ccyPair)} disabled={pricingState[params.data.ccyPair]}>
                         <PlayArrowIcon />
@@ -364,11 +419,11 @@ const PriceTicker = () => {
                 const token = response.data.token;
                 await axios.get(config.urls.startAllPricing, { headers: { Authorization: `Bearer ${token}` } });
 
-                const eventSource = new EventSource(`${config.urls.sse}?userId=${userId}`);
-                eventSource.onmessage = (event) => {
+                const eventSource = new EventSource(`${config.urls.sse}?userId=${userId}&token=${encodeURIComponent(token)}`);
+                eventSource.addEventListener('price', (event) => {
                     const data = JSON.parse(event.data);
                     console.log(`User ${userId} received data:`, data);
-                };
+                });
                 eventSource.onerror = (err) => {
                     console.error(`User ${userId} encountered an error:`, err);
                     eventSource.close();
@@ -39,6 +39,12 @@ export const fetchCcyPairs = async (token) => {
     return response.data;
 };
 
+// Crosses the server derives from priced pairs, e.g. { EURJPY: ['EURUSD', 'USDJPY'] }; they cannot be started or paused
+export const fetchCrossPairs = async () => {
+    const response = await axios.get(config.urls.crossPairs);
+    return response.data;
+};
+
 export const startPricing = async (ccyPair, token) => {
     const response = await axios.get(config.urls.startPricing, {
         params: { ccyPair },
@@ -53,4 +59,107 @@ export const pausePricing = async (ccyPair, token) => {
         headers: { Authorization: `Bearer ${token}` }
     });
     return response.data;
-};
\ No newline at end of file
+};
+
+// connectionId (from the stream's 'connection' event) limits the change to one of the user's streams
+export const subscribePairs = async (userId, ccyPairs, token, connectionId) => {
+    const response = await axios.get(config.urls.subscribe, {
+        params: { userId, ccyPairs: ccyPairs.join(','), connectionId },
+        headers: { Authorization: `Bearer ${token}` }
+    });
+    return response.data;
+};
+
+export const unsubscribePairs = async (userId, ccyPairs, token, connectionId) => {
+    const response = await axios.get(config.urls.unsubscribe, {
+        params: { userId, ccyPairs: ccyPairs.join(','), connectionId },
+        headers: { Authorization: `Bearer ${token}` }
+    });
+    return response.data;
+};
+
+// The latest journaled ticks of a pair, oldest first, as { bid, ask, ccyPair, timestamp }, or null when the
+// server runs without a tick journal (the default), which it answers with 404
+export const fetchHistory = async (ccyPair, token, limit) => {
+    try {
+        const response = await axios.get(config.urls.history, {
+            params: { ccyPair, limit },
+            headers: { Authorization: `Bearer ${token}` }
+        });
+        return response.data;
+    } catch (error) {
+        if (error.response && error.response.status === 404) {
+            return null;
+        }
+        throw error;
+    }
+};
+
+// The latest OHLC bars of a pair, oldest first; interval is 1s, 1m or 5m
+export const fetchCandles = async (ccyPair, interval, limit) => {
+    const response = await axios.get(config.urls.candles, { params: { ccyPair, interval, limit } });
+    return response.data;
+};
+
+// Decoders for the /stream-sse wire formats (format=json|compact|binary-base64). Compact and binary
+// ticks name their pair by index into the 'instruments' event, which also gives each pair's scale.
+// With delta=true a compact tick whose index is negative is [~index,bidDelta,askDelta,microsDelta],
+// relative to the last tick of the pair; the instruments of the stream keep that last tick. A reload of
+// the server's pairs sends the event again with pairs appended, so the last ticks of known pairs carry over.
+export const parseInstruments = (data, previous = []) =>
+    JSON.parse(data).map(([ccyPair, scale], index) => ({
+        ccyPair,
+        divisor: Math.pow(10, scale),
+        last: previous[index] && previous[index].ccyPair === ccyPair ? previous[index].last : null,
+    }));
+
+const applyCompact = (instruments, [index, bid, ask, epochMicros]) => {
+    if (index < 0) {
+        const last = instruments[~index].last;
+        return applyCompact(instruments, [~index, last[0] + bid, last[1] + ask, last[2] + epochMicros]);
+    }
+    instruments[index].last = [bid, ask, epochMicros];
+    return toPrice(instruments, index, bid, ask, epochMicros);
+};
+
+const toPrice = (instruments, index, bid, ask, epochMicros) => {
+    const { ccyPair, divisor } = instruments[index];
+    return { ccyPair, bid: bid / divisor, ask: ask / divisor, timestamp: new Date(epochMicros / 1000) };
+};
+
+// Varints can exceed 32 bits (timestamps), so they are accumulated with arithmetic rather than bit operators
+const readVarint = (bytes, state) => {
+    let value = 0;
+    let multiplier = 1;
+    let b;
+    do {
+        b = bytes[state.pos++];
+        value += (b & 0x7f) * multiplier;
+        multiplier *= 128;
+    } while (b & 0x80);
+    return value;
+};
+
+const unzigzag = (value) => (value % 2 === 0 ? value / 2 : -(value + 1) / 2);
+
+const decodeBinaryRecord = (record, instruments) => {
+    const bytes = Uint8Array.from(atob(record), (c) => c.charCodeAt(0));
+    const state = { pos: 0 };
+    const index = readVarint(bytes, state);
+    const bid = unzigzag(readVarint(bytes, state));
+    const ask = bid + unzigzag(readVarint(bytes, state));
+    return toPrice(instruments, index, bid, ask, readVarint(bytes, state));
+};
+
+// Returns the prices in the data of a 'price', 'prices' or 'snapshot' event
+export const decodePrices = (format, data, instruments) => {
+    if (format === 'binary-base64') {
+        return data.split(',').map((record) => decodeBinaryRecord(record, instruments));
+    }
+    const parsed = JSON.parse(data);
+    if (format === 'compact') {
+        const ticks = Array.isArray(parsed[0]) ? parsed : [parsed];
+        return ticks.map((tick) => applyCompact(instruments, tick));
+    }
+    return Array.isArray(parsed) ? parsed : [parsed];
+};
@@ -9,11 +9,19 @@ const config = {
         startPricing: `${host}:${port}/startPricing`,
         pausePricing: `${host}:${port}/pausePricing`,
         ccyPairs: `${host}:${port}/ccyPairs`,
+        crossPairs: `${host}:${port}/crossPairs`,
         pricingState: `${host}:${port}/pricingState`,
+        subscribe: `${host}:${port}/subscribe`,
+        unsubscribe: `${host}:${port}/unsubscribe`,
+        history: `${host}:${port}/history`,
+        candles: `${host}:${port}/candles`,
         login: `${host}:${port}/login`
     },
     maxReconnectAttempts: 5,
-    reconnectBaseDelay: 1000 // in milliseconds
+    reconnectBaseDelay: 1000, // in milliseconds
+    batchMs: 50, // server-side batching window, the grid does not render faster than ~20 Hz
+    format: 'compact', // json, compact or binary-base64; compact is about half the bytes of json per tick
+    delta: true // compact only: ticks as differences from the last price of the pair
 };
 
 export default config;
\ No newline at end of file
@@ -0,0 +1,200 @@
+package ssedispatcher.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * One simulated client on {@code /stream-sse}. Records the latency of every tick it receives and,
+ * when it gets every tick of every pair unbatched, counts the event ids it never saw as gaps. Ids are
+ * unique per stream, so the gaps are the ids spanned minus the ids received. Ids arriving below the
+ * highest seen so far are counted as reordered; the server sends ids in order, except to a stream
+ * degraded to snapshots.
+ */
+class LoadConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadConnection.class);
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> EVENT_TYPE = new ParameterizedTypeReference<>() {
+    };
+    private static final ParameterizedTypeReference<Map<String, String>> LOGIN_TYPE = new ParameterizedTypeReference<>() {
+    };
+    private static final String TIMESTAMP_FIELD = "\"timestamp\":\"";
+
+    private final String userId;
+    private final List<String> ccyPairs;
+    private final long batchMs;
+    private final LoadMetrics metrics;
+    // Event ids are global across pairs, so they are only contiguous for an unbatched all-pairs stream
+    private final boolean trackGaps;
+    private final AtomicLong receivedIds = new AtomicLong();
+    private final AtomicLong reordered = new AtomicLong();
+    private volatile long lowestEventId = -1;
+    private final ZoneId serverZone = ZoneId.systemDefault();
+    private volatile Disposable subscription;
+    // Token from /login, reused across reconnects until the server rejects it
+    private volatile String token;
+    private volatile long lastEventId = -1;
+    private volatile long connectStartNanos;
+    private volatile boolean awaitingFirstEvent;
+
+    LoadConnection(String userId, List<String> ccyPairs, long batchMs, LoadMetrics metrics) {
+        this.userId = userId;
+        this.ccyPairs = ccyPairs;
+        this.batchMs = batchMs;
+        this.metrics = metrics;
+        this.trackGaps = ccyPairs.isEmpty() && batchMs == 0;
+    }
+
+    /**
+     * Opens the stream. A resumed stream sends the last seen event id, so the server replays what was
+     * missed, and records how long the first event took to arrive. Logs in first when there is no token
+     * yet, or the last one was rejected. When the stream ends, {@code onClosed} gets the delay in
+     * milliseconds the server asked for before coming back, 0 when it asked for none.
+     */
+    void connect(WebClient client, boolean resume, LongConsumer onClosed) {
+        connectStartNanos = System.nanoTime();
+        awaitingFirstEvent = resume;
+        subscription = token(client).flatMapMany(bearer -> client.get()
+                .uri(uriBuilder -> {
+                    uriBuilder.path("/stream-sse").queryParam("userId", userId);
+                    if (!ccyPairs.isEmpty()) {
+                        uriBuilder.queryParam("ccyPairs", String.join(",", ccyPairs));
+                    }
+                    if (batchMs > 0) {
+                        uriBuilder.queryParam("batchMs", batchMs);
+                    }
+                    return uriBuilder.build();
+                })
+                .headers(headers -> {
+                    headers.setBearerAuth(bearer);
+                    if (resume && lastEventId >= 0) {
+                        headers.set("Last-Event-ID", Long.toString(lastEventId));
+                    }
+                })
+                .retrieve()
+                .bodyToFlux(EVENT_TYPE))
+                .subscribe(this::onEvent,
+                        error -> {
+                            if (error instanceof WebClientResponseException.Unauthorized) {
+                                token = null;
+                            }
+                            // Refused by admission control, which says when to retry
+                            if (error instanceof WebClientResponseException.ServiceUnavailable) {
+                                metrics.onRejected();
+                                onClosed.accept(retryAfterMillis((WebClientResponseException) error));
+                                return;
+                            }
+                            metrics.onError();
+                            logger.warn("Stream failed for {}: {}", userId, error.toString());
+                            onClosed.accept(0);
+                        },
+                        () -> onClosed.accept(0));
+    }
+
+    private static long retryAfterMillis(WebClientResponseException error) {
+        String retryAfter = error.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        try {
+            return retryAfter == null ? 0 : TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private Mono<String> token(WebClient client) {
+        String current = token;
+        if (current != null) {
+            return Mono.just(current);
+        }
+        return client.post()
+                .uri("/login")
+                .bodyValue(Map.of("userId", userId))
+                .retrieve()
+                .bodyToMono(LOGIN_TYPE)
+                .map(body -> body.get("token"))
+                .doOnNext(issued -> token = issued);
+    }
+
+    void disconnect() {
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+    }
+
+    boolean isConnected() {
+        Disposable current = subscription;
+        return current != null && !current.isDisposed();
+    }
+
+    private void onEvent(ServerSentEvent<String> event) {
+        long receivedNanos = LoadMetrics.epochNanos();
+        if (awaitingFirstEvent) {
+            awaitingFirstEvent = false;
+            metrics.onReconnected(System.nanoTime() - connectStartNanos);
+        }
+        if (event.data() == null) {
+            return;
+        }
+        metrics.onEvent();
+        if (event.id() != null) {
+            onEventId(Long.parseLong(event.id()));
+        }
+        // A batch event holds a JSON array of prices, each with its own timestamp
+        String data = event.data();
+        int from = data.indexOf(TIMESTAMP_FIELD);
+        while (from >= 0) {
+            int start = from + TIMESTAMP_FIELD.length();
+            int end = data.indexOf('"', start);
+            metrics.onTick(receivedNanos - epochNanos(data.substring(start, end)));
+            from = data.indexOf(TIMESTAMP_FIELD, end);
+        }
+    }
+
+    private void onEventId(long id) {
+        long last = lastEventId;
+        if (lowestEventId < 0 || id < lowestEventId) {
+            lowestEventId = id;
+        }
+        receivedIds.incrementAndGet();
+        if (id < last) {
+            reordered.incrementAndGet();
+        }
+        lastEventId = Math.max(id, last);
+    }
+
+    // The server writes its local time without an offset; the harness runs in the same zone
+    private long epochNanos(String timestamp) {
+        ZonedDateTime time = LocalDateTime.parse(timestamp).atZone(serverZone);
+        return time.toEpochSecond() * 1_000_000_000L + time.getNano();
+    }
+
+    boolean isTrackingGaps() {
+        return trackGaps;
+    }
+
+    long getGaps() {
+        if (!trackGaps || lowestEventId < 0) {
+            return 0;
+        }
+        return Math.max(0, lastEventId - lowestEventId + 1 - receivedIds.get());
+    }
+
+    long getReordered() {
+        return reordered.get();
+    }
+}
@@ -0,0 +1,176 @@
+package ssedispatcher.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one load test against a dispatcher: ramps up the configured connections, keeps them streaming
+ * for the test duration (dropping and resuming a share of them in the reconnect storm scenario) and
+ * summarizes what the clients saw.
+ */
+class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final long RECONNECT_DELAY_MS = 1_000L;
+
+    private final LoadProperties properties;
+    private final ScheduledExecutorService scheduler;
+    private final LoadMetrics metrics = new LoadMetrics();
+    private final List<LoadConnection> connections = new ArrayList<>();
+    private final WebClient client;
+    private final ConnectionProvider connectionProvider;
+    private volatile boolean stopping;
+
+    LoadGenerator(LoadProperties properties, ScheduledExecutorService scheduler) {
+        this.properties = properties;
+        this.scheduler = scheduler;
+        // The default pool caps concurrent connections well below what a load test opens
+        this.connectionProvider = ConnectionProvider.builder("load")
+                .maxConnections(properties.getConnections() + 16)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.client = WebClient.builder()
+                .baseUrl(properties.getBaseUrl())
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .build();
+        for (int i = 0; i < properties.getConnections(); i++) {
+            connections.add(new LoadConnection(properties.getUserPrefix() + i, pairsFor(i), properties.getBatchMs(), metrics));
+        }
+    }
+
+    private List<String> pairsFor(int connection) {
+        List<String> pairs = properties.getCcyPairs();
+        int perConnection = properties.getPairsPerConnection();
+        if (pairs.isEmpty() || perConnection <= 0 || perConnection >= pairs.size()) {
+            return pairs;
+        }
+        List<String> subset = new ArrayList<>(perConnection);
+        for (int k = 0; k < perConnection; k++) {
+            subset.add(pairs.get((connection + k) % pairs.size()));
+        }
+        return subset;
+    }
+
+    /**
+     * Runs the test and blocks until it is over. Returns the summary of the run.
+     */
+    Map<String, Object> run() throws InterruptedException {
+        logger.info("Starting {} run: {} connections to {} at {}/s for {}s", properties.getScenario(),
+                properties.getConnections(), properties.getBaseUrl(), properties.getRampPerSecond(), properties.getDurationSeconds());
+        long start = System.nanoTime();
+        long rampIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, properties.getRampPerSecond());
+        for (int i = 0; i < connections.size(); i++) {
+            LoadConnection connection = connections.get(i);
+            scheduler.schedule(() -> connect(connection, false), i * rampIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+        ScheduledFuture<?> storms = null;
+        if (properties.getScenario() == LoadProperties.Scenario.RECONNECT_STORM) {
+            storms = scheduler.scheduleAtFixedRate(this::storm, properties.getStormIntervalSeconds(),
+                    properties.getStormIntervalSeconds(), TimeUnit.SECONDS);
+        }
+
+        TimeUnit.SECONDS.sleep(properties.getDurationSeconds());
+
+        stopping = true;
+        if (storms != null) {
+            storms.cancel(false);
+        }
+        for (LoadConnection connection : connections) {
+            connection.disconnect();
+        }
+        connectionProvider.dispose();
+        return summarize(System.nanoTime() - start);
+    }
+
+    private void connect(LoadConnection connection, boolean resume) {
+        if (!stopping) {
+            connection.connect(client, resume, retryAfterMs -> onClosed(connection, retryAfterMs));
+        }
+    }
+
+    // The server ended the stream, failed it or refused it: come back like EventSource would, resuming
+    // from the last id, or when the server asked to
+    private void onClosed(LoadConnection connection, long retryAfterMs) {
+        if (!stopping) {
+            metrics.onReconnect();
+            long delayMs = retryAfterMs > 0 ? retryAfterMs : RECONNECT_DELAY_MS;
+            scheduler.schedule(() -> connect(connection, true), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void storm() {
+        List<LoadConnection> connected = new ArrayList<>();
+        for (LoadConnection connection : connections) {
+            if (connection.isConnected()) {
+                connected.add(connection);
+            }
+        }
+        Collections.shuffle(connected);
+        List<LoadConnection> victims = connected.subList(0, (int) Math.round(connected.size() * properties.getStormFraction()));
+        logger.info("Reconnect storm: dropping {} of {} connections", victims.size(), connected.size());
+        for (LoadConnection connection : victims) {
+            connection.disconnect();
+        }
+        for (LoadConnection connection : victims) {
+            metrics.onReconnect();
+            connect(connection, true);
+        }
+    }
+
+    private Map<String, Object> summarize(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long gaps = 0;
+        long reordered = 0;
+        long maxGaps = 0;
+        int tracked = 0;
+        int withGaps = 0;
+        for (LoadConnection connection : connections) {
+            if (connection.isTrackingGaps()) {
+                tracked++;
+                gaps += connection.getGaps();
+                reordered += connection.getReordered();
+                maxGaps = Math.max(maxGaps, connection.getGaps());
+                if (connection.getGaps() > 0) {
+                    withGaps++;
+                }
+            }
+        }
+        Map<String, Object> gapSummary = new LinkedHashMap<>();
+        gapSummary.put("trackedConnections", tracked);
+        gapSummary.put("total", gaps);
+        gapSummary.put("connectionsWithGaps", withGaps);
+        gapSummary.put("maxPerConnection", maxGaps);
+        gapSummary.put("reordered", reordered);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("scenario", properties.getScenario());
+        summary.put("baseUrl", properties.getBaseUrl());
+        summary.put("connections", properties.getConnections());
+        summary.put("ccyPairs", properties.getCcyPairs().isEmpty() ? "all" : properties.getCcyPairs());
+        summary.put("batchMs", properties.getBatchMs());
+        summary.put("elapsedSeconds", Math.round(seconds * 1000) / 1000.0);
+        summary.put("events", metrics.getEvents());
+        summary.put("ticks", metrics.getTicks());
+        summary.put("ticksPerSecond", Math.round(metrics.getTicks() / seconds));
+        summary.put("tickLatencyMicros", metrics.tickLatencySummary());
+        summary.put("gaps", gapSummary);
+        summary.put("reconnects", metrics.getReconnects());
+        summary.put("reconnectToFirstEventMicros", metrics.reconnectLatencySummary());
+        summary.put("rejected", metrics.getRejected());
+        summary.put("errors", metrics.getErrors());
+        return summary;
+    }
+}
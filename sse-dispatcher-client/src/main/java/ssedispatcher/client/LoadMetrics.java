@@ -0,0 +1,98 @@
+package ssedispatcher.client;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms shared by every connection of a load run. Latencies are recorded
+ * in microseconds into HdrHistogram recorders, which take values from many threads without locking.
+ */
+class LoadMetrics {
+
+    // Offset from System.nanoTime() to epoch nanos, the same clock the server stamps ticks with
+    private static final long EPOCH_NANOS_OFFSET = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+    private final Recorder tickLatency = new Recorder(3);
+    private final Recorder reconnectLatency = new Recorder(3);
+    private final LongAdder events = new LongAdder();
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    static long epochNanos() {
+        return EPOCH_NANOS_OFFSET + System.nanoTime();
+    }
+
+    void onEvent() {
+        events.increment();
+    }
+
+    void onTick(long latencyNanos) {
+        ticks.increment();
+        // Clocks of a remote server can be slightly ahead
+        tickLatency.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    void onReconnected(long elapsedNanos) {
+        reconnectLatency.recordValue(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+
+    void onReconnect() {
+        reconnects.increment();
+    }
+
+    void onError() {
+        errors.increment();
+    }
+
+    void onRejected() {
+        rejected.increment();
+    }
+
+    long getEvents() {
+        return events.sum();
+    }
+
+    long getTicks() {
+        return ticks.sum();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    long getReconnects() {
+        return reconnects.sum();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    Map<String, Object> tickLatencySummary() {
+        return summarize(tickLatency.getIntervalHistogram());
+    }
+
+    Map<String, Object> reconnectLatencySummary() {
+        return summarize(reconnectLatency.getIntervalHistogram());
+    }
+
+    private static Map<String, Object> summarize(Histogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("min", histogram.getTotalCount() == 0 ? 0 : histogram.getMinValue());
+        summary.put("mean", Math.round(histogram.getMean()));
+        summary.put("p50", histogram.getValueAtPercentile(50));
+        summary.put("p90", histogram.getValueAtPercentile(90));
+        summary.put("p99", histogram.getValueAtPercentile(99));
+        summary.put("p99_9", histogram.getValueAtPercentile(99.9));
+        summary.put("max", histogram.getMaxValue());
+        return summary;
+    }
+}
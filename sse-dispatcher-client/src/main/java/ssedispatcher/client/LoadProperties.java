@@ -0,0 +1,135 @@
+package ssedispatcher.client;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Load test settings, bound from {@code load.*} properties or command line arguments
+ * such as {@code --load.connections=5000}.
+ */
+@ConfigurationProperties(prefix = "load")
+public class LoadProperties {
+
+    public enum Scenario {
+        /** Open every connection once and keep it for the whole run. */
+        STEADY,
+        /** Periodically drop a share of the connections at once and reconnect them with Last-Event-ID. */
+        RECONNECT_STORM
+    }
+
+    private String baseUrl = "http://localhost:8080";
+    private int connections = 10;
+    // New connections opened per second until all are open
+    private int rampPerSecond = 100;
+    private long durationSeconds = 60;
+    // Pairs to subscribe to, empty for all pairs
+    private List<String> ccyPairs = new ArrayList<>();
+    // Pairs per connection taken round-robin from ccyPairs, 0 for the whole list
+    private int pairsPerConnection;
+    private long batchMs;
+    private Scenario scenario = Scenario.STEADY;
+    private long stormIntervalSeconds = 10;
+    // Share of the connections dropped in each storm
+    private double stormFraction = 0.5;
+    private String userPrefix = "loadUser";
+    // File the JSON summary is written to in addition to stdout, none if empty
+    private String output = "";
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    public int getRampPerSecond() {
+        return rampPerSecond;
+    }
+
+    public void setRampPerSecond(int rampPerSecond) {
+        this.rampPerSecond = rampPerSecond;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(long durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public List<String> getCcyPairs() {
+        return ccyPairs;
+    }
+
+    public void setCcyPairs(List<String> ccyPairs) {
+        this.ccyPairs = ccyPairs;
+    }
+
+    public int getPairsPerConnection() {
+        return pairsPerConnection;
+    }
+
+    public void setPairsPerConnection(int pairsPerConnection) {
+        this.pairsPerConnection = pairsPerConnection;
+    }
+
+    public long getBatchMs() {
+        return batchMs;
+    }
+
+    public void setBatchMs(long batchMs) {
+        this.batchMs = batchMs;
+    }
+
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    public void setScenario(Scenario scenario) {
+        this.scenario = scenario;
+    }
+
+    public long getStormIntervalSeconds() {
+        return stormIntervalSeconds;
+    }
+
+    public void setStormIntervalSeconds(long stormIntervalSeconds) {
+        this.stormIntervalSeconds = stormIntervalSeconds;
+    }
+
+    public double getStormFraction() {
+        return stormFraction;
+    }
+
+    public void setStormFraction(double stormFraction) {
+        this.stormFraction = stormFraction;
+    }
+
+    public String getUserPrefix() {
+        return userPrefix;
+    }
+
+    public void setUserPrefix(String userPrefix) {
+        this.userPrefix = userPrefix;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+}
@@ -1,47 +1,55 @@
 package ssedispatcher.client;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
-import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Flux;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SpringBootApplication
+@EnableConfigurationProperties(LoadProperties.class)
 public class SseClientApplication implements CommandLineRunner {
 
     private static final Logger logger = LoggerFactory.getLogger(SseClientApplication.class);
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(10, new CustomThreadFactory("SseClientScheduler"));
+    private final LoadProperties loadProperties;
+    private final ObjectMapper objectMapper;
+
+    public SseClientApplication(LoadProperties loadProperties, ObjectMapper objectMapper) {
+        this.loadProperties = loadProperties;
+        this.objectMapper = objectMapper;
+    }
 
     public static void main(String[] args) {
-        SpringApplication.run(SseClientApplication.class, args);
+        // The load run happens during startup; exit once the summary is out
+        System.exit(SpringApplication.exit(SpringApplication.run(SseClientApplication.class, args)));
     }
 
     @Override
-    public void run(String... args) {
-        for (int i = 1; i <= 10; i++) {
-            String userId = "testUser" + i;
-            WebClient client = WebClient.create("http://localhost:8080");
-
-            Flux<String> eventStream = client.get()
-                    .uri(uriBuilder -> uriBuilder.path("/stream-sse").queryParam("userId", userId).build())
-                    .retrieve()
-                    .bodyToFlux(String.class);
-
-            eventStream.subscribe(
-                    event -> logger.info("Received event for {}: {}", userId, event),
-                    error -> logger.error("Error receiving SSE event for {}", userId, error),
-                    () -> logger.info("Event stream completed for {}", userId)
-            );
+    public void run(String... args) throws InterruptedException, IOException {
+        Map<String, Object> summary = new LoadGenerator(loadProperties, scheduler).run();
+        String json = objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValueAsString(summary);
+        System.out.println(json);
+        if (!loadProperties.getOutput().isEmpty()) {
+            Files.writeString(Paths.get(loadProperties.getOutput()), json);
+            logger.info("Load test summary written to {}", loadProperties.getOutput());
         }
+        scheduler.shutdownNow();
     }
 
     @Bean
@@ -51,7 +59,7 @@ public class SseClientApplication implements CommandLineRunner {
 
     private static class CustomThreadFactory implements ThreadFactory {
         private final String namePrefix;
-        private int threadNumber = 1;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
 
         CustomThreadFactory(String namePrefix) {
             this.namePrefix = namePrefix;
@@ -59,7 +67,7 @@ public class SseClientApplication implements CommandLineRunner {
 
         @Override
         public Thread newThread(Runnable r) {
-            Thread t = new Thread(r, namePrefix + "-thread-" + threadNumber++);
+            Thread t = new Thread(r, namePrefix + "-thread-" + threadNumber.getAndIncrement());
             t.setDaemon(true);
             return t;
         }